@@ -0,0 +1,128 @@
+package com.hybhub.util.concurrent.benchmark;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The usual hand rolled alternative to a unique queue : a {@link LinkedBlockingQueue}
+ * guarded by a {@link ConcurrentHashMap#newKeySet()}.
+ * @param <E>
+ */
+class DedupLinkedBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+	private final Set<E> keys = ConcurrentHashMap.newKeySet();
+
+	private final LinkedBlockingQueue<E> queue;
+
+	DedupLinkedBlockingQueue(final int capacity) {
+		this.queue = new LinkedBlockingQueue<>(capacity);
+	}
+
+	@Override
+	public boolean offer(final E e) {
+		if (!keys.add(e)) {
+			return false;
+		}
+		if (queue.offer(e)) {
+			return true;
+		}
+		keys.remove(e);
+		return false;
+	}
+
+	@Override
+	public void put(final E e) throws InterruptedException {
+		if (!keys.add(e)) {
+			return;
+		}
+		try {
+			queue.put(e);
+		} catch (InterruptedException ex) {
+			keys.remove(e);
+			throw ex;
+		}
+	}
+
+	@Override
+	public boolean offer(final E e, final long timeout, final TimeUnit unit) throws InterruptedException {
+		if (!keys.add(e)) {
+			return false;
+		}
+		boolean added = false;
+		try {
+			added = queue.offer(e, timeout, unit);
+			return added;
+		} finally {
+			if (!added) {
+				keys.remove(e);
+			}
+		}
+	}
+
+	@Override
+	public E poll() {
+		final E x = queue.poll();
+		if (x != null) {
+			keys.remove(x);
+		}
+		return x;
+	}
+
+	@Override
+	public E take() throws InterruptedException {
+		final E x = queue.take();
+		keys.remove(x);
+		return x;
+	}
+
+	@Override
+	public E poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+		final E x = queue.poll(timeout, unit);
+		if (x != null) {
+			keys.remove(x);
+		}
+		return x;
+	}
+
+	@Override
+	public E peek() {
+		return queue.peek();
+	}
+
+	@Override
+	public int remainingCapacity() {
+		return queue.remainingCapacity();
+	}
+
+	@Override
+	public int drainTo(final Collection<? super E> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int drainTo(final Collection<? super E> c, final int maxElements) {
+		int n = 0;
+		E e;
+		while (n < maxElements && (e = poll()) != null) {
+			c.add(e);
+			n++;
+		}
+		return n;
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		return queue.iterator();
+	}
+
+	@Override
+	public int size() {
+		return queue.size();
+	}
+}
@@ -0,0 +1,31 @@
+package com.hybhub.util.concurrent.benchmark;
+
+/**
+ * Element types pushed through the queues, from the cheapest to the most expensive to hash and compare.
+ */
+public enum KeyType {
+
+	INTEGER {
+		@Override
+		Object key(final long id) {
+			return (int) id;
+		}
+	},
+	UUID {
+		@Override
+		Object key(final long id) {
+			return new java.util.UUID(0x6A09E667F3BCC908L, id);
+		}
+	},
+	STRING {
+		@Override
+		Object key(final long id) {
+			return "entity-" + id;
+		}
+	};
+
+	/**
+	 * @return a key, equal keys are returned for equal ids
+	 */
+	abstract Object key(long id);
+}
@@ -0,0 +1,94 @@
+package com.hybhub.util.concurrent.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hand off from a few producers to thousands of consumers parked on take(), every consumer being a virtual thread
+ * when the JVM supports them. Measures how fast producers get their elements to the parked consumers,
+ * the queue being small the producers are throttled by the wake ups.
+ * Virtual threads need Java 21, run with a Java 21 JVM or set threadType to PLATFORM.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class ParkedConsumersBenchmark {
+
+	public enum ThreadType {
+		VIRTUAL, PLATFORM
+	}
+
+	@Param({"UNIQUE", "UNIQUE_PARKING", "LINKED"})
+	QueueType queueType;
+
+	@Param({"10000"})
+	int consumers;
+
+	@Param({"VIRTUAL"})
+	ThreadType threadType;
+
+	@Param({"256"})
+	int capacity;
+
+	BlockingQueue<Integer> queue;
+
+	ExecutorService executor;
+
+	@Setup(Level.Iteration)
+	public void setUp() throws ReflectiveOperationException {
+		queue = queueType.create(capacity);
+		executor = threadType == ThreadType.VIRTUAL
+				? (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null)
+				: Executors.newFixedThreadPool(consumers);
+		for (int i = 0; i < consumers; i++) {
+			executor.execute(() -> {
+				try {
+					while (!Thread.currentThread().isInterrupted()) {
+						queue.take();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+		}
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() throws InterruptedException {
+		executor.shutdownNow();
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+	}
+
+	@State(Scope.Thread)
+	public static class Producer {
+
+		int next;
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void put(final Producer producer) throws InterruptedException {
+		// keys are unique per producer thread and wrap long after they have been consumed
+		queue.put((Thread.currentThread().hashCode() << 20) ^ (producer.next++ & 0xFFFFF));
+	}
+}
@@ -0,0 +1,83 @@
+package com.hybhub.util.concurrent.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hybhub.util.concurrent.ConcurrentSetBlockingQueue;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups of elements that are not queued, with and without the counting Bloom prefilter in front of the index,
+ * on a full queue. offerTake offers new elements, it measures what the prefilter costs to the puts and takes,
+ * which always go through the index.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class PrefilterBenchmark {
+
+	@Param({"false", "true"})
+	boolean prefilter;
+
+	@Param({"1024", "65536"})
+	int capacity;
+
+	@Param({"INTEGER", "UUID", "STRING"})
+	KeyType keyType;
+
+	ConcurrentSetBlockingQueue<Object> queue;
+
+	/** Keys never queued */
+	Object[] misses;
+
+	int next;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		queue = prefilter ? ConcurrentSetBlockingQueue.builder(capacity).prefilter().build()
+				: new ConcurrentSetBlockingQueue<>(capacity);
+		for (long id = 0; id < capacity; id++) {
+			queue.offer(keyType.key(id));
+		}
+		misses = new Object[QueueBenchmark.KEYS];
+		for (int i = 0; i < misses.length; i++) {
+			misses[i] = keyType.key(capacity + (long) i * 7919);
+		}
+	}
+
+	private Object nextMiss() {
+		final Object key = misses[next];
+		next = (next + 1) & (misses.length - 1);
+		return key;
+	}
+
+	@Benchmark
+	public boolean containsMiss() {
+		return queue.contains(nextMiss());
+	}
+
+	@Benchmark
+	public boolean removeMiss() {
+		return queue.remove(nextMiss());
+	}
+
+	@Benchmark
+	public boolean offerTake() {
+		queue.poll();
+		return queue.offer(nextMiss());
+	}
+}
@@ -0,0 +1,149 @@
+package com.hybhub.util.concurrent.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Timeout;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Control;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Producer / consumer benchmarks of {@link com.hybhub.util.concurrent.ConcurrentSetBlockingQueue}
+ * against the JDK blocking queues, see {@link QueueType}.
+ * Every group runs one producer and one consumer by default, use the JMH option -tg to change it,
+ * "-tg 8,2" runs eight producers and two consumers.
+ * The mode and the time unit are defined by the subclasses.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Timeout(time = 10)
+public abstract class QueueBenchmark {
+
+	/** Number of pre-generated keys per producer, larger than any benchmarked capacity */
+	static final int KEYS = 1 << 18;
+
+	/** Maximum number of elements moved by a single drainTo */
+	static final int DRAIN_BATCH = 256;
+
+	@State(Scope.Group)
+	public static class QueueState {
+
+		@Param({"UNIQUE", "UNIQUE_PARKING", "UNIQUE_SPINNING", "STRIPED", "UNIQUE_ARRAY", "LINKED", "ARRAY", "LINKED_WITH_SET"})
+		QueueType queueType;
+
+		@Param({"1024", "65536"})
+		int capacity;
+
+		@Param({"INTEGER", "UUID", "STRING"})
+		KeyType keyType;
+
+		/** Probability for a producer to offer a key it has recently offered */
+		@Param({"0.0", "0.5"})
+		double duplicateRatio;
+
+		BlockingQueue<Object> queue;
+
+		@Setup(Level.Iteration)
+		public void setUp() {
+			queue = queueType.create(capacity);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Producer {
+
+		Object[] keys;
+
+		int next;
+
+		@Setup(Level.Trial)
+		public void setUp(final QueueState state, final ThreadParams threadParams) {
+			final SplittableRandom random = new SplittableRandom(threadParams.getThreadIndex());
+			final long firstId = (long) threadParams.getThreadIndex() * KEYS;
+			keys = new Object[KEYS];
+			int fresh = 0;
+			for (int i = 0; i < KEYS; i++) {
+				if (i > 0 && random.nextDouble() < state.duplicateRatio) {
+					keys[i] = keys[i - 1 - random.nextInt(Math.min(i, 16))];
+				} else {
+					keys[i] = state.keyType.key(firstId + fresh++);
+				}
+			}
+		}
+
+		Object nextKey() {
+			final Object key = keys[next];
+			next = (next + 1) & (KEYS - 1);
+			return key;
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Consumer {
+
+		final List<Object> sink = new ArrayList<>(DRAIN_BATCH);
+	}
+
+	@Benchmark
+	@Group("offerPoll")
+	@GroupThreads(1)
+	public boolean offer(final QueueState state, final Producer producer) {
+		return state.queue.offer(producer.nextKey());
+	}
+
+	@Benchmark
+	@Group("offerPoll")
+	@GroupThreads(1)
+	public Object poll(final QueueState state) {
+		return state.queue.poll();
+	}
+
+	/**
+	 * Blocking calls are skipped once the iteration is over, a call still blocked at that time is interrupted by JMH.
+	 */
+	@Benchmark
+	@Group("putTake")
+	@GroupThreads(1)
+	public void put(final QueueState state, final Producer producer, final Control control) throws InterruptedException {
+		if (!control.stopMeasurement) {
+			state.queue.put(producer.nextKey());
+		}
+	}
+
+	@Benchmark
+	@Group("putTake")
+	@GroupThreads(1)
+	public Object take(final QueueState state, final Control control) throws InterruptedException {
+		return control.stopMeasurement ? null : state.queue.take();
+	}
+
+	@Benchmark
+	@Group("offerDrainTo")
+	@GroupThreads(1)
+	public boolean offerToDrain(final QueueState state, final Producer producer) {
+		return state.queue.offer(producer.nextKey());
+	}
+
+	@Benchmark
+	@Group("offerDrainTo")
+	@GroupThreads(1)
+	public int drainTo(final QueueState state, final Consumer consumer) {
+		final List<Object> sink = consumer.sink;
+		sink.clear();
+		return state.queue.drainTo(sink, DRAIN_BATCH);
+	}
+}
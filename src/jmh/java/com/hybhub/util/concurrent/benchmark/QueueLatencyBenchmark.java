@@ -0,0 +1,15 @@
+package com.hybhub.util.concurrent.benchmark;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link QueueBenchmark} sampled per operation, JMH reports the p50, p99 and p99.9 latencies in nanoseconds.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class QueueLatencyBenchmark extends QueueBenchmark {
+}
@@ -0,0 +1,79 @@
+package com.hybhub.util.concurrent.benchmark;
+
+import com.hybhub.util.concurrent.ConcurrentSetArrayBlockingQueue;
+import com.hybhub.util.concurrent.ConcurrentSetBlockingQueue;
+import com.hybhub.util.concurrent.ConcurrentStripedSetBlockingQueue;
+import com.hybhub.util.concurrent.WaitStrategy;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Queue implementations compared by the benchmarks.
+ */
+public enum QueueType {
+
+	UNIQUE {
+		@Override
+		<E> BlockingQueue<E> create(final int capacity) {
+			return new ConcurrentSetBlockingQueue<>(capacity);
+		}
+	},
+	UNIQUE_PARKING {
+		@Override
+		<E> BlockingQueue<E> create(final int capacity) {
+			return ConcurrentSetBlockingQueue.builder(capacity).waitStrategy(WaitStrategy.parking()).build();
+		}
+	},
+	UNIQUE_SPINNING {
+		@Override
+		<E> BlockingQueue<E> create(final int capacity) {
+			return ConcurrentSetBlockingQueue.builder(capacity).waitStrategy(WaitStrategy.spinning()).build();
+		}
+	},
+	UNIQUE_BUSY_SPIN {
+		@Override
+		<E> BlockingQueue<E> create(final int capacity) {
+			return ConcurrentSetBlockingQueue.builder(capacity).waitStrategy(WaitStrategy.busySpin()).build();
+		}
+	},
+	UNIQUE_PREFILTER {
+		@Override
+		<E> BlockingQueue<E> create(final int capacity) {
+			return ConcurrentSetBlockingQueue.builder(capacity).prefilter().build();
+		}
+	},
+	STRIPED {
+		@Override
+		<E> BlockingQueue<E> create(final int capacity) {
+			return new ConcurrentStripedSetBlockingQueue<>(capacity);
+		}
+	},
+	UNIQUE_ARRAY {
+		@Override
+		<E> BlockingQueue<E> create(final int capacity) {
+			return new ConcurrentSetArrayBlockingQueue<>(capacity);
+		}
+	},
+	LINKED {
+		@Override
+		<E> BlockingQueue<E> create(final int capacity) {
+			return new LinkedBlockingQueue<>(capacity);
+		}
+	},
+	ARRAY {
+		@Override
+		<E> BlockingQueue<E> create(final int capacity) {
+			return new ArrayBlockingQueue<>(capacity);
+		}
+	},
+	LINKED_WITH_SET {
+		@Override
+		<E> BlockingQueue<E> create(final int capacity) {
+			return new DedupLinkedBlockingQueue<>(capacity);
+		}
+	};
+
+	abstract <E> BlockingQueue<E> create(int capacity);
+}
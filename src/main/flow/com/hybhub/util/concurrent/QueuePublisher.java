@@ -0,0 +1,237 @@
+package com.hybhub.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link Flow.Publisher} taking the elements of a {@link ConcurrentSetBlockingQueue} as subscribers request them,
+ * so no consumer thread is parked on the queue. Subscribers compete for the elements, each element is delivered
+ * to a single subscriber.
+ * A subscription with demand takes up to a batch of elements with a single {@link ConcurrentSetBlockingQueue#drainTo}
+ * and delivers them on the executor, once the queue is empty it waits for the queue to become non empty again,
+ * the put making it non empty schedules the delivery without running any subscriber code.
+ * Elements taken by a subscription that is cancelled, or whose subscriber throws, before they are delivered
+ * are offered back to the queue, or handed to the next subscription if the queue has filled up in the meantime.
+ * Requires Java 9.
+ * @param <E>
+ */
+public class QueuePublisher<E> implements Flow.Publisher<E>, AutoCloseable {
+
+	/** Default maximum number of elements taken at once */
+	static final int BATCH_SIZE = 64;
+
+	private final ConcurrentSetBlockingQueue<E> queue;
+
+	private final Executor executor;
+
+	private final int batchSize;
+
+	private final CopyOnWriteArrayList<QueueSubscription> subscriptions = new CopyOnWriteArrayList<>();
+
+	/** Elements taken and given back while the queue was full, delivered before the queued ones */
+	private final ConcurrentLinkedQueue<E> undelivered = new ConcurrentLinkedQueue<>();
+
+	/** Schedules the deliveries once the queue is no longer empty */
+	private final Runnable notEmpty = () -> {
+		for (QueueSubscription subscription : subscriptions) {
+			subscription.signal();
+		}
+	};
+
+	private volatile boolean closed;
+
+	/**
+	 * Delivers on the common pool.
+	 */
+	public QueuePublisher(final ConcurrentSetBlockingQueue<E> queue) {
+		this(queue, ForkJoinPool.commonPool(), BATCH_SIZE);
+	}
+
+	/**
+	 * @param executor runs the deliveries, must not run them in the calling thread as puts trigger deliveries
+	 * @param batchSize maximum number of elements taken at once
+	 */
+	public QueuePublisher(final ConcurrentSetBlockingQueue<E> queue, final Executor executor, final int batchSize) {
+		if (queue == null || executor == null) {
+			throw new NullPointerException();
+		}
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException();
+		}
+		this.queue = queue;
+		this.executor = executor;
+		this.batchSize = batchSize;
+		queue.notEmptyListeners.add(notEmpty);
+	}
+
+	@Override
+	public void subscribe(final Flow.Subscriber<? super E> subscriber) {
+		if (subscriber == null) {
+			throw new NullPointerException();
+		}
+		final QueueSubscription subscription = new QueueSubscription(subscriber);
+		subscriptions.add(subscription);
+		subscription.signal();
+	}
+
+	/**
+	 * Completes the subscribers, the elements still queued stay in the queue. The elements given back
+	 * by the subscriptions are offered to the queue once more, those it still can't hold are dropped.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		queue.notEmptyListeners.remove(notEmpty);
+		for (QueueSubscription subscription : subscriptions) {
+			subscription.signal();
+		}
+		E e;
+		while ((e = undelivered.poll()) != null) {
+			queue.offer(e);
+		}
+	}
+
+	/**
+	 * @return the number of subscribers neither cancelled nor completed
+	 */
+	public int subscribers() {
+		return subscriptions.size();
+	}
+
+	/**
+	 * Subscription delivering its elements from a single task at a time, any request or new element while
+	 * the task runs makes it loop once more.
+	 */
+	private final class QueueSubscription implements Flow.Subscription, Runnable {
+
+		private final Flow.Subscriber<? super E> subscriber;
+
+		private final AtomicLong demand = new AtomicLong();
+
+		/** Signals not yet handled by the delivery task, the task is scheduled by the first of them */
+		private final AtomicInteger wip = new AtomicInteger();
+
+		/** Elements taken and not yet delivered, only used by the delivery task */
+		private final ArrayList<E> batch = new ArrayList<>();
+
+		private boolean subscribed;
+
+		private volatile boolean cancelled;
+
+		private volatile boolean badRequest;
+
+		QueueSubscription(final Flow.Subscriber<? super E> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request(final long n) {
+			if (n <= 0) {
+				badRequest = true;
+			} else {
+				demand.getAndAccumulate(n, (d, r) -> d + r < 0 ? Long.MAX_VALUE : d + r);
+			}
+			signal();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			subscriptions.remove(this);
+		}
+
+		void signal() {
+			if (wip.getAndIncrement() == 0) {
+				executor.execute(this);
+			}
+		}
+
+		@Override
+		public void run() {
+			int missed = 1;
+			do {
+				deliver();
+				missed = wip.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		private void deliver() {
+			if (!subscribed) {
+				subscribed = true;
+				subscriber.onSubscribe(this);
+			}
+			while (!cancelled) {
+				if (badRequest) {
+					cancel();
+					subscriber.onError(new IllegalArgumentException("Non positive request"));
+					return;
+				}
+				if (closed) {
+					cancel();
+					subscriber.onComplete();
+					return;
+				}
+				final long d = demand.get();
+				if (d == 0L) {
+					return;
+				}
+				final int max = (int) Math.min(d, batchSize);
+				int n = 0;
+				E given;
+				while (n < max && (given = undelivered.poll()) != null) {
+					batch.add(given);
+					n++;
+				}
+				if (n < max) {
+					n += queue.drainTo(batch, max - n);
+				}
+				if (n == 0) {
+					return;
+				}
+				if (d != Long.MAX_VALUE) {
+					demand.addAndGet(-n);
+				}
+				int delivered = 0;
+				try {
+					while (delivered < n && !cancelled) {
+						// counted before the call, an element the subscriber throws on has been handed over
+						subscriber.onNext(batch.get(delivered++));
+					}
+				} catch (RuntimeException e) {
+					// the subscriber broke the rules
+					cancel();
+					giveBack(delivered);
+					subscriber.onError(e);
+					return;
+				}
+				giveBack(delivered);
+			}
+		}
+
+		/**
+		 * Gives the elements of the batch from the index from onwards back to the queue, or to the other
+		 * subscriptions if the queue is full, and clears the batch.
+		 */
+		private void giveBack(final int from) {
+			boolean kept = false;
+			for (int i = from, size = batch.size(); i < size; i++) {
+				final E e = batch.get(i);
+				// already queued again by a producer, it is delivered once anyway
+				if (!queue.offer(e) && !queue.contains(e)) {
+					undelivered.add(e);
+					kept = true;
+				}
+			}
+			batch.clear();
+			if (kept) {
+				notEmpty.run();
+			}
+		}
+	}
+}
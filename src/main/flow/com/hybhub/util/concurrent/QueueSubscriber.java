@@ -0,0 +1,210 @@
+package com.hybhub.util.concurrent;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link Flow.Subscriber} offering what it receives to a {@link ConcurrentSetBlockingQueue}, duplicates of queued
+ * elements are dropped on ingress. Instead of blocking the upstream publisher when the queue is full, it never
+ * requests more elements than the queue has room for, and requests again once takes make room.
+ * An element received while other producers have filled the queue in the meantime is held until there is room.
+ * Requires Java 9.
+ * @param <E>
+ */
+public class QueueSubscriber<E> implements Flow.Subscriber<E> {
+
+	/** Default maximum number of elements requested and not yet received */
+	static final int MAX_OUTSTANDING = 64;
+
+	private final ConcurrentSetBlockingQueue<E> queue;
+
+	private final Executor executor;
+
+	private final int maxOutstanding;
+
+	/** Retries the held elements once the queue is no longer full, guarded by this */
+	private final Runnable notFull;
+
+	private Flow.Subscription upstream;
+
+	/** Elements requested and not yet received */
+	private long outstanding;
+
+	/** Elements received while the queue was full */
+	private final ArrayDeque<E> held = new ArrayDeque<>();
+
+	private boolean done;
+
+	private final LongAdder accepted = new LongAdder();
+
+	private final LongAdder duplicates = new LongAdder();
+
+	private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+	/**
+	 * Retries on the common pool.
+	 */
+	public QueueSubscriber(final ConcurrentSetBlockingQueue<E> queue) {
+		this(queue, ForkJoinPool.commonPool(), MAX_OUTSTANDING);
+	}
+
+	/**
+	 * @param executor retries the held elements, takes making room trigger the retries
+	 * @param maxOutstanding maximum number of elements requested and not yet received
+	 */
+	public QueueSubscriber(final ConcurrentSetBlockingQueue<E> queue, final Executor executor,
+			final int maxOutstanding) {
+		if (queue == null || executor == null) {
+			throw new NullPointerException();
+		}
+		if (maxOutstanding <= 0) {
+			throw new IllegalArgumentException();
+		}
+		this.queue = queue;
+		this.executor = executor;
+		this.maxOutstanding = maxOutstanding;
+		this.notFull = () -> executor.execute(this::retry);
+	}
+
+	@Override
+	public synchronized void onSubscribe(final Flow.Subscription subscription) {
+		if (subscription == null) {
+			throw new NullPointerException();
+		}
+		if (upstream != null || done) {
+			subscription.cancel();
+			return;
+		}
+		upstream = subscription;
+		queue.notFullListeners.add(notFull);
+		replenish();
+	}
+
+	@Override
+	public synchronized void onNext(final E item) {
+		if (item == null) {
+			throw new NullPointerException();
+		}
+		if (done) {
+			return;
+		}
+		outstanding--;
+		if (!held.isEmpty() || !offer(item)) {
+			held.add(item);
+		}
+		replenish();
+	}
+
+	@Override
+	public synchronized void onError(final Throwable throwable) {
+		done = true;
+		if (held.isEmpty()) {
+			queue.notFullListeners.remove(notFull);
+		}
+		completion.completeExceptionally(throwable);
+	}
+
+	@Override
+	public synchronized void onComplete() {
+		done = true;
+		if (held.isEmpty()) {
+			queue.notFullListeners.remove(notFull);
+			completion.complete(null);
+		}
+	}
+
+	/**
+	 * Cancels the upstream subscription, the elements held are dropped.
+	 */
+	public synchronized void cancel() {
+		if (upstream != null) {
+			upstream.cancel();
+		}
+		done = true;
+		held.clear();
+		queue.notFullListeners.remove(notFull);
+		completion.cancel(false);
+	}
+
+	/**
+	 * @return completed once the publisher has completed and every element received has been offered to the queue,
+	 * completed exceptionally if the publisher failed
+	 */
+	public CompletableFuture<Void> completion() {
+		return completion;
+	}
+
+	/**
+	 * @return the number of elements added to the queue
+	 */
+	public long accepted() {
+		return accepted.sum();
+	}
+
+	/**
+	 * @return the number of elements dropped because they were already queued or recently taken
+	 */
+	public long duplicates() {
+		return duplicates.sum();
+	}
+
+	/**
+	 * @return the number of elements received and waiting for room in the queue
+	 */
+	public synchronized int held() {
+		return held.size();
+	}
+
+	/**
+	 * Offers the element to the queue, dropping it if it is a duplicate.
+	 * @return false if the queue is full
+	 */
+	private boolean offer(final E e) {
+		if (queue.offer(e)) {
+			accepted.increment();
+			return true;
+		}
+		if (queue.isDuplicate(e)) {
+			duplicates.increment();
+			return true;
+		}
+		return false;
+	}
+
+	private synchronized void retry() {
+		E e;
+		while ((e = held.peek()) != null) {
+			if (!offer(e)) {
+				return;
+			}
+			held.poll();
+		}
+		if (done) {
+			queue.notFullListeners.remove(notFull);
+			if (!completion.isDone()) {
+				completion.complete(null);
+			}
+			return;
+		}
+		replenish();
+	}
+
+	/**
+	 * Requests as many elements as the queue has room for, up to maxOutstanding, waiting for half of them
+	 * to be received before requesting more. Nothing is requested while elements are held.
+	 */
+	private void replenish() {
+		if (done || upstream == null || !held.isEmpty()) {
+			return;
+		}
+		final long room = Math.min(queue.remainingCapacity(), maxOutstanding) - outstanding;
+		if (room > 0 && (outstanding == 0 || room >= (maxOutstanding + 1) / 2)) {
+			outstanding += room;
+			upstream.request(room);
+		}
+	}
+}
@@ -1,57 +1,539 @@
 package com.hybhub.util.concurrent;
 
-import java.util.LinkedHashSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
 
 /**
- * Abstract concurrent class holding a set and methods to handle concurrent locks.
- * The {@link java.util.Set} is a {@link LinkedHashSet}, it guaranties that there are no duplicates,
- * and is aware of the order of insertion inside the {@link java.util.Set},
- * so we are able to simulate a "first in first out" strategy.
+ * Abstract concurrent class holding a linked list, a membership index and methods to handle concurrent locks.
+ * The linked list keeps the order of insertion so we are able to simulate a "first in first out" strategy,
+ * the index is a {@link ConcurrentHashMap} from each element to its node, it guaranties that there are no duplicates.
+ * Puts only touch the tail of the list and takes only touch its head, so as in
+ * {@link java.util.concurrent.LinkedBlockingQueue} producers and consumers don't block each other,
+ * the index being concurrent it is shared by both sides without any extra lock.
+ * The index is keyed by the elements themselves, or by a key extracted from each element and optionally compared
+ * with an {@link Equivalence}, so elements are unique by that key without having to be wrapped.
+ * An optional {@link CountingBloomFilter} in front of the index answers the lookups of keys that are not queued
+ * without probing it.
  * Inspired by {@link java.util.concurrent.LinkedBlockingQueue}
  * @param <E>
  */
 abstract class AbstractConcurrentSet<E> {
 
+	/**
+	 * Linked list node, the index maps each element to its node so any node can be reached with a single lookup
+	 */
+	static class Node<E> {
+
+		/** The element, null once the node has been dequeued */
+		E item;
+
+		/**
+		 * The predecessor, only read with both locks held.
+		 * Either a queued node or head, null for head itself.
+		 */
+		Node<E> prev;
+
+		/**
+		 * One of:
+		 * - the real successor Node
+		 * - this Node, meaning the successor is head.next
+		 * - null, meaning there is no successor (this is the last node)
+		 */
+		Node<E> next;
+
+		/** The index key of the element, computed once when it is queued, null once the node has been dequeued */
+		Object key;
+
+		Node(final E x, final Object key) {
+			item = x;
+			this.key = key;
+		}
+	}
+
+	/**
+	 * Node remembering when it was queued, only created when metrics are on
+	 */
+	static final class TimedNode<E> extends Node<E> {
+
+		final long queuedAt;
+
+		TimedNode(final E x, final Object key, final long queuedAt) {
+			super(x, key);
+			this.queuedAt = queuedAt;
+		}
+	}
+
 	/** Maximum capacity of the queue */
 	final int capacity;
 
 	/** Current number of elements */
 	final AtomicInteger count = new AtomicInteger();
 
+	/**
+	 * Head of linked list.
+	 * Invariant: head.item == null
+	 */
+	Node<E> head;
+
+	/**
+	 * Tail of linked list.
+	 * Invariant: last.next == null
+	 */
+	Node<E> last;
+
+	/** Index from the key of each queued element to its node, shared by puts and takes */
+	final ConcurrentHashMap<Object, Node<E>> index = new ConcurrentHashMap<>();
+
+	/** Extracts the key of an element, null if elements are their own key */
+	final Function<? super E, ?> keyExtractor;
+
+	/** Compares the keys, null to use their equals and hashCode */
+	final Equivalence<Object> equivalence;
+
+	/** Holds at least the keys of the index, null if lookups always probe the index */
+	final CountingBloomFilter prefilter;
+
 	/** Lock held by take, poll, etc */
 	final ReentrantLock takeLock = new ReentrantLock();
 
 	/** Wait queue for waiting takes */
 	final Condition notEmpty = takeLock.newCondition();
 
+	/** Wait queue for batch takes waiting for their batch to fill, kept apart so they never swallow a signal */
+	final Condition batchFilling = takeLock.newCondition();
+
 	/** Lock held by put, offer, etc */
 	final ReentrantLock putLock = new ReentrantLock();
 
 	/** Wait queue for waiting puts */
 	final Condition notFull = putLock.newCondition();
 
-	/** Set backing the queue */
-	final LinkedHashSet<E> set;
+	/** Elements recently taken, still rejected as duplicates, null if taken elements can be offered again at once */
+	final DedupWindow window;
+
+	/** How puts and takes wait on the waiters, null if they wait on the lock conditions */
+	final WaitStrategy.OnWaiters waitStrategy;
+
+	/** Waiting takes, null if they wait on notEmpty */
+	final Waiters takeWaiters;
+
+	/** Batch takes waiting for their batch to fill, null if they wait on batchFilling */
+	final Waiters fillWaiters;
+
+	/** Waiting puts, null if they wait on notFull */
+	final Waiters putWaiters;
+
+	/** True once a take can go on, null if takes wait on notEmpty */
+	final BooleanSupplier notEmptyReady;
+
+	/** True once a put can go on, null if puts wait on notFull */
+	final BooleanSupplier notFullReady;
+
+	/** Counters updated by puts and takes, null if metrics are off */
+	final QueueMetrics metrics;
+
+	/**
+	 * Number of batch takes waiting for their batch to fill, puts signal a take each time while there are some.
+	 * Only modified with takeLock held.
+	 */
+	volatile int fillingTakes;
+
+	/** Run when the queue stops being empty, by the thread making it non empty, they must not block */
+	final CopyOnWriteArrayList<Runnable> notEmptyListeners = new CopyOnWriteArrayList<>();
+
+	/** Run when the queue stops being full, by the thread making room, they must not block */
+	final CopyOnWriteArrayList<Runnable> notFullListeners = new CopyOnWriteArrayList<>();
 
 	/**
 	 * Instantiate a concurrent set with a maximum capacity of capacity
 	 */
 	AbstractConcurrentSet(final int capacity) {
+		this(capacity, null, null, null, WaitStrategy.blocking(), null, false);
+	}
+
+	/**
+	 * Instantiate a concurrent set with a maximum capacity of capacity, unique by the key of the elements,
+	 * with a prefilter sized for the capacity if prefilter is true
+	 */
+	@SuppressWarnings("unchecked")
+	AbstractConcurrentSet(final int capacity, final DedupWindow window, final Function<? super E, ?> keyExtractor,
+			final Equivalence<?> equivalence, final WaitStrategy waitStrategy, final QueueMetrics metrics,
+			final boolean prefilter) {
 		this.capacity = capacity;
-		this.set = new LinkedHashSet<>();
+		this.window = window;
+		this.keyExtractor = keyExtractor;
+		this.equivalence = (Equivalence<Object>) equivalence;
+		this.prefilter = prefilter ? new CountingBloomFilter(capacity) : null;
+		if (waitStrategy instanceof WaitStrategy.OnWaiters) {
+			this.waitStrategy = (WaitStrategy.OnWaiters) waitStrategy;
+			takeWaiters = new Waiters();
+			putWaiters = new Waiters();
+			fillWaiters = new Waiters();
+			notEmptyReady = () -> count.get() > 0;
+			notFullReady = () -> count.get() < capacity;
+		} else {
+			this.waitStrategy = null;
+			takeWaiters = putWaiters = fillWaiters = null;
+			notEmptyReady = notFullReady = null;
+		}
+		last = head = new Node<>(null, null);
+		this.metrics = metrics;
+		if (metrics != null) {
+			metrics.bind(this);
+		}
+	}
+
+	/**
+	 * @return the index key of the element, computed once per queued element and kept in its node,
+	 * lookups compute it again so the extractor must be stable
+	 */
+	@SuppressWarnings("unchecked")
+	Object keyOf(final Object e) {
+		final Object key = keyExtractor == null ? e : keyExtractor.apply((E) e);
+		if (key == null) {
+			throw new NullPointerException("Null key");
+		}
+		return equivalence == null ? key : new EquivalentKey(key, equivalence);
+	}
+
+	/**
+	 * Links the element at the end of the queue unless it is already queued or recently taken.
+	 * The window is checked once the element is claimed in the index, a take records its element before
+	 * releasing it from the index, so an element can't slip in between.
+	 * The key is counted in the prefilter before it is claimed in the index, and counted out if it is rejected.
+	 * Called with putLock held.
+	 * @return true if the element has been linked, false if it is a duplicate
+	 */
+	boolean enqueue(final E e) {
+		final QueueMetrics metrics = this.metrics;
+		final Object key = keyOf(e);
+		final Node<E> node = metrics == null ? new Node<>(e, key) : new TimedNode<>(e, key, System.nanoTime());
+		final CountingBloomFilter prefilter = this.prefilter;
+		if (prefilter != null) {
+			prefilter.add(key);
+		}
+		if (index.putIfAbsent(key, node) != null) {
+			if (prefilter != null) {
+				prefilter.remove(key);
+			}
+			if (metrics != null) {
+				metrics.duplicates.increment();
+			}
+			return false;
+		}
+		if (window != null && window.contains(key)) {
+			index.remove(key, node);
+			if (prefilter != null) {
+				prefilter.remove(key);
+			}
+			if (metrics != null) {
+				metrics.duplicates.increment();
+			}
+			return false;
+		}
+		node.prev = last;
+		last = last.next = node;
+		if (metrics != null) {
+			metrics.accepted.increment();
+		}
+		return true;
+	}
+
+	/**
+	 * Removes a node from the head of the queue.
+	 * Called with takeLock held and a non empty queue.
+	 * @return the element
+	 */
+	E dequeue() {
+		final Node<E> h = head;
+		final Node<E> first = h.next;
+		h.next = h; // help GC
+		head = first;
+		first.prev = null;
+		final E x = first.item;
+		first.item = null;
+		taken(first);
+		return x;
+	}
+
+	/**
+	 * Releases the key of a node taken from the head of the queue, recording it in the window first.
+	 * Called with takeLock held.
+	 */
+	void taken(final Node<E> node) {
+		final Object key = node.key;
+		node.key = null;
+		if (window != null) {
+			window.record(key);
+		}
+		index.remove(key, node);
+		if (prefilter != null) {
+			prefilter.remove(key);
+		}
+		if (metrics != null) {
+			metrics.taken(System.nanoTime() - ((TimedNode<E>) node).queuedAt);
+		}
+	}
+
+	/**
+	 * Counts an element rejected by a put or an offer without being enqueued, as a duplicate if it is queued
+	 * or recently taken, else because the queue is full.
+	 */
+	void countRejected(final Object e) {
+		if (metrics != null) {
+			(isDuplicate(e) ? metrics.duplicates : metrics.full).increment();
+		}
+	}
+
+	/**
+	 * Acquires the put or take lock, timing the wait when metrics are on and the lock is held by another thread.
+	 */
+	void lock(final ReentrantLock lock) {
+		if (metrics == null) {
+			lock.lock();
+		} else if (!lock.tryLock()) {
+			final long start = System.nanoTime();
+			lock.lock();
+			metrics.lockWaited(lock == putLock, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Acquires the put or take lock unless interrupted, timing the wait when metrics are on
+	 * and the lock is held by another thread.
+	 */
+	void lockInterruptibly(final ReentrantLock lock) throws InterruptedException {
+		if (metrics == null) {
+			lock.lockInterruptibly();
+		} else if (!lock.tryLock()) {
+			final long start = System.nanoTime();
+			lock.lockInterruptibly();
+			metrics.lockWaited(lock == putLock, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * @return true if the element is queued or recently taken, offering it would be rejected
+	 */
+	boolean isDuplicate(final Object e) {
+		final Object key = keyOf(e);
+		return indexed(key) || (window != null && window.contains(key));
+	}
+
+	/**
+	 * @return true if the key is in the index, the index is only probed if the prefilter may hold the key
+	 */
+	boolean indexed(final Object key) {
+		return (prefilter == null || prefilter.mightContain(key)) && index.containsKey(key);
+	}
+
+	/**
+	 * Unlinks interior Node p and signals a waiting put if the queue was full.
+	 * Called with both locks held, the caller runs the not full listeners once it has released them.
+	 * @return true if the queue was full
+	 */
+	boolean unlink(final Node<E> p) {
+		final Node<E> trail = p.prev;
+		final Node<E> next = p.next;
+		final Object key = p.key;
+		p.key = null;
+		index.remove(key, p);
+		if (prefilter != null) {
+			prefilter.remove(key);
+		}
+		p.item = null;
+		trail.next = next;
+		if (next == null) {
+			last = trail;
+		} else {
+			next.prev = trail;
+		}
+		if (count.getAndDecrement() == capacity) {
+			signalNextPut();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the successor of p, or the first node if p has been dequeued since it was reached.
+	 * Called with both locks held.
+	 */
+	Node<E> succ(final Node<E> p) {
+		final Node<E> s = p.next;
+		return s == p ? head.next : s;
+	}
+
+	/**
+	 * Waits for an element. Called with takeLock held, released while parked if takes don't wait on notEmpty.
+	 */
+	void awaitNotEmpty() throws InterruptedException {
+		if (takeWaiters == null) {
+			notEmpty.await();
+			return;
+		}
+		takeLock.unlock();
+		try {
+			waitStrategy.await(takeWaiters, notEmptyReady, false, 0L);
+		} finally {
+			takeLock.lock();
+		}
+	}
+
+	/**
+	 * Waits for an element up to nanos. Called with takeLock held, released while parked if takes don't wait
+	 * on notEmpty.
+	 * @return the remaining nanoseconds
+	 */
+	long awaitNotEmpty(final long nanos) throws InterruptedException {
+		if (takeWaiters == null) {
+			return notEmpty.awaitNanos(nanos);
+		}
+		takeLock.unlock();
+		try {
+			return waitStrategy.await(takeWaiters, notEmptyReady, true, nanos);
+		} finally {
+			takeLock.lock();
+		}
+	}
+
+	/**
+	 * Waits for at least min elements, up to nanos if timed, the caller must count itself in fillingTakes first
+	 * so puts signal it. Filling takes wait apart from the other takes, a signal meant for a take
+	 * is never consumed by a batch that is still too small.
+	 * Called with takeLock held, released while parked if takes don't wait on notEmpty.
+	 * @return the remaining nanoseconds if timed
+	 */
+	long awaitCount(final int min, final boolean timed, final long nanos) throws InterruptedException {
+		if (fillWaiters == null) {
+			if (timed) {
+				return batchFilling.awaitNanos(nanos);
+			}
+			batchFilling.await();
+			return nanos;
+		}
+		takeLock.unlock();
+		try {
+			return waitStrategy.await(fillWaiters, () -> count.get() >= min, timed, nanos);
+		} finally {
+			takeLock.lock();
+		}
+	}
+
+	/**
+	 * Waits for space. Called with putLock held, released while parked if puts don't wait on notFull.
+	 */
+	void awaitNotFull() throws InterruptedException {
+		if (putWaiters == null) {
+			notFull.await();
+			return;
+		}
+		putLock.unlock();
+		try {
+			waitStrategy.await(putWaiters, notFullReady, false, 0L);
+		} finally {
+			putLock.lock();
+		}
+	}
+
+	/**
+	 * Waits for space up to nanos. Called with putLock held, released while parked if puts don't wait on notFull.
+	 * @return the remaining nanoseconds
+	 */
+	long awaitNotFull(final long nanos) throws InterruptedException {
+		if (putWaiters == null) {
+			return notFull.awaitNanos(nanos);
+		}
+		putLock.unlock();
+		try {
+			return waitStrategy.await(putWaiters, notFullReady, true, nanos);
+		} finally {
+			putLock.lock();
+		}
+	}
+
+	/**
+	 * Wakes up another waiting take. Called with takeLock held.
+	 */
+	void signalNextTake() {
+		if (takeWaiters == null) {
+			notEmpty.signal();
+		} else {
+			takeWaiters.wakeOne();
+		}
+	}
+
+	/**
+	 * Wakes up another waiting put. Called with putLock held.
+	 */
+	void signalNextPut() {
+		if (putWaiters == null) {
+			notFull.signal();
+		} else {
+			putWaiters.wakeOne();
+		}
+	}
+
+	/**
+	 * Passes the not full signal on when a put that has waited leaves without inserting its element,
+	 * the signal it consumed may be the only one a take sent. Called with putLock held.
+	 */
+	void signalNextPutIfRoom(final boolean waited) {
+		if (waited && count.get() < capacity) {
+			signalNextPut();
+		}
 	}
 
 	/**
 	 * Signals a waiting take. Called only from put/offer (which do not
 	 * otherwise ordinarily lock takeLock.)
+	 * Waiting takes parked by the wait strategy are unparked without taking takeLock.
 	 */
 	void signalNotEmpty() {
+		notifyListeners(notEmptyListeners);
+		if (takeWaiters != null) {
+			takeWaiters.wakeOne();
+			if (fillingTakes > 0) {
+				fillWaiters.wake(Integer.MAX_VALUE);
+			}
+			return;
+		}
 		takeLock.lock();
 		try {
 			notEmpty.signal();
+			if (fillingTakes > 0) {
+				batchFilling.signalAll();
+			}
+		} finally {
+			takeLock.unlock();
+		}
+	}
+
+	/**
+	 * Signals up to n waiting takes, called by batch puts once their elements are visible.
+	 */
+	void signalNotEmpty(final int n) {
+		notifyListeners(notEmptyListeners);
+		if (takeWaiters != null) {
+			takeWaiters.wake(n);
+			if (fillingTakes > 0) {
+				fillWaiters.wake(Integer.MAX_VALUE);
+			}
+			return;
+		}
+		takeLock.lock();
+		try {
+			for (int i = 0; i < n && takeLock.hasWaiters(notEmpty); i++) {
+				notEmpty.signal();
+			}
+			if (fillingTakes > 0) {
+				batchFilling.signalAll();
+			}
 		} finally {
 			takeLock.unlock();
 		}
@@ -59,8 +541,14 @@ abstract class AbstractConcurrentSet<E> {
 
 	/**
 	 * Signals a waiting put. Called only from take/poll.
+	 * Waiting puts parked by the wait strategy are unparked without taking putLock.
 	 */
 	void signalNotFull() {
+		notifyListeners(notFullListeners);
+		if (putWaiters != null) {
+			putWaiters.wakeOne();
+			return;
+		}
 		putLock.lock();
 		try {
 			notFull.signal();
@@ -69,6 +557,14 @@ abstract class AbstractConcurrentSet<E> {
 		}
 	}
 
+	static void notifyListeners(final CopyOnWriteArrayList<Runnable> listeners) {
+		if (!listeners.isEmpty()) {
+			for (Runnable listener : listeners) {
+				listener.run();
+			}
+		}
+	}
+
 	/**
 	 * Locks to prevent both puts and takes.
 	 */
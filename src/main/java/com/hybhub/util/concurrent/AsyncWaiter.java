@@ -0,0 +1,125 @@
+package com.hybhub.util.concurrent;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Future of an async take or put waiting in a queue of waiters. It is claimed exactly once, either by the put
+ * or take serving it or by its cancellation, completion or timeout, so an element is never handed to a future
+ * that can no longer accept it. A waiter leaving on its own removes itself from the queue of waiters.
+ * @param <E> element type
+ * @param <R> result type
+ */
+final class AsyncWaiter<E, R> extends CompletableFuture<R> {
+
+	private static final int WAITING = 0;
+
+	private static final int CLAIMED = 1;
+
+	@SuppressWarnings("rawtypes")
+	private static final AtomicIntegerFieldUpdater<AsyncWaiter> STATE =
+			AtomicIntegerFieldUpdater.newUpdater(AsyncWaiter.class, "state");
+
+	/** Times out the waiters, a single daemon thread only completing futures that nobody claimed */
+	static final ScheduledThreadPoolExecutor TIMER;
+
+	static {
+		TIMER = new ScheduledThreadPoolExecutor(1, r -> {
+			final Thread thread = new Thread(r, "concurrent-set-async-timer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		TIMER.setRemoveOnCancelPolicy(true);
+	}
+
+	/** Element to put, null for a take */
+	final E item;
+
+	private final Queue<AsyncWaiter<E, R>> waiters;
+
+	private volatile int state;
+
+	private volatile ScheduledFuture<?> timeout;
+
+	AsyncWaiter(final E item, final Queue<AsyncWaiter<E, R>> waiters) {
+		this.item = item;
+		this.waiters = waiters;
+	}
+
+	/**
+	 * @return true if the caller is the only one allowed to complete the future
+	 */
+	boolean claim() {
+		return STATE.compareAndSet(this, WAITING, CLAIMED);
+	}
+
+	/**
+	 * Completes a future claimed by the operation serving it.
+	 */
+	void fulfil(final R result) {
+		cancelTimeout();
+		super.complete(result);
+	}
+
+	/**
+	 * Completes the future with the value unless it is served first.
+	 * The waiter may already be queued, so it can be claimed before the task is stored: the claim is checked
+	 * once the task is stored, whoever of the two sees the other cancels the task.
+	 */
+	void expireAfter(final long nanos, final R value) {
+		final ScheduledFuture<?> t = TIMER.schedule(() -> {
+			if (claim()) {
+				waiters.remove(this);
+				super.complete(value);
+			}
+		}, nanos, TimeUnit.NANOSECONDS);
+		timeout = t;
+		if (state != WAITING) {
+			t.cancel(false);
+		}
+	}
+
+	@Override
+	public boolean cancel(final boolean mayInterruptIfRunning) {
+		if (!leave()) {
+			return isCancelled();
+		}
+		return super.cancel(mayInterruptIfRunning);
+	}
+
+	@Override
+	public boolean complete(final R value) {
+		return leave() && super.complete(value);
+	}
+
+	@Override
+	public boolean completeExceptionally(final Throwable ex) {
+		if (ex == null) {
+			throw new NullPointerException();
+		}
+		return leave() && super.completeExceptionally(ex);
+	}
+
+	/**
+	 * Claims the future for a completion from outside the queue and leaves the queue of waiters.
+	 */
+	private boolean leave() {
+		if (!claim()) {
+			return false;
+		}
+		waiters.remove(this);
+		cancelTimeout();
+		return true;
+	}
+
+	private void cancelTimeout() {
+		final ScheduledFuture<?> t = timeout;
+		if (t != null) {
+			t.cancel(false);
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package com.hybhub.util.concurrent;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a batch insert, such as {@link ConcurrentSetCollection#offerAll(java.util.Collection)}.
+ * Elements are rejected when they are already queued, when they are duplicated inside the batch
+ * or when the queue is full.
+ * @param <E>
+ */
+public final class BatchOfferResult<E> {
+
+	private final int accepted;
+
+	private final List<E> rejected;
+
+	BatchOfferResult(final int accepted, final List<E> rejected) {
+		this.accepted = accepted;
+		this.rejected = Collections.unmodifiableList(rejected);
+	}
+
+	/**
+	 * @return number of elements added to the queue
+	 */
+	public int getAccepted() {
+		return accepted;
+	}
+
+	/**
+	 * @return elements not added to the queue, in the order of the batch
+	 */
+	public List<E> getRejected() {
+		return rejected;
+	}
+
+	/**
+	 * @return true if every element of the batch has been added
+	 */
+	public boolean isAllAccepted() {
+		return rejected.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		return "BatchOfferResult{accepted=" + accepted + ", rejected=" + rejected.size() + '}';
+	}
+}
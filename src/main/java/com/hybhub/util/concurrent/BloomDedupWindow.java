@@ -0,0 +1,139 @@
+package com.hybhub.util.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Approximate {@link DedupWindow} made of two Bloom filters, elements are added to the current one
+ * and looked up in both. Once the current filter has received maxSize elements, or is older than the time to live,
+ * it becomes the previous one and the old previous filter is cleared and reused as the current one.
+ * The memory used only depends on maxSize and the false positive probability.
+ * Every filter only receives elements during the time to live following its start, readers ignore a filter
+ * started more than twice the time to live ago, so elements are forgotten in time even when nothing is taken.
+ * Bits are only set by the writer, readers may miss an element of a filter being cleared, which is about to be
+ * forgotten anyway.
+ */
+final class BloomDedupWindow extends DedupWindow {
+
+	/**
+	 * Filter with the time it started receiving elements
+	 */
+	private static final class Generation {
+
+		final AtomicLongArray filter;
+
+		final long startedAt;
+
+		Generation(final AtomicLongArray filter, final long startedAt) {
+			this.filter = filter;
+			this.startedAt = startedAt;
+		}
+	}
+
+	/** Number of elements a filter receives before rotating */
+	private final int maxSize;
+
+	/** Time to live in nanoseconds, 0 if filters only rotate once full */
+	private final long ttlNanos;
+
+	/** Number of bits of each filter, a power of two */
+	private final int bits;
+
+	/** Number of hash functions */
+	private final int hashes;
+
+	/** Generation receiving the elements */
+	private volatile Generation current;
+
+	/** Previous generation */
+	private volatile Generation previous;
+
+	/** Elements added to the current filter, only accessed by the writer */
+	private int added;
+
+	BloomDedupWindow(final int maxSize, final double fpp, final long ttlNanos) {
+		if (maxSize <= 0 || !(fpp > 0 && fpp < 1)) {
+			throw new IllegalArgumentException();
+		}
+		this.maxSize = maxSize;
+		this.ttlNanos = ttlNanos;
+		final double ln2 = Math.log(2);
+		final long optimal = (long) Math.ceil(-maxSize * Math.log(fpp) / (ln2 * ln2));
+		final long rounded = Long.highestOneBit(Math.max(64L, optimal - 1)) << 1;
+		this.bits = (int) Math.min(rounded, 1L << 30);
+		this.hashes = Math.max(1, (int) Math.round((double) bits / maxSize * ln2));
+		final long now = System.nanoTime();
+		this.current = new Generation(new AtomicLongArray(bits >>> 6), now);
+		this.previous = new Generation(new AtomicLongArray(bits >>> 6), now);
+	}
+
+	@Override
+	void record(final Object e) {
+		if (added == maxSize || (ttlNanos > 0 && System.nanoTime() - current.startedAt >= ttlNanos)) {
+			rotate();
+		}
+		final AtomicLongArray filter = current.filter;
+		final int h = e.hashCode();
+		final int h1 = mix(h);
+		final int h2 = mix(h1) | 1;
+		final int mask = bits - 1;
+		for (int i = 0, b = h1; i < hashes; i++, b += h2) {
+			final int word = (b & mask) >>> 6;
+			final long bit = 1L << b;
+			final long w = filter.get(word);
+			if ((w & bit) == 0) {
+				filter.lazySet(word, w | bit);
+			}
+		}
+		added++;
+	}
+
+	@Override
+	boolean contains(final Object e) {
+		final int h = e.hashCode();
+		final int h1 = mix(h);
+		final int h2 = mix(h1) | 1;
+		final long now = ttlNanos > 0 ? System.nanoTime() : 0L;
+		return contains(current, now, h1, h2) || contains(previous, now, h1, h2);
+	}
+
+	private boolean contains(final Generation generation, final long now, final int h1, final int h2) {
+		if (ttlNanos > 0 && now - generation.startedAt >= 2 * ttlNanos) {
+			// every element of the generation has been remembered for at least the time to live
+			return false;
+		}
+		final AtomicLongArray filter = generation.filter;
+		final int mask = bits - 1;
+		for (int i = 0, b = h1; i < hashes; i++, b += h2) {
+			if ((filter.get((b & mask) >>> 6) & (1L << b)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void rotate() {
+		final AtomicLongArray recycled = previous.filter;
+		reset(recycled);
+		previous = current;
+		current = new Generation(recycled, System.nanoTime());
+		added = 0;
+	}
+
+	private static void reset(final AtomicLongArray filter) {
+		for (int i = 0, n = filter.length(); i < n; i++) {
+			filter.lazySet(i, 0L);
+		}
+	}
+
+	/**
+	 * Murmur3 finalizer, spreads the bits of the hash code
+	 */
+	static int mix(int h) {
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+}
@@ -0,0 +1,414 @@
+package com.hybhub.util.concurrent;
+
+import java.util.AbstractQueue;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded blocking queue backed by arrays so duplicates inside the queue are not allowed.
+ * The elements are kept in a circular array and indexed by a fixed size open addressing {@link ObjectHashSet},
+ * both are allocated for the capacity at construction, so the memory used is known upfront
+ * and offering and taking elements doesn't allocate anything.
+ * A single lock guards the queue, inspired by {@link java.util.concurrent.ArrayBlockingQueue}
+ * @param <E>
+ */
+public class ConcurrentSetArrayBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+	/** Queued elements, in order from takeIndex */
+	private final Object[] items;
+
+	/** Index of the next element to take */
+	private int takeIndex;
+
+	/** Index of the next element to put */
+	private int putIndex;
+
+	/** Current number of elements */
+	private int count;
+
+	/** Index of the queued elements */
+	private final ObjectHashSet<E> index;
+
+	/** Main lock guarding all access */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/** Wait queue for waiting takes */
+	private final Condition notEmpty = lock.newCondition();
+
+	/** Wait queue for waiting puts */
+	private final Condition notFull = lock.newCondition();
+
+	public ConcurrentSetArrayBlockingQueue(final int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException();
+		}
+		this.items = new Object[capacity];
+		this.index = new ObjectHashSet<>(capacity);
+	}
+
+	@Override
+	public boolean offer(final E e) {
+		if (e == null) {
+			throw new NullPointerException();
+		}
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			if (count == items.length || !index.add(e)) {
+				return false;
+			}
+			enqueue(e);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void put(final E e) throws InterruptedException {
+		if (e == null) {
+			throw new NullPointerException();
+		}
+		final ReentrantLock lock = this.lock;
+		lock.lockInterruptibly();
+		try {
+			while (count == items.length) {
+				if (index.contains(e)) {
+					return;
+				}
+				notFull.await();
+			}
+			if (index.add(e)) {
+				enqueue(e);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean offer(final E e, final long timeout, final TimeUnit unit) throws InterruptedException {
+		if (e == null) {
+			throw new NullPointerException();
+		}
+		long nanos = unit.toNanos(timeout);
+		final ReentrantLock lock = this.lock;
+		lock.lockInterruptibly();
+		try {
+			while (count == items.length) {
+				if (nanos <= 0 || index.contains(e)) {
+					return false;
+				}
+				nanos = notFull.awaitNanos(nanos);
+			}
+			if (!index.add(e)) {
+				return false;
+			}
+			enqueue(e);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public E poll() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			return count == 0 ? null : dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public E take() throws InterruptedException {
+		final ReentrantLock lock = this.lock;
+		lock.lockInterruptibly();
+		try {
+			while (count == 0) {
+				notEmpty.await();
+			}
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public E poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		final ReentrantLock lock = this.lock;
+		lock.lockInterruptibly();
+		try {
+			while (count == 0) {
+				if (nanos <= 0) {
+					return null;
+				}
+				nanos = notEmpty.awaitNanos(nanos);
+			}
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public E peek() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			return (E) items[takeIndex];
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean remove(final Object o) {
+		if (o == null) {
+			return false;
+		}
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			if (!index.remove(o)) {
+				return false;
+			}
+			final Object[] items = this.items;
+			for (int i = takeIndex, k = 0; k < count; k++) {
+				if (o.equals(items[i])) {
+					removeAt(i);
+					return true;
+				}
+				if (++i == items.length) {
+					i = 0;
+				}
+			}
+			throw new IllegalStateException("Index out of sync with the queue");
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean contains(final Object o) {
+		if (o == null) {
+			return false;
+		}
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			return index.contains(o);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int size() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			return count;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int remainingCapacity() {
+		return items.length - size();
+	}
+
+	@Override
+	public void clear() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			Arrays.fill(items, null);
+			index.clear();
+			takeIndex = putIndex = count = 0;
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int drainTo(final Collection<? super E> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public int drainTo(final Collection<? super E> c, final int maxElements) {
+		if (c == null) {
+			throw new NullPointerException();
+		}
+		if (c == this) {
+			throw new IllegalArgumentException();
+		}
+		if (maxElements <= 0) {
+			return 0;
+		}
+		final Object[] items = this.items;
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			final int n = Math.min(maxElements, count);
+			int take = takeIndex;
+			int i = 0;
+			try {
+				while (i < n) {
+					final E x = (E) items[take];
+					c.add(x);
+					items[take] = null;
+					index.remove(x);
+					if (++take == items.length) {
+						take = 0;
+					}
+					i++;
+				}
+				return n;
+			} finally {
+				if (i > 0) {
+					count -= i;
+					takeIndex = take;
+					for (; i > 0 && lock.hasWaiters(notFull); i--) {
+						notFull.signal();
+					}
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Object[] toArray() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			final Object[] a = new Object[count];
+			final int end = takeIndex + count;
+			if (end <= items.length) {
+				System.arraycopy(items, takeIndex, a, 0, count);
+			} else {
+				final int tail = items.length - takeIndex;
+				System.arraycopy(items, takeIndex, a, 0, tail);
+				System.arraycopy(items, 0, a, tail, end - items.length);
+			}
+			return a;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Iterates over a snapshot of the queue, removing through the iterator removes from the queue.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public Iterator<E> iterator() {
+		final Object[] snapshot = toArray();
+		return new Iterator<E>() {
+
+			private int cursor;
+
+			private int lastRet = -1;
+
+			@Override
+			public boolean hasNext() {
+				return cursor < snapshot.length;
+			}
+
+			@Override
+			public E next() {
+				if (cursor >= snapshot.length) {
+					throw new NoSuchElementException();
+				}
+				lastRet = cursor++;
+				return (E) snapshot[lastRet];
+			}
+
+			@Override
+			public void remove() {
+				if (lastRet < 0) {
+					throw new IllegalStateException();
+				}
+				ConcurrentSetArrayBlockingQueue.this.remove(snapshot[lastRet]);
+				lastRet = -1;
+			}
+		};
+	}
+
+	/**
+	 * Inserts an element already added to the index at the put position and signals a take.
+	 * Call only with the lock held and a non full queue.
+	 */
+	private void enqueue(final E e) {
+		final Object[] items = this.items;
+		items[putIndex] = e;
+		if (++putIndex == items.length) {
+			putIndex = 0;
+		}
+		count++;
+		notEmpty.signal();
+	}
+
+	/**
+	 * Extracts the element at the take position, removes it from the index and signals a put.
+	 * Call only with the lock held and a non empty queue.
+	 */
+	@SuppressWarnings("unchecked")
+	private E dequeue() {
+		final Object[] items = this.items;
+		final E x = (E) items[takeIndex];
+		items[takeIndex] = null;
+		if (++takeIndex == items.length) {
+			takeIndex = 0;
+		}
+		count--;
+		index.remove(x);
+		notFull.signal();
+		return x;
+	}
+
+	/**
+	 * Deletes the item at position removeIndex, already removed from the index.
+	 * Call only with the lock held.
+	 */
+	private void removeAt(final int removeIndex) {
+		final Object[] items = this.items;
+		if (removeIndex == takeIndex) {
+			items[takeIndex] = null;
+			if (++takeIndex == items.length) {
+				takeIndex = 0;
+			}
+		} else {
+			// slide over all others up through putIndex
+			for (int i = removeIndex, next; ; i = next) {
+				if ((next = i + 1) == items.length) {
+					next = 0;
+				}
+				if (next == putIndex) {
+					items[i] = null;
+					putIndex = i;
+					break;
+				}
+				items[i] = items[next];
+			}
+		}
+		count--;
+		notFull.signal();
+	}
+}
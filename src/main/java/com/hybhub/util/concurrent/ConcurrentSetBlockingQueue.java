@@ -1,17 +1,39 @@
 package com.hybhub.util.concurrent;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 
 /**
- * A blocking queue backed by a set so duplicates inside the queue are not allowed.
+ * A blocking queue backed by a linked list and a concurrent index so duplicates inside the queue are not allowed.
  * @param <E>
  */
 public class ConcurrentSetBlockingQueue<E> extends ConcurrentSetQueue<E> implements BlockingQueue<E> {
 
+	/** Pending async takes, in order */
+	private final ConcurrentLinkedQueue<AsyncWaiter<E, E>> asyncTakes = new ConcurrentLinkedQueue<>();
+
+	/** Pending async puts, in order */
+	private final ConcurrentLinkedQueue<AsyncWaiter<E, Boolean>> asyncPuts = new ConcurrentLinkedQueue<>();
+
+	/** Requests to serve the async takes, only the thread raising it from 0 serves them */
+	private final AtomicInteger servingTakes = new AtomicInteger();
+
+	/** Requests to serve the async puts, only the thread raising it from 0 serves them */
+	private final AtomicInteger servingPuts = new AtomicInteger();
+
+	/** Serves the async takes once the queue is no longer empty, registered by the first async take */
+	private final Runnable serveTakes = this::serveTakes;
+
+	/** Serves the async puts once the queue is no longer full, registered by the first async put */
+	private final Runnable servePuts = this::servePuts;
 
 	public ConcurrentSetBlockingQueue(final int capacity) {
 		super(capacity);
@@ -21,6 +43,131 @@ public class ConcurrentSetBlockingQueue<E> extends ConcurrentSetQueue<E> impleme
 		this(Integer.MAX_VALUE);
 	}
 
+	private ConcurrentSetBlockingQueue(final Builder<? super E> builder) {
+		super(builder.capacity, builder.window, builder.keyExtractor, builder.equivalence, builder.waitStrategy,
+				builder.metrics, builder.prefilter);
+	}
+
+	/**
+	 * @return a builder of a queue with a maximum capacity of capacity, to combine the optional features
+	 */
+	public static Builder<Object> builder(final int capacity) {
+		return new Builder<>(capacity);
+	}
+
+	/**
+	 * Builds a {@link ConcurrentSetBlockingQueue}, each feature is off until it is set.
+	 * The element type is fixed by {@link #keyExtractor} or by the target of {@link #build}.
+	 * @param <E> the type of the elements the key extractor accepts
+	 */
+	public static final class Builder<E> {
+
+		private final int capacity;
+
+		private DedupWindow window;
+
+		private Function<? super E, ?> keyExtractor;
+
+		private Equivalence<?> equivalence;
+
+		private WaitStrategy waitStrategy = WaitStrategy.blocking();
+
+		private QueueMetrics metrics;
+
+		private boolean prefilter;
+
+		private Builder(final int capacity) {
+			if (capacity <= 0) {
+				throw new IllegalArgumentException();
+			}
+			this.capacity = capacity;
+		}
+
+		/**
+		 * @param window elements taken from the queue are rejected as duplicates while they are in the window,
+		 * to absorb producers re-offering the same work as soon as it has been picked up
+		 */
+		public Builder<E> window(final DedupWindow window) {
+			if (window == null) {
+				throw new NullPointerException();
+			}
+			this.window = window;
+			return this;
+		}
+
+		/**
+		 * Keeps a counting Bloom filter sized for the capacity in front of the index, so contains, remove and
+		 * the duplicate checks of puts on a full queue skip the index for most elements that are not queued,
+		 * at the cost of a compare and set per put and per take. Past 2^20 elements the filter stops growing
+		 * and lets more of them through to the index.
+		 */
+		public Builder<E> prefilter() {
+			this.prefilter = true;
+			return this;
+		}
+
+		/**
+		 * @param waitStrategy how puts wait for space and takes for an element, blocking by default
+		 */
+		public Builder<E> waitStrategy(final WaitStrategy waitStrategy) {
+			if (waitStrategy == null) {
+				throw new NullPointerException();
+			}
+			this.waitStrategy = waitStrategy;
+			return this;
+		}
+
+		/**
+		 * @param metrics counters updated by the queue, may only count one queue, checked by {@link #build}
+		 */
+		public Builder<E> metrics(final QueueMetrics metrics) {
+			if (metrics == null) {
+				throw new NullPointerException();
+			}
+			this.metrics = metrics;
+			return this;
+		}
+
+		/**
+		 * @param keyExtractor elements are unique by the key it extracts, the index holds the keys and not the elements
+		 */
+		@SuppressWarnings("unchecked")
+		public <F extends E> Builder<F> keyExtractor(final Function<? super F, ?> keyExtractor) {
+			if (keyExtractor == null) {
+				throw new NullPointerException();
+			}
+			final Builder<F> self = (Builder<F>) this;
+			self.keyExtractor = keyExtractor;
+			return self;
+		}
+
+		/**
+		 * @param equivalence compares the keys, or the elements without a key extractor, in place of their
+		 * equals and hashCode
+		 */
+		public Builder<E> equivalence(final Equivalence<?> equivalence) {
+			if (equivalence == null) {
+				throw new NullPointerException();
+			}
+			this.equivalence = equivalence;
+			return this;
+		}
+
+		/**
+		 * @throws IllegalStateException if the metrics already count another queue
+		 */
+		public <F extends E> ConcurrentSetBlockingQueue<F> build() {
+			return new ConcurrentSetBlockingQueue<>(this);
+		}
+	}
+
+	/**
+	 * @return the counters of this queue, null if it was created without metrics
+	 */
+	public QueueMetrics metrics() {
+		return metrics;
+	}
+
 	@Override
 	public int remainingCapacity() {
 		return ( capacity - count.get() );
@@ -33,19 +180,21 @@ public class ConcurrentSetBlockingQueue<E> extends ConcurrentSetQueue<E> impleme
 		long nanos = unit.toNanos(timeout);
 		final AtomicInteger count = this.count;
 		final ReentrantLock takeLock = this.takeLock;
-		takeLock.lockInterruptibly();
+		lockInterruptibly(takeLock);
 		try {
 			while (count.get() == 0) {
 				if (nanos <= 0) {
+					if (metrics != null) {
+						metrics.timedOut.increment();
+					}
 					return null;
 				}
-				nanos = notEmpty.awaitNanos(nanos);
+				nanos = awaitNotEmpty(nanos);
 			}
-			x = set.iterator().next();
-			set.remove(x);
+			x = dequeue();
 			c = count.getAndDecrement();
 			if (c > 1) {
-				notEmpty.signal();
+				signalNextTake();
 			}
 		} finally {
 			takeLock.unlock();
@@ -62,27 +211,33 @@ public class ConcurrentSetBlockingQueue<E> extends ConcurrentSetQueue<E> impleme
 			throw new NullPointerException();
 		}
 
-		int c;
+		int c = -1;
+		boolean waited = false;
 		final ReentrantLock putLock = this.putLock;
 		final AtomicInteger count = this.count;
-		fullyLock();
+		lockInterruptibly(putLock);
 		try {
-			if (set.contains(e)) {
-				return;
-			}
-
 			while (count.get() == capacity) {
-				notFull.await();
+				if (isDuplicate(e)) {
+					countRejected(e);
+					signalNextPutIfRoom(waited);
+					return;
+				}
+				awaitNotFull();
+				waited = true;
+			}
+			if (!enqueue(e)) {
+				signalNextPutIfRoom(waited);
+				return;
 			}
-			set.add(e);
 			c = count.getAndIncrement();
 			if (c + 1 < capacity) {
-				notFull.signal();
+				signalNextPut();
 			}
 		} finally {
-			fullyUnlock();
+			putLock.unlock();
 		}
-		if (c == 0) {
+		if (c == 0 || (c > 0 && fillingTakes > 0)) {
 			signalNotEmpty();
 		}
 	}
@@ -94,50 +249,138 @@ public class ConcurrentSetBlockingQueue<E> extends ConcurrentSetQueue<E> impleme
 		}
 		long nanos = unit.toNanos(timeout);
 		int c;
+		boolean waited = false;
 		final ReentrantLock putLock = this.putLock;
 		final AtomicInteger count = this.count;
-		putLock.lockInterruptibly();
+		lockInterruptibly(putLock);
 		try {
-			if (set.contains(e)) {
-				return false;
-			}
-
 			while (count.get() == capacity) {
-				if (nanos <= 0) {
+				if (nanos <= 0 || isDuplicate(e)) {
+					countRejected(e);
+					signalNextPutIfRoom(waited);
 					return false;
 				}
-				nanos = notFull.awaitNanos(nanos);
+				nanos = awaitNotFull(nanos);
+				waited = true;
+			}
+			if (!enqueue(e)) {
+				signalNextPutIfRoom(waited);
+				return false;
 			}
-			set.add(e);
 			c = count.getAndIncrement();
 			if (c + 1 < capacity) {
-				notFull.signal();
+				signalNextPut();
 			}
 		} finally {
 			putLock.unlock();
 		}
-		if (c == 0) {
+		if (c == 0 || (c > 0 && fillingTakes > 0)) {
 			signalNotEmpty();
 		}
 		return true;
 	}
 
+	/**
+	 * Inserts the elements of the batch that are neither queued nor duplicated inside the batch,
+	 * waiting if necessary for space to become available.
+	 * The put lock is taken once, it is only released while waiting for space.
+	 * If interrupted while waiting, the elements already inserted stay in the queue.
+	 * @return the accepted count and the rejected elements
+	 */
+	public BatchOfferResult<E> putAll(final Collection<? extends E> c) throws InterruptedException {
+		return offerAll(c, false, 0L);
+	}
+
+	/**
+	 * Inserts the elements of the batch that are neither queued nor duplicated inside the batch,
+	 * waiting up to the specified wait time for space to become available.
+	 * Elements that still don't fit once the time has elapsed are rejected.
+	 * @return the accepted count and the rejected elements
+	 */
+	public BatchOfferResult<E> offerAll(final Collection<? extends E> c, final long timeout, final TimeUnit unit)
+			throws InterruptedException {
+		return offerAll(c, true, unit.toNanos(timeout));
+	}
+
+	private BatchOfferResult<E> offerAll(final Collection<? extends E> c, final boolean timed, long nanos)
+			throws InterruptedException {
+		checkBatch(c);
+		final List<E> rejected = new ArrayList<>();
+		int accepted = 0;
+		int pending = 0;
+		boolean waited = false;
+		final AtomicInteger count = this.count;
+		final ReentrantLock putLock = this.putLock;
+		lockInterruptibly(putLock);
+		try {
+			next:
+			for (E e : c) {
+				while (count.get() + pending >= capacity) {
+					if (isDuplicate(e) || (timed && nanos <= 0)) {
+						countRejected(e);
+						rejected.add(e);
+						continue next;
+					}
+					if (pending > 0) {
+						// make the pending elements visible to consumers before waiting
+						publish(pending);
+						accepted += pending;
+						pending = 0;
+					} else if (timed) {
+						nanos = awaitNotFull(nanos);
+						waited = true;
+					} else {
+						awaitNotFull();
+						waited = true;
+					}
+				}
+				if (enqueue(e)) {
+					pending++;
+				} else {
+					rejected.add(e);
+				}
+			}
+		} finally {
+			if (pending > 0) {
+				publish(pending);
+				accepted += pending;
+			} else {
+				signalNextPutIfRoom(waited);
+			}
+			putLock.unlock();
+		}
+		return new BatchOfferResult<>(accepted, rejected);
+	}
+
+	/**
+	 * Counts n enqueued elements and wakes up the consumers.
+	 * Called with putLock held.
+	 */
+	private void publish(final int n) {
+		final int c = count.getAndAdd(n);
+		if (c + n < capacity) {
+			signalNextPut();
+		}
+		if (c == 0 || fillingTakes > 0) {
+			signalNotEmpty(n);
+		}
+	}
+
 	@Override
 	public E take() throws InterruptedException {
 		E x;
 		int c;
 		final AtomicInteger count = this.count;
 		final ReentrantLock takeLock = this.takeLock;
-		takeLock.lockInterruptibly();
+		lockInterruptibly(takeLock);
 		try {
 			while (count.get() == 0) {
-				notEmpty.await();
+				awaitNotEmpty();
 			}
-			x = set.iterator().next();
-			set.remove(x);
+			x = dequeue();
 			c = count.getAndDecrement();
 			if (c > 1) {
-				notEmpty.signal();
+				signalNextTake();
 			}
 		} finally {
 			takeLock.unlock();
@@ -155,32 +398,310 @@ public class ConcurrentSetBlockingQueue<E> extends ConcurrentSetQueue<E> impleme
 
 	@Override
 	public int drainTo(final Collection<? super E> c, final int maxElements) {
+		checkDrain(c);
+		if (maxElements <= 0) {
+			return 0;
+		}
+		lock(takeLock);
+		return drainAndUnlock(c, maxElements);
+	}
+
+	/**
+	 * Waits up to the specified wait time for an element, then removes at most maxElements available elements
+	 * and adds them to the given collection. The elements are taken with a single acquisition of the take lock.
+	 * @return the number of elements transferred, 0 if the time elapsed
+	 */
+	public int drainTo(final Collection<? super E> c, final int maxElements, final long timeout, final TimeUnit unit)
+			throws InterruptedException {
+		checkDrain(c);
+		if (maxElements <= 0) {
+			return 0;
+		}
+		long nanos = unit.toNanos(timeout);
+		final AtomicInteger count = this.count;
+		final ReentrantLock takeLock = this.takeLock;
+		lockInterruptibly(takeLock);
+		boolean locked = true;
+		try {
+			while (count.get() == 0) {
+				if (nanos <= 0) {
+					if (metrics != null) {
+						metrics.timedOut.increment();
+					}
+					return 0;
+				}
+				nanos = awaitNotEmpty(nanos);
+			}
+			locked = false;
+			return drainAndUnlock(c, maxElements);
+		} finally {
+			if (locked) {
+				takeLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Takes a batch of elements, waiting if necessary until an element becomes available, then waiting up to
+	 * the specified wait time for the batch to reach min elements. The batch holds at most max elements,
+	 * fewer than min if the time elapsed. Puts signal the waiting batch as it fills, and the whole batch
+	 * is taken with a single acquisition of the take lock.
+	 * @return the batch, never empty
+	 */
+	public List<E> take(final int min, final int max, final long timeout, final TimeUnit unit)
+			throws InterruptedException {
+		if (min <= 0 || max < min) {
+			throw new IllegalArgumentException();
+		}
+		long nanos = unit.toNanos(timeout);
+		final AtomicInteger count = this.count;
+		final ReentrantLock takeLock = this.takeLock;
+		lockInterruptibly(takeLock);
+		boolean locked = true;
+		try {
+			if (count.get() < min) {
+				// counted before checking the count again so no put can miss this take,
+				// it waits for its first element apart from the other takes too
+				fillingTakes++;
+				try {
+					while (count.get() == 0) {
+						awaitCount(1, false, 0L);
+					}
+					while (count.get() < min && nanos > 0) {
+						nanos = awaitCount(min, true, nanos);
+					}
+				} finally {
+					fillingTakes--;
+				}
+				while (count.get() == 0) {
+					// taken by others while waiting for the batch to fill
+					awaitNotEmpty();
+				}
+			}
+			final List<E> batch = new ArrayList<>(Math.min(max, count.get()));
+			locked = false;
+			drainAndUnlock(batch, max);
+			return batch;
+		} finally {
+			if (locked) {
+				takeLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Retrieves and removes the head of the queue without blocking the caller. If the queue is empty,
+	 * the future is completed by the put making it non empty, in the thread of that put.
+	 * Cancelling the future removes it from the waiting takes.
+	 */
+	public CompletableFuture<E> takeAsync() {
+		return takeAsync(false, 0L);
+	}
+
+	/**
+	 * Retrieves and removes the head of the queue without blocking the caller.
+	 * @return a future completed with the head of the queue, or with null if the time elapsed
+	 * @see #takeAsync()
+	 */
+	public CompletableFuture<E> takeAsync(final long timeout, final TimeUnit unit) {
+		return takeAsync(true, unit.toNanos(timeout));
+	}
+
+	private CompletableFuture<E> takeAsync(final boolean timed, final long nanos) {
+		final E x = poll();
+		if (x != null || (timed && nanos <= 0)) {
+			return CompletableFuture.completedFuture(x);
+		}
+		final AsyncWaiter<E, E> waiter = new AsyncWaiter<>(null, asyncTakes);
+		notEmptyListeners.addIfAbsent(serveTakes);
+		asyncTakes.add(waiter);
+		if (timed) {
+			waiter.expireAfter(nanos, null);
+		}
+		// queued before checking the count again so no put can miss it
+		serveTakes();
+		return waiter;
+	}
+
+	/**
+	 * Inserts the element without blocking the caller. If the queue is full, the future is completed
+	 * by the take making room, in the thread of that take.
+	 * Cancelling the future removes it from the waiting puts.
+	 * @return a future completed with true if the element was added, false if it was already queued
+	 */
+	public CompletableFuture<Boolean> putAsync(final E e) {
+		return putAsync(e, false, 0L);
+	}
+
+	/**
+	 * Inserts the element without blocking the caller.
+	 * @return a future completed with true if the element was added, false if it was already queued
+	 * or if the time elapsed
+	 * @see #putAsync(Object)
+	 */
+	public CompletableFuture<Boolean> putAsync(final E e, final long timeout, final TimeUnit unit) {
+		return putAsync(e, true, unit.toNanos(timeout));
+	}
+
+	private CompletableFuture<Boolean> putAsync(final E e, final boolean timed, final long nanos) {
+		if (e == null) {
+			throw new NullPointerException();
+		}
+		// a failed offer has already counted its rejection
+		final boolean offered = count.get() < capacity;
+		if (offered && offer(e)) {
+			return CompletableFuture.completedFuture(Boolean.TRUE);
+		}
+		if (isDuplicate(e) || (timed && nanos <= 0)) {
+			if (!offered) {
+				countRejected(e);
+			}
+			return CompletableFuture.completedFuture(Boolean.FALSE);
+		}
+		final AsyncWaiter<E, Boolean> waiter = new AsyncWaiter<>(e, asyncPuts);
+		notFullListeners.addIfAbsent(servePuts);
+		asyncPuts.add(waiter);
+		if (timed) {
+			waiter.expireAfter(nanos, Boolean.FALSE);
+		}
+		// queued before checking the count again so no take can miss it
+		servePuts();
+		return waiter;
+	}
+
+	/**
+	 * Hands elements to the async takes while there are both, one take lock acquisition per element.
+	 * The futures are completed once the lock is released.
+	 */
+	private void serveTakes() {
+		if (asyncTakes.isEmpty() || servingTakes.getAndIncrement() != 0) {
+			return;
+		}
+		int missed = 1;
+		do {
+			for (;;) {
+				AsyncWaiter<E, E> waiter = null;
+				E x = null;
+				int c = -1;
+				final ReentrantLock takeLock = this.takeLock;
+				takeLock.lock();
+				try {
+					if (count.get() > 0) {
+						// claimed once an element is there for it, cancelled waiters are skipped
+						while ((waiter = asyncTakes.poll()) != null && !waiter.claim()) {
+						}
+						if (waiter != null) {
+							x = dequeue();
+							c = count.getAndDecrement();
+							if (c > 1) {
+								signalNextTake();
+							}
+						}
+					}
+				} finally {
+					takeLock.unlock();
+				}
+				if (waiter == null) {
+					break;
+				}
+				if (c == capacity) {
+					signalNotFull();
+				}
+				waiter.fulfil(x);
+			}
+			missed = servingTakes.addAndGet(-missed);
+		} while (missed != 0);
+	}
+
+	/**
+	 * Enqueues the elements of the async puts while there is room, one put lock acquisition per element.
+	 * The futures are completed once the lock is released.
+	 */
+	private void servePuts() {
+		if (asyncPuts.isEmpty() || servingPuts.getAndIncrement() != 0) {
+			return;
+		}
+		int missed = 1;
+		do {
+			for (;;) {
+				AsyncWaiter<E, Boolean> waiter = null;
+				boolean added = false;
+				int c = -1;
+				final ReentrantLock putLock = this.putLock;
+				putLock.lock();
+				try {
+					if (count.get() < capacity) {
+						while ((waiter = asyncPuts.poll()) != null && !waiter.claim()) {
+						}
+						if (waiter != null && (added = enqueue(waiter.item))) {
+							c = count.getAndIncrement();
+							if (c + 1 < capacity) {
+								signalNextPut();
+							}
+						}
+					}
+				} finally {
+					putLock.unlock();
+				}
+				if (waiter == null) {
+					break;
+				}
+				if (c == 0 || (c > 0 && fillingTakes > 0)) {
+					signalNotEmpty();
+				}
+				waiter.fulfil(added);
+			}
+			missed = servingPuts.addAndGet(-missed);
+		} while (missed != 0);
+	}
+
+	private void checkDrain(final Collection<? super E> c) {
 		if (c == null) {
 			throw new NullPointerException();
 		}
 		if (c == this) {
 			throw new IllegalArgumentException();
 		}
-		if (maxElements <= 0) {
-			return 0;
-		}
+	}
+
+	/**
+	 * Removes at most maxElements available elements and adds them to the given collection, the first nodes
+	 * are detached in a single walk and the count is updated once.
+	 * Called with takeLock held, releases it.
+	 * @return the number of elements transferred
+	 */
+	private int drainAndUnlock(final Collection<? super E> c, final int maxElements) {
 		boolean signalNotFull = false;
 		final ReentrantLock takeLock = this.takeLock;
-		takeLock.lock();
 		try {
 			int n = Math.min(maxElements, count.get());
+			// detach the first n nodes in a single walk
+			Node<E> h = head;
 			int i = 0;
 			try {
 				while (i < n) {
-					E e = set.iterator().next();
-					set.remove(e);
-					c.add(e);
+					final Node<E> p = h.next;
+					c.add(p.item);
+					taken(p);
+					p.item = null;
+					h.next = h;
+					h = p;
 					++i;
 				}
 				return n;
 			} finally {
 				if (i > 0) {
-					signalNotFull = (count.getAndAdd(-i) == capacity);
+					h.prev = null;
+					head = h;
+					final int before = count.getAndAdd(-i);
+					signalNotFull = (before == capacity);
+					if (before > i) {
+						// elements left for the other takes
+						signalNextTake();
+					}
+					if (metrics != null) {
+						metrics.drained.add(i);
+					}
 				}
 			}
 		} finally {
@@ -1,10 +1,18 @@
 package com.hybhub.util.concurrent;
 
 
+import java.lang.reflect.Array;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class ConcurrentSetCollection<E> extends AbstractConcurrentSet<E> implements Collection<E> {
 
@@ -12,6 +20,12 @@ public class ConcurrentSetCollection<E> extends AbstractConcurrentSet<E> impleme
 		super(capacity);
 	}
 
+	ConcurrentSetCollection(final int capacity, final DedupWindow window, final Function<? super E, ?> keyExtractor,
+			final Equivalence<?> equivalence, final WaitStrategy waitStrategy, final QueueMetrics metrics,
+			final boolean prefilter) {
+		super(capacity, window, keyExtractor, equivalence, waitStrategy, metrics, prefilter);
+	}
+
 	@Override
 	public int size() {
 		return count.get();
@@ -19,13 +33,31 @@ public class ConcurrentSetCollection<E> extends AbstractConcurrentSet<E> impleme
 
 	@Override
 	public void clear() {
+		boolean wasFull = false;
 		fullyLock();
 		try {
-			set.clear();
+			for (Node<E> p, h = head; (p = h.next) != null; h = p) {
+				h.next = h;
+				p.item = null;
+				p.key = null;
+			}
+			head = last;
+			head.prev = null;
+			index.clear();
+			if (prefilter != null) {
+				prefilter.clear();
+			}
+			if (count.getAndSet(0) == capacity) {
+				signalNextPut();
+				wasFull = true;
+			}
 		}
 		finally {
 			fullyUnlock();
 		}
+		if (wasFull) {
+			notifyListeners(notFullListeners);
+		}
 
 	}
 
@@ -40,27 +72,106 @@ public class ConcurrentSetCollection<E> extends AbstractConcurrentSet<E> impleme
 		}
 		final AtomicInteger count = this.count;
 		if (count.get() == capacity) {
+			countRejected(e);
 			return false;
 		}
 		int c = -1;
-		fullyLock();
+		final ReentrantLock putLock = this.putLock;
+		lock(putLock);
 		try {
-			if (count.get() < capacity && ! set.contains(e)) {
-				set.add(e);
+			if (count.get() >= capacity) {
+				countRejected(e);
+			} else if (enqueue(e)) {
 				c = count.getAndIncrement();
 				if (c + 1 < capacity) {
-					notFull.signal();
+					signalNextPut();
 				}
 			}
 		} finally {
-			fullyUnlock();
+			putLock.unlock();
 		}
-		if (c == 0) {
+		if (c == 0 || (c > 0 && fillingTakes > 0)) {
 			signalNotEmpty();
 		}
 		return c >= 0;
 	}
 
+	/**
+	 * Inserts the elements of the batch that are neither queued nor duplicated inside the batch,
+	 * as long as the queue has room for them. The put lock is taken once for the whole batch.
+	 * @return the accepted count and the rejected elements
+	 */
+	public BatchOfferResult<E> offerAll(final Collection<? extends E> c) {
+		return offerAll(c, false);
+	}
+
+	/**
+	 * @param failWhenFull true to stop at the first element that is not a duplicate and doesn't fit,
+	 * and throw once the elements inserted before it have been published
+	 * @throws IllegalStateException if failWhenFull and an element doesn't fit
+	 */
+	private BatchOfferResult<E> offerAll(final Collection<? extends E> c, final boolean failWhenFull) {
+		checkBatch(c);
+		final List<E> rejected = new ArrayList<>();
+		int accepted = 0;
+		int previous = -1;
+		boolean full = false;
+		final AtomicInteger count = this.count;
+		final ReentrantLock putLock = this.putLock;
+		lock(putLock);
+		try {
+			for (E e : c) {
+				if (count.get() + accepted >= capacity) {
+					if (failWhenFull && !isDuplicate(e)) {
+						if (metrics != null) {
+							metrics.full.increment();
+						}
+						full = true;
+						break;
+					}
+					countRejected(e);
+					rejected.add(e);
+				} else if (enqueue(e)) {
+					accepted++;
+				} else {
+					rejected.add(e);
+				}
+			}
+			if (accepted > 0) {
+				previous = count.getAndAdd(accepted);
+				if (previous + accepted < capacity) {
+					signalNextPut();
+				}
+			}
+		} finally {
+			putLock.unlock();
+		}
+		if (previous == 0 || (previous > 0 && fillingTakes > 0)) {
+			signalNotEmpty(accepted);
+		}
+		if (full) {
+			throw new IllegalStateException("Queue full");
+		}
+		return new BatchOfferResult<>(accepted, rejected);
+	}
+
+	/**
+	 * Checks a batch before any of its elements is inserted.
+	 */
+	void checkBatch(final Collection<? extends E> c) {
+		if (c == null) {
+			throw new NullPointerException();
+		}
+		if (c == this) {
+			throw new IllegalArgumentException();
+		}
+		for (E e : c) {
+			if (e == null) {
+				throw new NullPointerException();
+			}
+		}
+	}
+
 	@Override
 	public boolean add(final E e) {
 		if (this.offer(e)) {
@@ -76,52 +187,79 @@ public class ConcurrentSetCollection<E> extends AbstractConcurrentSet<E> impleme
 		if (o == null) {
 			return false;
 		}
+		final Object key = keyOf(o);
+		if (prefilter != null && !prefilter.mightContain(key)) {
+			return false;
+		}
+		final boolean wasFull;
 		fullyLock();
 		try {
-			if(set.remove(o)){
-				count.decrementAndGet();
-				return true;
+			final Node<E> node = index.get(key);
+			if (node == null) {
+				return false;
 			}
-			return false;
+			wasFull = unlink(node);
 		} finally {
 			fullyUnlock();
 		}
+		if (wasFull) {
+			notifyListeners(notFullListeners);
+		}
+		return true;
 	}
 
+	/**
+	 * Reads the concurrent index without taking any lock, so membership checks never block puts and takes.
+	 * An element is reported as soon as its offer has claimed it in the index, and until its take has released it.
+	 */
 	@Override
 	public boolean contains(final Object o) {
-		if(o == null) {
-			return false;
-		}
-		fullyLock();
-		try {
-			return set.contains(o);
-		}
-		finally {
-			fullyUnlock();
-		}
+		return o != null && indexed(keyOf(o));
 	}
 
+	/**
+	 * Checks the whole collection against the concurrent index in one pass, without taking any lock.
+	 */
 	@Override
 	public boolean containsAll(final Collection<?> c) {
-		for (Object o : c){
-			if(!this.contains(o)){
+		if (c == this) {
+			return true;
+		}
+		for (Object o : c) {
+			if (o == null || !indexed(keyOf(o))) {
 				return false;
 			}
 		}
 		return true;
 	}
 
+	/**
+	 * Weakly consistent iterator walking the live nodes, it never throws
+	 * {@link java.util.ConcurrentModificationException} and reflects some of the changes made after its creation.
+	 */
 	@Override
 	public Iterator<E> iterator() {
-		return new CopyOnWriteArrayList<>(set).iterator();
+		return new Itr();
+	}
+
+	/**
+	 * Weakly consistent spliterator, elements are copied in batches growing at each split.
+	 */
+	@Override
+	public Spliterator<E> spliterator() {
+		return new SetSpliterator();
 	}
 
 	@Override
 	public Object[] toArray() {
 		fullyLock();
 		try {
-			return set.toArray();
+			final Object[] a = new Object[count.get()];
+			int k = 0;
+			for (Node<E> p = head.next; p != null; p = p.next) {
+				a[k++] = p.item;
+			}
+			return a;
 		}
 		finally {
 			fullyUnlock();
@@ -129,19 +267,36 @@ public class ConcurrentSetCollection<E> extends AbstractConcurrentSet<E> impleme
 	}
 
 	@Override
-	public <T> T[] toArray(final T[] a) {
+	@SuppressWarnings("unchecked")
+	public <T> T[] toArray(T[] a) {
 		fullyLock();
 		try {
-			return set.toArray(a);
+			final int size = count.get();
+			if (a.length < size) {
+				a = (T[]) Array.newInstance(a.getClass().getComponentType(), size);
+			}
+			int k = 0;
+			for (Node<E> p = head.next; p != null; p = p.next) {
+				a[k++] = (T) p.item;
+			}
+			if (a.length > k) {
+				a[k] = null;
+			}
+			return a;
 		}
 		finally {
 			fullyUnlock();
 		}
 	}
 
+	/**
+	 * Adds the elements of the collection with a single acquisition of the put lock, duplicates are skipped.
+	 * @throws IllegalStateException if an element that is not a duplicate doesn't fit, the elements added before
+	 * it stay in the queue
+	 */
 	@Override
 	public boolean addAll(final Collection<? extends E> c) {
-		throw new UnsupportedOperationException();
+		return offerAll(c, true).getAccepted() > 0;
 	}
 
 	@Override
@@ -153,4 +308,182 @@ public class ConcurrentSetCollection<E> extends AbstractConcurrentSet<E> impleme
 	public boolean retainAll(final Collection<?> c) {
 		throw new UnsupportedOperationException();
 	}
+
+	private class Itr implements Iterator<E> {
+
+		/** Next node to return, null at the end */
+		private Node<E> current;
+
+		/** Item of current, kept in case it is taken before next() */
+		private E currentElement;
+
+		/** Node returned by the last call to next() */
+		private Node<E> lastRet;
+
+		Itr() {
+			fullyLock();
+			try {
+				current = head.next;
+				if (current != null) {
+					currentElement = current.item;
+				}
+			} finally {
+				fullyUnlock();
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return current != null;
+		}
+
+		/**
+		 * @return the first live node after p, null at the end
+		 */
+		private Node<E> nextNode(Node<E> p) {
+			for (;;) {
+				final Node<E> s = succ(p);
+				if (s == null || s.item != null) {
+					return s;
+				}
+				p = s;
+			}
+		}
+
+		@Override
+		public E next() {
+			fullyLock();
+			try {
+				if (current == null) {
+					throw new NoSuchElementException();
+				}
+				final E x = currentElement;
+				lastRet = current;
+				current = nextNode(current);
+				currentElement = (current == null) ? null : current.item;
+				return x;
+			} finally {
+				fullyUnlock();
+			}
+		}
+
+		@Override
+		public void remove() {
+			if (lastRet == null) {
+				throw new IllegalStateException();
+			}
+			boolean wasFull = false;
+			fullyLock();
+			try {
+				final Node<E> node = lastRet;
+				lastRet = null;
+				if (node.item != null) {
+					wasFull = unlink(node);
+				}
+			} finally {
+				fullyUnlock();
+			}
+			if (wasFull) {
+				notifyListeners(notFullListeners);
+			}
+		}
+	}
+
+	private class SetSpliterator implements Spliterator<E> {
+
+		/** Maximum number of elements copied by a split */
+		private static final int MAX_BATCH = 1 << 25;
+
+		/** Next node to visit, null before the first visit */
+		private Node<E> current;
+
+		/** Size of the last batch */
+		private int batch;
+
+		private boolean exhausted;
+
+		private long estimate = count.get();
+
+		@Override
+		public long estimateSize() {
+			return estimate;
+		}
+
+		@Override
+		public Spliterator<E> trySplit() {
+			if (exhausted) {
+				return null;
+			}
+			final int n = (batch <= 0) ? 1 : (batch >= MAX_BATCH) ? MAX_BATCH : batch + 1;
+			final Object[] a = new Object[n];
+			int i = 0;
+			Node<E> p;
+			fullyLock();
+			try {
+				p = current == null ? head.next : current;
+				while (p != null && i < n) {
+					if ((a[i] = p.item) != null) {
+						++i;
+					}
+					p = succ(p);
+				}
+			} finally {
+				fullyUnlock();
+			}
+			if ((current = p) == null) {
+				estimate = 0L;
+				exhausted = true;
+			} else if ((estimate -= i) < 0L) {
+				estimate = 0L;
+			}
+			if (i == 0) {
+				return null;
+			}
+			batch = i;
+			return Spliterators.spliterator(a, 0, i, characteristics());
+		}
+
+		@Override
+		public boolean tryAdvance(final Consumer<? super E> action) {
+			if (action == null) {
+				throw new NullPointerException();
+			}
+			if (exhausted) {
+				return false;
+			}
+			E e = null;
+			fullyLock();
+			try {
+				if (current == null) {
+					current = head.next;
+				}
+				while (current != null && e == null) {
+					e = current.item;
+					current = succ(current);
+				}
+			} finally {
+				fullyUnlock();
+			}
+			if (current == null) {
+				exhausted = true;
+			}
+			if (e == null) {
+				return false;
+			}
+			action.accept(e);
+			return true;
+		}
+
+		@Override
+		public void forEachRemaining(final Consumer<? super E> action) {
+			while (tryAdvance(action)) {
+				// one lock acquisition per element, so producers and consumers are never blocked for long
+			}
+		}
+
+		@Override
+		public int characteristics() {
+			return Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.DISTINCT | Spliterator.CONCURRENT;
+		}
+	}
 }
@@ -0,0 +1,471 @@
+package com.hybhub.util.concurrent;
+
+import java.util.AbstractQueue;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A blocking queue taking its elements in priority order so duplicates inside the queue are not allowed.
+ * Elements are kept in a binary heap of nodes, each node knows its position in the heap and a
+ * {@link ConcurrentHashMap} maps each element to its node, so finding an element is a single lookup and
+ * moving or removing it is O(log n).
+ * Offering an element equal to a queued one but with a higher priority replaces the queued element
+ * and moves it up the heap (decrease-key), offering it with the same or a lower priority is rejected.
+ * A single lock guards the heap, inspired by {@link java.util.concurrent.PriorityBlockingQueue}
+ * @param <E>
+ */
+public class ConcurrentSetPriorityBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+	/**
+	 * Heap node, holds its element and its position in the heap
+	 */
+	static final class Node<E> {
+
+		E item;
+
+		int pos;
+
+		Node(final E item) {
+			this.item = item;
+		}
+	}
+
+	/** Initial length of the heap array, it grows up to the capacity */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** Maximum capacity of the queue */
+	private final int capacity;
+
+	/** Orders the elements, null for their natural ordering */
+	private final Comparator<? super E> comparator;
+
+	/** Binary heap, the children of heap[n] are heap[2 * n + 1] and heap[2 * n + 2] */
+	private Node<E>[] heap;
+
+	/** Current number of elements */
+	private int size;
+
+	/** Index of the queued elements, only modified with the lock held */
+	private final ConcurrentHashMap<E, Node<E>> index = new ConcurrentHashMap<>();
+
+	/** Main lock guarding all access */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/** Wait queue for waiting takes */
+	private final Condition notEmpty = lock.newCondition();
+
+	/** Wait queue for waiting puts */
+	private final Condition notFull = lock.newCondition();
+
+	@SuppressWarnings({"rawtypes", "unchecked"})
+	public ConcurrentSetPriorityBlockingQueue(final int capacity, final Comparator<? super E> comparator) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException();
+		}
+		this.capacity = capacity;
+		this.comparator = comparator;
+		this.heap = new Node[Math.min(capacity, INITIAL_CAPACITY)];
+	}
+
+	public ConcurrentSetPriorityBlockingQueue(final Comparator<? super E> comparator) {
+		this(Integer.MAX_VALUE, comparator);
+	}
+
+	public ConcurrentSetPriorityBlockingQueue(final int capacity) {
+		this(capacity, null);
+	}
+
+	public ConcurrentSetPriorityBlockingQueue() {
+		this(Integer.MAX_VALUE, null);
+	}
+
+	/**
+	 * Inserts the element, or raises the priority of the equal queued element.
+	 * @return true if the element was added or replaced the queued one,
+	 * false if the queued element has the same or a higher priority or if the queue is full
+	 */
+	@Override
+	public boolean offer(final E e) {
+		if (e == null) {
+			throw new NullPointerException();
+		}
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			final Node<E> node = index.get(e);
+			if (node != null) {
+				return raise(node, e);
+			}
+			if (size == capacity) {
+				return false;
+			}
+			insert(e);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Inserts the element, waiting if necessary for space to become available.
+	 * Returns immediately if an equal element is queued, raising its priority if needed.
+	 */
+	@Override
+	public void put(final E e) throws InterruptedException {
+		if (e == null) {
+			throw new NullPointerException();
+		}
+		final ReentrantLock lock = this.lock;
+		lock.lockInterruptibly();
+		try {
+			Node<E> node;
+			while ((node = index.get(e)) == null && size == capacity) {
+				notFull.await();
+			}
+			if (node != null) {
+				raise(node, e);
+			} else {
+				insert(e);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean offer(final E e, final long timeout, final TimeUnit unit) throws InterruptedException {
+		if (e == null) {
+			throw new NullPointerException();
+		}
+		long nanos = unit.toNanos(timeout);
+		final ReentrantLock lock = this.lock;
+		lock.lockInterruptibly();
+		try {
+			Node<E> node;
+			while ((node = index.get(e)) == null && size == capacity) {
+				if (nanos <= 0) {
+					return false;
+				}
+				nanos = notFull.awaitNanos(nanos);
+			}
+			if (node != null) {
+				return raise(node, e);
+			}
+			insert(e);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public E poll() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			return size == 0 ? null : dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public E take() throws InterruptedException {
+		final ReentrantLock lock = this.lock;
+		lock.lockInterruptibly();
+		try {
+			while (size == 0) {
+				notEmpty.await();
+			}
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public E poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		final ReentrantLock lock = this.lock;
+		lock.lockInterruptibly();
+		try {
+			while (size == 0) {
+				if (nanos <= 0) {
+					return null;
+				}
+				nanos = notEmpty.awaitNanos(nanos);
+			}
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public E peek() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			return size == 0 ? null : heap[0].item;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes the element from anywhere in the queue in O(log n).
+	 */
+	@Override
+	public boolean remove(final Object o) {
+		if (o == null) {
+			return false;
+		}
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			final Node<E> node = index.get(o);
+			if (node == null) {
+				return false;
+			}
+			removeAt(node.pos);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Lock free, reads the concurrent index.
+	 */
+	@Override
+	public boolean contains(final Object o) {
+		return o != null && index.containsKey(o);
+	}
+
+	@Override
+	public int size() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			return size;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int remainingCapacity() {
+		return capacity - size();
+	}
+
+	public Comparator<? super E> comparator() {
+		return comparator;
+	}
+
+	@Override
+	public void clear() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			Arrays.fill(heap, 0, size, null);
+			size = 0;
+			index.clear();
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int drainTo(final Collection<? super E> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int drainTo(final Collection<? super E> c, final int maxElements) {
+		if (c == null) {
+			throw new NullPointerException();
+		}
+		if (c == this) {
+			throw new IllegalArgumentException();
+		}
+		if (maxElements <= 0) {
+			return 0;
+		}
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			final int n = Math.min(maxElements, size);
+			for (int i = 0; i < n; i++) {
+				c.add(heap[0].item);
+				dequeue();
+			}
+			return n;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the queued elements, in no particular order
+	 */
+	@Override
+	public Object[] toArray() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			final Object[] a = new Object[size];
+			for (int i = 0; i < size; i++) {
+				a[i] = heap[i].item;
+			}
+			return a;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Iterates over a snapshot of the queue in no particular order, removing through the iterator removes from the queue.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public Iterator<E> iterator() {
+		final Object[] snapshot = toArray();
+		return new Iterator<E>() {
+
+			private int cursor;
+
+			private int lastRet = -1;
+
+			@Override
+			public boolean hasNext() {
+				return cursor < snapshot.length;
+			}
+
+			@Override
+			public E next() {
+				if (cursor >= snapshot.length) {
+					throw new NoSuchElementException();
+				}
+				lastRet = cursor++;
+				return (E) snapshot[lastRet];
+			}
+
+			@Override
+			public void remove() {
+				if (lastRet < 0) {
+					throw new IllegalStateException();
+				}
+				ConcurrentSetPriorityBlockingQueue.this.remove(snapshot[lastRet]);
+				lastRet = -1;
+			}
+		};
+	}
+
+	/**
+	 * Adds a new element to the heap and the index and signals a take.
+	 * Call only with the lock held and a non full queue.
+	 */
+	private void insert(final E e) {
+		if (size == heap.length) {
+			heap = Arrays.copyOf(heap, (int) Math.min((long) heap.length << 1, capacity));
+		}
+		final Node<E> node = new Node<>(e);
+		index.put(e, node);
+		siftUp(size++, node);
+		notEmpty.signal();
+	}
+
+	/**
+	 * Replaces the queued element if the offered one has a higher priority and moves it up the heap.
+	 * Call only with the lock held.
+	 */
+	private boolean raise(final Node<E> node, final E e) {
+		if (compare(e, node.item) >= 0) {
+			return false;
+		}
+		node.item = e;
+		siftUp(node.pos, node);
+		return true;
+	}
+
+	/**
+	 * Extracts the root of the heap, removes it from the index and signals a put.
+	 * Call only with the lock held and a non empty queue.
+	 */
+	private E dequeue() {
+		final E x = heap[0].item;
+		removeAt(0);
+		return x;
+	}
+
+	/**
+	 * Removes the node at position i, moving the last node into the hole.
+	 * Call only with the lock held.
+	 */
+	private void removeAt(final int i) {
+		final Node<E>[] heap = this.heap;
+		final Node<E> removed = heap[i];
+		index.remove(removed.item, removed);
+		final int s = --size;
+		final Node<E> moved = heap[s];
+		heap[s] = null;
+		if (s != i) {
+			siftDown(i, moved);
+			if (heap[i] == moved) {
+				siftUp(i, moved);
+			}
+		}
+		notFull.signal();
+	}
+
+	private void siftUp(int k, final Node<E> node) {
+		final Node<E>[] heap = this.heap;
+		while (k > 0) {
+			final int parent = (k - 1) >>> 1;
+			final Node<E> p = heap[parent];
+			if (compare(node.item, p.item) >= 0) {
+				break;
+			}
+			heap[k] = p;
+			p.pos = k;
+			k = parent;
+		}
+		heap[k] = node;
+		node.pos = k;
+	}
+
+	private void siftDown(int k, final Node<E> node) {
+		final Node<E>[] heap = this.heap;
+		final int half = size >>> 1;
+		while (k < half) {
+			int child = (k << 1) + 1;
+			Node<E> c = heap[child];
+			final int right = child + 1;
+			if (right < size && compare(c.item, heap[right].item) > 0) {
+				c = heap[child = right];
+			}
+			if (compare(node.item, c.item) <= 0) {
+				break;
+			}
+			heap[k] = c;
+			c.pos = k;
+			k = child;
+		}
+		heap[k] = node;
+		node.pos = k;
+	}
+
+	@SuppressWarnings("unchecked")
+	private int compare(final E a, final E b) {
+		return comparator == null ? ((Comparable<? super E>) a).compareTo(b) : comparator.compare(a, b);
+	}
+}
@@ -4,9 +4,10 @@ import java.util.NoSuchElementException;
 import java.util.Queue;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 
 /**
- * Queue backed by a set so duplicate elements are not allowed.
+ * Queue backed by a linked list and a concurrent index so duplicate elements are not allowed.
  * @param <E>
  */
 public abstract class ConcurrentSetQueue<E> extends ConcurrentSetCollection<E> implements Queue<E> {
@@ -15,6 +16,12 @@ public abstract class ConcurrentSetQueue<E> extends ConcurrentSetCollection<E> i
 		super(capacity);
 	}
 
+	ConcurrentSetQueue(final int capacity, final DedupWindow window, final Function<? super E, ?> keyExtractor,
+			final Equivalence<?> equivalence, final WaitStrategy waitStrategy, final QueueMetrics metrics,
+			final boolean prefilter) {
+		super(capacity, window, keyExtractor, equivalence, waitStrategy, metrics, prefilter);
+	}
+
 	@Override
 	public boolean offer(final E e) {
 		return super.offer(e);
@@ -29,15 +36,13 @@ public abstract class ConcurrentSetQueue<E> extends ConcurrentSetCollection<E> i
 		E x = null;
 		int c = -1;
 		final ReentrantLock takeLock = this.takeLock;
-		takeLock.lock();
+		lock(takeLock);
 		try {
 			if (count.get() > 0) {
-				x = set.iterator().next();
-				set.spliterator();
-				set.remove(x);
+				x = dequeue();
 				c = count.getAndDecrement();
 				if (c > 1) {
-					notEmpty.signal();
+					signalNextTake();
 				}
 			}
 		} finally {
@@ -46,7 +51,8 @@ public abstract class ConcurrentSetQueue<E> extends ConcurrentSetCollection<E> i
 		if (c == capacity) {
 			signalNotFull();
 		}
-		return x;	}
+		return x;
+	}
 
 	@Override
 	public E element() {
@@ -67,7 +73,8 @@ public abstract class ConcurrentSetQueue<E> extends ConcurrentSetCollection<E> i
 		final ReentrantLock takeLock = this.takeLock;
 		takeLock.lock();
 		try {
-			return set.iterator().next();
+			final Node<E> first = head.next;
+			return first == null ? null : first.item;
 		} finally {
 			takeLock.unlock();
 		}
@@ -0,0 +1,608 @@
+package com.hybhub.util.concurrent;
+
+import java.util.AbstractCollection;
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A blocking queue where duplicates inside the queue are not allowed and producers don't all contend on the same lock.
+ * With {@link Ordering#STRIPE_FIFO}, the default, the queue is split into stripes: each element belongs to the stripe
+ * selected by its hash, every stripe being a {@link ConcurrentSetBlockingQueue} with its own locks, index and linked
+ * list, so uniqueness holds across the whole queue.
+ * {@link Ordering#GLOBAL_FIFO} is not sharded: each element gets a token, the tokens are indexed by a single
+ * {@link ConcurrentHashMap} and queued in insertion order in a single lock free queue, the number of stripes is only
+ * the concurrency level of the index. The token is claimed once by the take or the removal of its element,
+ * a removal then unlinks the token from the order queue, in linear time as {@link ConcurrentLinkedQueue#remove}.
+ * The capacity is shared by all stripes, the global lock is only used to park and signal waiting puts and takes.
+ * @param <E>
+ */
+public class ConcurrentStripedSetBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+	/**
+	 * Order in which elements are taken.
+	 */
+	public enum Ordering {
+
+		/**
+		 * Elements are taken in insertion order, every put and take goes through a shared lock free order queue
+		 * and a shared index instead of stripes
+		 */
+		GLOBAL_FIFO,
+
+		/** Elements are taken in insertion order inside a stripe, consumers visit the stripes round robin */
+		STRIPE_FIFO
+	}
+
+	/** Returned by tryOffer when the element is already queued */
+	private static final int DUPLICATE = -1;
+
+	/** Returned by tryOffer when the queue is full */
+	private static final int FULL = -2;
+
+	/** Maximum capacity of the queue */
+	private final int capacity;
+
+	/**
+	 * Token of an element in {@link Ordering#GLOBAL_FIFO} order, set once claimed by the take or the removal
+	 * of its element
+	 */
+	private static final class Token<E> extends AtomicBoolean {
+
+		private static final long serialVersionUID = 1L;
+
+		final E item;
+
+		Token(final E item) {
+			this.item = item;
+		}
+
+		boolean claim() {
+			return compareAndSet(false, true);
+		}
+	}
+
+	/** Current number of elements, reserved before an element is offered to its stripe */
+	private final AtomicInteger count = new AtomicInteger();
+
+	/**
+	 * Number of elements a take can find, raised once an element is in its stripe or its token in the order queue,
+	 * so takes never wait for an offer that has reserved its slot but not yet queued its element.
+	 * It may be off by one for the few instructions between queuing an element and counting it.
+	 */
+	private final AtomicInteger available = new AtomicInteger();
+
+	/** Stripes of the elements, only used by {@link Ordering#STRIPE_FIFO} */
+	private final ConcurrentSetBlockingQueue<E>[] stripes;
+
+	private final Ordering ordering;
+
+	/** Token of each queued element, only used by {@link Ordering#GLOBAL_FIFO} */
+	private final ConcurrentHashMap<Object, Token<E>> tokens;
+
+	/**
+	 * Tokens in insertion order, only used by {@link Ordering#GLOBAL_FIFO}.
+	 * A dead token stays only while the take or the removal that claimed it is in progress.
+	 */
+	final ConcurrentLinkedQueue<Token<E>> order;
+
+	/** Next stripe to visit, only used by {@link Ordering#STRIPE_FIFO} */
+	private final AtomicInteger takeIndex = new AtomicInteger();
+
+	/** Lock held to wait or signal, never held while an element is queued or taken */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/** Wait queue for waiting takes */
+	private final Condition notEmpty = lock.newCondition();
+
+	/** Wait queue for waiting puts */
+	private final Condition notFull = lock.newCondition();
+
+	/**
+	 * @param stripes number of stripes, rounded up to a power of two, the concurrency level of the token index
+	 * with {@link Ordering#GLOBAL_FIFO}
+	 */
+	@SuppressWarnings({"rawtypes", "unchecked"})
+	public ConcurrentStripedSetBlockingQueue(final int stripes, final int capacity, final Ordering ordering) {
+		if (stripes <= 0 || capacity <= 0) {
+			throw new IllegalArgumentException();
+		}
+		if (ordering == null) {
+			throw new NullPointerException();
+		}
+		final int n = stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+		this.capacity = capacity;
+		this.ordering = ordering;
+		if (ordering == Ordering.GLOBAL_FIFO) {
+			this.stripes = null;
+			this.tokens = new ConcurrentHashMap<>(16, 0.75f, n);
+			this.order = new ConcurrentLinkedQueue<>();
+		} else {
+			this.stripes = new ConcurrentSetBlockingQueue[n];
+			for (int i = 0; i < n; i++) {
+				this.stripes[i] = new ConcurrentSetBlockingQueue<>();
+			}
+			this.tokens = null;
+			this.order = null;
+		}
+	}
+
+	public ConcurrentStripedSetBlockingQueue(final int capacity, final Ordering ordering) {
+		this(Runtime.getRuntime().availableProcessors(), capacity, ordering);
+	}
+
+	/**
+	 * Striped queue, see {@link Ordering#STRIPE_FIFO}
+	 */
+	public ConcurrentStripedSetBlockingQueue(final int capacity) {
+		this(capacity, Ordering.STRIPE_FIFO);
+	}
+
+	public ConcurrentStripedSetBlockingQueue() {
+		this(Integer.MAX_VALUE);
+	}
+
+	@Override
+	public boolean offer(final E e) {
+		if (e == null) {
+			throw new NullPointerException();
+		}
+		return tryOffer(e) >= 0;
+	}
+
+	@Override
+	public void put(final E e) throws InterruptedException {
+		if (e == null) {
+			throw new NullPointerException();
+		}
+		boolean waited = false;
+		int c;
+		while ((c = tryOffer(e)) == FULL) {
+			waited = true;
+			final ReentrantLock lock = this.lock;
+			lock.lockInterruptibly();
+			try {
+				while (count.get() >= capacity) {
+					notFull.await();
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+		// a woken put finding its element queued must pass the signal on as well
+		if (waited && count.get() < capacity) {
+			signalNotFull();
+		}
+	}
+
+	@Override
+	public boolean offer(final E e, final long timeout, final TimeUnit unit) throws InterruptedException {
+		if (e == null) {
+			throw new NullPointerException();
+		}
+		long nanos = unit.toNanos(timeout);
+		boolean waited = false;
+		int c;
+		while ((c = tryOffer(e)) == FULL) {
+			waited = true;
+			final ReentrantLock lock = this.lock;
+			lock.lockInterruptibly();
+			try {
+				while (count.get() >= capacity) {
+					if (nanos <= 0) {
+						return false;
+					}
+					nanos = notFull.awaitNanos(nanos);
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+		// a woken put finding its element queued must pass the signal on as well
+		if (waited && count.get() < capacity) {
+			signalNotFull();
+		}
+		return c >= 0;
+	}
+
+	@Override
+	public E poll() {
+		return tryPoll();
+	}
+
+	@Override
+	public E take() throws InterruptedException {
+		boolean waited = false;
+		E x;
+		while ((x = tryPoll()) == null) {
+			waited = true;
+			awaitNotEmpty();
+		}
+		if (waited && available.get() > 0) {
+			signalNotEmpty();
+		}
+		return x;
+	}
+
+	@Override
+	public E poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		final long deadline = System.nanoTime() + nanos;
+		boolean waited = false;
+		E x;
+		while ((x = tryPoll()) == null) {
+			waited = true;
+			nanos = deadline - System.nanoTime();
+			if (nanos <= 0) {
+				return null;
+			}
+			final ReentrantLock lock = this.lock;
+			lock.lockInterruptibly();
+			try {
+				if (available.get() <= 0) {
+					notEmpty.awaitNanos(nanos);
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+		if (waited && available.get() > 0) {
+			signalNotEmpty();
+		}
+		return x;
+	}
+
+	@Override
+	public E peek() {
+		if (ordering == Ordering.GLOBAL_FIFO) {
+			for (Token<E> t : order) {
+				if (!t.get()) {
+					return t.item;
+				}
+			}
+			return null;
+		}
+		for (ConcurrentSetBlockingQueue<E> stripe : stripes) {
+			final E x = stripe.peek();
+			if (x != null) {
+				return x;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public boolean remove(final Object o) {
+		if (o == null) {
+			return false;
+		}
+		if (ordering == Ordering.GLOBAL_FIFO) {
+			final Token<E> t = tokens.get(o);
+			if (t == null || !t.claim()) {
+				return false;
+			}
+			tokens.remove(o, t);
+			// a take may have polled the dead token already, only the thread unlinking it counts it out
+			if (order.remove(t)) {
+				available.decrementAndGet();
+			}
+		} else {
+			if (!stripeOf(o).remove(o)) {
+				return false;
+			}
+			available.decrementAndGet();
+		}
+		if (count.getAndDecrement() == capacity) {
+			signalNotFull();
+		}
+		return true;
+	}
+
+	@Override
+	public boolean contains(final Object o) {
+		if (o == null) {
+			return false;
+		}
+		return ordering == Ordering.GLOBAL_FIFO ? tokens.containsKey(o) : stripeOf(o).contains(o);
+	}
+
+	@Override
+	public void clear() {
+		int removed = 0;
+		if (ordering == Ordering.GLOBAL_FIFO) {
+			for (Token<E> t : tokens.values()) {
+				if (t.claim()) {
+					tokens.remove(t.item, t);
+					removed++;
+				}
+			}
+			// unlink the dead tokens now rather than leaving them to the next takes, every token queued before
+			// the claims is dead so only the tokens of concurrent offers stop the walk
+			Token<E> t;
+			while ((t = order.peek()) != null && t.get() && order.remove(t)) {
+				available.decrementAndGet();
+			}
+		} else {
+			for (ConcurrentSetBlockingQueue<E> stripe : stripes) {
+				removed += stripe.drainTo(new Sink<>());
+			}
+			available.addAndGet(-removed);
+		}
+		if (removed > 0 && count.getAndAdd(-removed) == capacity) {
+			signalNotFull();
+		}
+	}
+
+	@Override
+	public int size() {
+		return count.get();
+	}
+
+	@Override
+	public int remainingCapacity() {
+		return capacity - count.get();
+	}
+
+	@Override
+	public int drainTo(final Collection<? super E> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int drainTo(final Collection<? super E> c, final int maxElements) {
+		if (c == null) {
+			throw new NullPointerException();
+		}
+		if (c == this) {
+			throw new IllegalArgumentException();
+		}
+		int n = 0;
+		E x;
+		while (n < maxElements && (x = tryPoll()) != null) {
+			c.add(x);
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * Weakly consistent iterator, in insertion order with {@link Ordering#GLOBAL_FIFO},
+	 * visiting the stripes one after the other with {@link Ordering#STRIPE_FIFO}.
+	 */
+	@Override
+	public Iterator<E> iterator() {
+		if (ordering == Ordering.GLOBAL_FIFO) {
+			return new Iterator<E>() {
+
+				private final Iterator<Token<E>> tokens = order.iterator();
+
+				private Token<E> next;
+
+				private E lastRet;
+
+				@Override
+				public boolean hasNext() {
+					while (next == null && tokens.hasNext()) {
+						final Token<E> t = tokens.next();
+						if (!t.get()) {
+							next = t;
+						}
+					}
+					return next != null;
+				}
+
+				@Override
+				public E next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					lastRet = next.item;
+					next = null;
+					return lastRet;
+				}
+
+				@Override
+				public void remove() {
+					if (lastRet == null) {
+						throw new IllegalStateException();
+					}
+					ConcurrentStripedSetBlockingQueue.this.remove(lastRet);
+					lastRet = null;
+				}
+			};
+		}
+		return new Iterator<E>() {
+
+			private int stripe;
+
+			private Iterator<E> current = stripes[0].iterator();
+
+			private E lastRet;
+
+			@Override
+			public boolean hasNext() {
+				while (!current.hasNext()) {
+					if (++stripe == stripes.length) {
+						return false;
+					}
+					current = stripes[stripe].iterator();
+				}
+				return true;
+			}
+
+			@Override
+			public E next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return lastRet = current.next();
+			}
+
+			@Override
+			public void remove() {
+				if (lastRet == null) {
+					throw new IllegalStateException();
+				}
+				ConcurrentStripedSetBlockingQueue.this.remove(lastRet);
+				lastRet = null;
+			}
+		};
+	}
+
+	/**
+	 * Offers the element to its stripe, or indexes and queues its token, if there is room left.
+	 * @return the count before the element was added, {@link #DUPLICATE} or {@link #FULL}
+	 */
+	private int tryOffer(final E e) {
+		if (contains(e)) {
+			return DUPLICATE;
+		}
+		int c;
+		do {
+			c = count.get();
+			if (c >= capacity) {
+				return FULL;
+			}
+		} while (!count.compareAndSet(c, c + 1));
+		if (ordering == Ordering.GLOBAL_FIFO) {
+			final Token<E> t = new Token<>(e);
+			if (tokens.putIfAbsent(e, t) != null) {
+				release();
+				return DUPLICATE;
+			}
+			order.offer(t);
+		} else if (!stripeOf(e).offer(e)) {
+			release();
+			return DUPLICATE;
+		}
+		// negative while a take or a removal got the element first, waiting takes are woken up anyway
+		if (available.getAndIncrement() <= 0) {
+			signalNotEmpty();
+		}
+		return c;
+	}
+
+	/**
+	 * Gives back the slot reserved by an offer that didn't queue its element.
+	 */
+	private void release() {
+		if (count.getAndDecrement() == capacity) {
+			signalNotFull();
+		}
+	}
+
+	/**
+	 * Takes an element, the oldest one with {@link Ordering#GLOBAL_FIFO}.
+	 * @return the element or null if none is available
+	 */
+	private E tryPoll() {
+		final E x = ordering == Ordering.GLOBAL_FIFO ? pollInOrder() : pollAnyStripe();
+		if (x != null) {
+			release();
+		}
+		return x;
+	}
+
+	/**
+	 * Claims the oldest live token, never falling back to another order.
+	 */
+	private E pollInOrder() {
+		Token<E> t;
+		while ((t = order.poll()) != null) {
+			available.decrementAndGet();
+			if (t.claim()) {
+				tokens.remove(t.item, t);
+				return t.item;
+			}
+			// dead token claimed by remove(Object) or clear() but not unlinked yet
+		}
+		return null;
+	}
+
+	private E pollAnyStripe() {
+		if (available.get() <= 0) {
+			return null;
+		}
+		final int mask = stripes.length - 1;
+		final int start = takeIndex.getAndIncrement();
+		for (int i = 0; i < stripes.length; i++) {
+			final E x = stripes[(start + i) & mask].poll();
+			if (x != null) {
+				available.decrementAndGet();
+				return x;
+			}
+		}
+		return null;
+	}
+
+	private void awaitNotEmpty() throws InterruptedException {
+		final ReentrantLock lock = this.lock;
+		lock.lockInterruptibly();
+		try {
+			while (available.get() <= 0) {
+				notEmpty.await();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void signalNotEmpty() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			notEmpty.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void signalNotFull() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			notFull.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private ConcurrentSetBlockingQueue<E> stripeOf(final Object o) {
+		return stripes[indexOf(o)];
+	}
+
+	private int indexOf(final Object o) {
+		final int h = o.hashCode();
+		return (h ^ (h >>> 16)) & (stripes.length - 1);
+	}
+
+	/**
+	 * Collection discarding what it receives, used to empty the stripes.
+	 */
+	private static final class Sink<E> extends AbstractCollection<E> {
+
+		@Override
+		public boolean add(final E e) {
+			return true;
+		}
+
+		@Override
+		public Iterator<E> iterator() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public int size() {
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,544 @@
+package com.hybhub.util.concurrent;
+
+import java.util.AbstractQueue;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An unbounded blocking queue of {@link Delayed} elements where duplicates inside the queue are not allowed,
+ * an element can only be taken once its delay has expired.
+ * Re-offering an element equal to a pending one doesn't add a second entry, the pending entry is rescheduled
+ * according to the {@link Reschedule} policy of the queue.
+ * Entries are kept in a timer heap ordered by deadline, each entry knows its position in the heap and a
+ * {@link ConcurrentHashMap} maps each element to its entry, so rescheduling or removing an element is O(log n)
+ * where {@link java.util.concurrent.DelayQueue#remove(Object)} is O(n).
+ * The deadline is computed from {@link Delayed#getDelay(TimeUnit)} when the element is offered.
+ * A single lock guards the heap, inspired by {@link java.util.concurrent.DelayQueue}
+ * @param <E>
+ */
+public class ConcurrentUniqueDelayQueue<E extends Delayed> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+	/**
+	 * What happens to the deadline of a pending element when an equal element is offered.
+	 */
+	public enum Reschedule {
+
+		/** The pending deadline is kept and the offer is rejected */
+		KEEP,
+
+		/** The offered deadline replaces the pending one if it is later, to debounce */
+		EXTEND,
+
+		/** The offered deadline replaces the pending one if it is earlier, to expedite */
+		SHORTEN,
+
+		/** The offered deadline always replaces the pending one */
+		REPLACE
+	}
+
+	/**
+	 * Timer heap entry, holds its element, its deadline and its position in the heap
+	 */
+	static final class Entry<E> {
+
+		E item;
+
+		long deadline;
+
+		int pos;
+
+		Entry(final E item, final long deadline) {
+			this.item = item;
+			this.deadline = deadline;
+		}
+	}
+
+	/** Initial length of the heap array */
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final Reschedule reschedule;
+
+	/** Timer heap, the children of heap[n] are heap[2 * n + 1] and heap[2 * n + 2] */
+	private Entry<E>[] heap;
+
+	/** Current number of elements */
+	private int size;
+
+	/** Index of the pending elements, only modified with the lock held */
+	private final ConcurrentHashMap<E, Entry<E>> index = new ConcurrentHashMap<>();
+
+	/** Main lock guarding all access */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/** Signaled when a newer element becomes available at the head or a new thread may need to become leader */
+	private final Condition available = lock.newCondition();
+
+	/** Thread designated to wait for the element at the head of the queue, the others wait indefinitely */
+	private Thread leader;
+
+	@SuppressWarnings({"rawtypes", "unchecked"})
+	public ConcurrentUniqueDelayQueue(final Reschedule reschedule) {
+		if (reschedule == null) {
+			throw new NullPointerException();
+		}
+		this.reschedule = reschedule;
+		this.heap = new Entry[INITIAL_CAPACITY];
+	}
+
+	public ConcurrentUniqueDelayQueue() {
+		this(Reschedule.KEEP);
+	}
+
+	/**
+	 * Inserts the element, or reschedules the equal pending element according to the policy.
+	 * @return true if the element was added or rescheduled, false if the pending deadline was kept
+	 */
+	@Override
+	public boolean offer(final E e) {
+		if (e == null) {
+			throw new NullPointerException();
+		}
+		final long deadline = System.nanoTime() + e.getDelay(TimeUnit.NANOSECONDS);
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			final Entry<E> entry = index.get(e);
+			final boolean offered = entry == null ? insert(e, deadline) : reschedule(entry, e, deadline);
+			if (offered && heap[0].item == e) {
+				leader = null;
+				available.signal();
+			}
+			return offered;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * The queue being unbounded this never blocks.
+	 */
+	@Override
+	public void put(final E e) {
+		offer(e);
+	}
+
+	/**
+	 * The queue being unbounded this never blocks.
+	 */
+	@Override
+	public boolean offer(final E e, final long timeout, final TimeUnit unit) {
+		return offer(e);
+	}
+
+	/**
+	 * @return the head of the queue if its delay has expired, null otherwise
+	 */
+	@Override
+	public E poll() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			return size == 0 || heap[0].deadline - System.nanoTime() > 0 ? null : dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Retrieves and removes the head of the queue, waiting if necessary until an element with an expired delay
+	 * is available.
+	 */
+	@Override
+	public E take() throws InterruptedException {
+		final ReentrantLock lock = this.lock;
+		lock.lockInterruptibly();
+		try {
+			for (;;) {
+				if (size == 0) {
+					available.await();
+					continue;
+				}
+				final long delay = heap[0].deadline - System.nanoTime();
+				if (delay <= 0) {
+					return dequeue();
+				}
+				if (leader != null) {
+					available.await();
+				} else {
+					final Thread thisThread = Thread.currentThread();
+					leader = thisThread;
+					try {
+						available.awaitNanos(delay);
+					} finally {
+						if (leader == thisThread) {
+							leader = null;
+						}
+					}
+				}
+			}
+		} finally {
+			if (leader == null && size != 0) {
+				available.signal();
+			}
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Retrieves and removes the head of the queue, waiting if necessary until an element with an expired delay
+	 * is available or the specified wait time elapses.
+	 */
+	@Override
+	public E poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		final ReentrantLock lock = this.lock;
+		lock.lockInterruptibly();
+		try {
+			for (;;) {
+				if (size == 0) {
+					if (nanos <= 0) {
+						return null;
+					}
+					nanos = available.awaitNanos(nanos);
+					continue;
+				}
+				final long delay = heap[0].deadline - System.nanoTime();
+				if (delay <= 0) {
+					return dequeue();
+				}
+				if (nanos <= 0) {
+					return null;
+				}
+				if (nanos < delay || leader != null) {
+					nanos = available.awaitNanos(nanos);
+				} else {
+					final Thread thisThread = Thread.currentThread();
+					leader = thisThread;
+					try {
+						final long timeLeft = available.awaitNanos(delay);
+						nanos -= delay - timeLeft;
+					} finally {
+						if (leader == thisThread) {
+							leader = null;
+						}
+					}
+				}
+			}
+		} finally {
+			if (leader == null && size != 0) {
+				available.signal();
+			}
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Retrieves, but does not remove, the head of the queue, its delay may not have expired yet.
+	 */
+	@Override
+	public E peek() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			return size == 0 ? null : heap[0].item;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the remaining delay of the pending element, in the given unit, or null if it is not pending
+	 */
+	public Long getDelay(final Object o, final TimeUnit unit) {
+		final Entry<E> entry = index.get(o);
+		if (entry == null) {
+			return null;
+		}
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			return index.get(o) == entry ? unit.convert(entry.deadline - System.nanoTime(), TimeUnit.NANOSECONDS) : null;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes the element from anywhere in the queue in O(log n), whether its delay has expired or not.
+	 */
+	@Override
+	public boolean remove(final Object o) {
+		if (o == null) {
+			return false;
+		}
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			final Entry<E> entry = index.get(o);
+			if (entry == null) {
+				return false;
+			}
+			removeAt(entry.pos);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Lock free, reads the concurrent index.
+	 */
+	@Override
+	public boolean contains(final Object o) {
+		return o != null && index.containsKey(o);
+	}
+
+	@Override
+	public int size() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			return size;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Always returns Integer.MAX_VALUE, the queue is not bounded.
+	 */
+	@Override
+	public int remainingCapacity() {
+		return Integer.MAX_VALUE;
+	}
+
+	@Override
+	public void clear() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			Arrays.fill(heap, 0, size, null);
+			size = 0;
+			index.clear();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes all the elements with an expired delay and adds them to the given collection.
+	 */
+	@Override
+	public int drainTo(final Collection<? super E> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Removes at most maxElements elements with an expired delay and adds them to the given collection.
+	 */
+	@Override
+	public int drainTo(final Collection<? super E> c, final int maxElements) {
+		if (c == null) {
+			throw new NullPointerException();
+		}
+		if (c == this) {
+			throw new IllegalArgumentException();
+		}
+		if (maxElements <= 0) {
+			return 0;
+		}
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			final long now = System.nanoTime();
+			int n = 0;
+			while (n < maxElements && size > 0 && heap[0].deadline - now <= 0) {
+				c.add(heap[0].item);
+				dequeue();
+				n++;
+			}
+			return n;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the pending elements, expired or not, in no particular order
+	 */
+	@Override
+	public Object[] toArray() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			final Object[] a = new Object[size];
+			for (int i = 0; i < size; i++) {
+				a[i] = heap[i].item;
+			}
+			return a;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Iterates over a snapshot of the queue in no particular order, removing through the iterator removes from the queue.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public Iterator<E> iterator() {
+		final Object[] snapshot = toArray();
+		return new Iterator<E>() {
+
+			private int cursor;
+
+			private int lastRet = -1;
+
+			@Override
+			public boolean hasNext() {
+				return cursor < snapshot.length;
+			}
+
+			@Override
+			public E next() {
+				if (cursor >= snapshot.length) {
+					throw new NoSuchElementException();
+				}
+				lastRet = cursor++;
+				return (E) snapshot[lastRet];
+			}
+
+			@Override
+			public void remove() {
+				if (lastRet < 0) {
+					throw new IllegalStateException();
+				}
+				ConcurrentUniqueDelayQueue.this.remove(snapshot[lastRet]);
+				lastRet = -1;
+			}
+		};
+	}
+
+	/**
+	 * Adds a new entry to the heap and the index.
+	 * Call only with the lock held.
+	 */
+	private boolean insert(final E e, final long deadline) {
+		if (size == heap.length) {
+			if (size == Integer.MAX_VALUE - 8) {
+				throw new IllegalStateException("Queue full");
+			}
+			heap = Arrays.copyOf(heap, (int) Math.min((long) heap.length << 1, Integer.MAX_VALUE - 8));
+		}
+		final Entry<E> entry = new Entry<>(e, deadline);
+		index.put(e, entry);
+		siftUp(size++, entry);
+		return true;
+	}
+
+	/**
+	 * Moves the deadline of a pending entry if the policy allows it, the offered element replaces the pending one.
+	 * Call only with the lock held.
+	 */
+	private boolean reschedule(final Entry<E> entry, final E e, final long deadline) {
+		final long diff = deadline - entry.deadline;
+		switch (reschedule) {
+		case EXTEND:
+			if (diff <= 0) {
+				return false;
+			}
+			break;
+		case SHORTEN:
+			if (diff >= 0) {
+				return false;
+			}
+			break;
+		case REPLACE:
+			break;
+		default:
+			return false;
+		}
+		entry.item = e;
+		entry.deadline = deadline;
+		if (diff < 0) {
+			siftUp(entry.pos, entry);
+		} else {
+			siftDown(entry.pos, entry);
+		}
+		return true;
+	}
+
+	/**
+	 * Extracts the root of the heap and removes it from the index.
+	 * Call only with the lock held and a non empty queue.
+	 */
+	private E dequeue() {
+		final E x = heap[0].item;
+		removeAt(0);
+		return x;
+	}
+
+	/**
+	 * Removes the entry at position i, moving the last entry into the hole.
+	 * Call only with the lock held.
+	 */
+	private void removeAt(final int i) {
+		final Entry<E>[] heap = this.heap;
+		final Entry<E> removed = heap[i];
+		index.remove(removed.item, removed);
+		final int s = --size;
+		final Entry<E> moved = heap[s];
+		heap[s] = null;
+		if (s != i) {
+			siftDown(i, moved);
+			if (heap[i] == moved) {
+				siftUp(i, moved);
+			}
+		}
+	}
+
+	private void siftUp(int k, final Entry<E> entry) {
+		final Entry<E>[] heap = this.heap;
+		while (k > 0) {
+			final int parent = (k - 1) >>> 1;
+			final Entry<E> p = heap[parent];
+			if (entry.deadline - p.deadline >= 0) {
+				break;
+			}
+			heap[k] = p;
+			p.pos = k;
+			k = parent;
+		}
+		heap[k] = entry;
+		entry.pos = k;
+	}
+
+	private void siftDown(int k, final Entry<E> entry) {
+		final Entry<E>[] heap = this.heap;
+		final int half = size >>> 1;
+		while (k < half) {
+			int child = (k << 1) + 1;
+			Entry<E> c = heap[child];
+			final int right = child + 1;
+			if (right < size && c.deadline - heap[right].deadline > 0) {
+				c = heap[child = right];
+			}
+			if (entry.deadline - c.deadline <= 0) {
+				break;
+			}
+			heap[k] = c;
+			c.pos = k;
+			k = child;
+		}
+		heap[k] = entry;
+		entry.pos = k;
+	}
+}
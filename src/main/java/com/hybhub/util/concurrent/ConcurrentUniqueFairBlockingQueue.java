@@ -0,0 +1,637 @@
+package com.hybhub.util.concurrent;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * A blocking queue shared by tenants where duplicates are not allowed and no tenant can starve the others.
+ * Each tenant has its own sub-queue, bounded by the tenant capacity, and consumers serve the tenants with
+ * deficit round robin: a tenant gets as many elements as its weight in a round before the next tenant is served.
+ * Tenants with queued elements are linked in a ring, so picking the next tenant is O(1) whatever the number
+ * of tenants, a tenant leaves the ring and is forgotten once its sub-queue is empty.
+ * Elements are unique across the queue or inside each tenant, according to the {@link Uniqueness} of the queue.
+ * A single lock guards the queue, inspired by {@link java.util.concurrent.ArrayBlockingQueue}
+ * @param <E>
+ * @param <T> tenant key
+ */
+public class ConcurrentUniqueFairBlockingQueue<E, T> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+	/**
+	 * Scope inside which elements are unique.
+	 */
+	public enum Uniqueness {
+
+		/** An element is queued at most once whatever its tenant */
+		GLOBAL,
+
+		/** An element is queued at most once per tenant, two tenants may queue equal elements */
+		PER_TENANT
+	}
+
+	/**
+	 * Sub-queue of a tenant, linked in the ring while it holds elements
+	 */
+	static final class Tenant<E, T> {
+
+		final T key;
+
+		final ArrayDeque<E> items = new ArrayDeque<>();
+
+		/** Queued elements of the tenant, null if elements are unique across the queue */
+		final Set<E> members;
+
+		/** Elements taken from the tenant in a round */
+		final int quantum;
+
+		/** Elements the tenant may still give in the current round */
+		int deficit;
+
+		/** Ring links, null while the tenant has no element */
+		Tenant<E, T> prev;
+
+		Tenant<E, T> next;
+
+		/** Wait queue for puts waiting for room in this tenant, created by the first of them */
+		Condition notFull;
+
+		/** Number of puts waiting on notFull */
+		int waiting;
+
+		Tenant(final T key, final int quantum, final boolean members) {
+			this.key = key;
+			this.quantum = quantum;
+			this.members = members ? new HashSet<>() : null;
+		}
+	}
+
+	/** Maximum capacity of the queue */
+	private final int capacity;
+
+	/** Maximum number of elements queued by a tenant */
+	private final int tenantCapacity;
+
+	private final Uniqueness uniqueness;
+
+	private final Function<? super E, ? extends T> tenantOf;
+
+	/** Weight of a tenant, the number of elements it gives in a round */
+	private final ToIntFunction<? super T> weights;
+
+	/** Tenants with queued elements or waiting puts */
+	private final HashMap<T, Tenant<E, T>> tenants = new HashMap<>();
+
+	/** Queued elements of all the tenants, null if elements are unique per tenant */
+	private final Set<E> members;
+
+	/** Next tenant to serve, null if the queue is empty */
+	private Tenant<E, T> cursor;
+
+	/** Current number of elements */
+	private int count;
+
+	/** Main lock guarding all access */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/** Wait queue for waiting takes */
+	private final Condition notEmpty = lock.newCondition();
+
+	/** Wait queue for puts waiting for room in the queue */
+	private final Condition notFull = lock.newCondition();
+
+	/**
+	 * Elements are unique across the queue and every tenant has a weight of 1.
+	 * @param tenantOf tenant of an element, called when it is offered and removed
+	 */
+	public ConcurrentUniqueFairBlockingQueue(final Function<? super E, ? extends T> tenantOf, final int capacity,
+			final int tenantCapacity) {
+		this(tenantOf, capacity, tenantCapacity, Uniqueness.GLOBAL, tenant -> 1);
+	}
+
+	/**
+	 * @param tenantOf tenant of an element, called when it is offered and removed
+	 * @param weights number of elements a tenant gives in a round, called when a tenant gets its first element
+	 */
+	public ConcurrentUniqueFairBlockingQueue(final Function<? super E, ? extends T> tenantOf, final int capacity,
+			final int tenantCapacity, final Uniqueness uniqueness, final ToIntFunction<? super T> weights) {
+		if (capacity <= 0 || tenantCapacity <= 0) {
+			throw new IllegalArgumentException();
+		}
+		if (tenantOf == null || uniqueness == null || weights == null) {
+			throw new NullPointerException();
+		}
+		this.capacity = capacity;
+		this.tenantCapacity = tenantCapacity;
+		this.uniqueness = uniqueness;
+		this.tenantOf = tenantOf;
+		this.weights = weights;
+		this.members = uniqueness == Uniqueness.GLOBAL ? new HashSet<>() : null;
+	}
+
+	@Override
+	public boolean offer(final E e) {
+		final T key = tenantKey(e);
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			final Tenant<E, T> tenant = tenant(key);
+			final boolean added = count < capacity && tenant.items.size() < tenantCapacity && enqueue(tenant, e);
+			release(tenant);
+			return added;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Inserts the element, waiting if necessary for room in the queue and in its tenant.
+	 * Returns immediately if the element is already queued.
+	 */
+	@Override
+	public void put(final E e) throws InterruptedException {
+		offer(e, false, 0L);
+	}
+
+	/**
+	 * Inserts the element, waiting up to the specified wait time for room in the queue and in its tenant.
+	 * @return true if the element was added, false if it is already queued or if the time elapsed
+	 */
+	@Override
+	public boolean offer(final E e, final long timeout, final TimeUnit unit) throws InterruptedException {
+		return offer(e, true, unit.toNanos(timeout));
+	}
+
+	private boolean offer(final E e, final boolean timed, long nanos) throws InterruptedException {
+		final T key = tenantKey(e);
+		final ReentrantLock lock = this.lock;
+		lock.lockInterruptibly();
+		try {
+			for (;;) {
+				// looked up again after each wait, the tenant may have been forgotten in between
+				final Tenant<E, T> tenant = tenant(key);
+				final boolean queueFull = count == capacity;
+				if (!queueFull && tenant.items.size() < tenantCapacity) {
+					final boolean added = enqueue(tenant, e);
+					release(tenant);
+					passOn(tenant);
+					return added;
+				}
+				if (isQueued(tenant, e) || (timed && nanos <= 0)) {
+					release(tenant);
+					passOn(tenant);
+					return false;
+				}
+				if (queueFull) {
+					release(tenant);
+					nanos = await(notFull, timed, nanos);
+					continue;
+				}
+				if (lock.hasWaiters(notFull)) {
+					// woken up for room in the queue that this put can't use
+					notFull.signal();
+				}
+				if (tenant.notFull == null) {
+					tenant.notFull = lock.newCondition();
+				}
+				tenant.waiting++;
+				try {
+					nanos = await(tenant.notFull, timed, nanos);
+				} finally {
+					tenant.waiting--;
+					release(tenant);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public E poll() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			return count == 0 ? null : dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public E take() throws InterruptedException {
+		final ReentrantLock lock = this.lock;
+		lock.lockInterruptibly();
+		try {
+			while (count == 0) {
+				notEmpty.await();
+			}
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public E poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		final ReentrantLock lock = this.lock;
+		lock.lockInterruptibly();
+		try {
+			while (count == 0) {
+				if (nanos <= 0) {
+					return null;
+				}
+				nanos = notEmpty.awaitNanos(nanos);
+			}
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the element the next take would return, or null if the queue is empty
+	 */
+	@Override
+	public E peek() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			return cursor == null ? null : cursor.items.peekFirst();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes the element from the sub-queue of its tenant, O(n) in the size of the sub-queue.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public boolean remove(final Object o) {
+		if (o == null) {
+			return false;
+		}
+		final T key = tenantKey((E) o);
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			final Tenant<E, T> tenant = tenants.get(key);
+			if (tenant == null || !membersOf(tenant).remove(o)) {
+				return false;
+			}
+			tenant.items.remove(o);
+			removed(tenant);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public boolean contains(final Object o) {
+		if (o == null) {
+			return false;
+		}
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			if (members != null) {
+				return members.contains(o);
+			}
+			final Tenant<E, T> tenant = tenants.get(tenantKey((E) o));
+			return tenant != null && tenant.members.contains(o);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int size() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			return count;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the number of elements queued by the tenant
+	 */
+	public int size(final T tenant) {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			final Tenant<E, T> t = tenants.get(tenant);
+			return t == null ? 0 : t.items.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the number of tenants with queued elements
+	 */
+	public int activeTenants() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			int n = 0;
+			for (Tenant<E, T> tenant : tenants.values()) {
+				if (!tenant.items.isEmpty()) {
+					n++;
+				}
+			}
+			return n;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int remainingCapacity() {
+		return capacity - size();
+	}
+
+	public Uniqueness uniqueness() {
+		return uniqueness;
+	}
+
+	@Override
+	public void clear() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			for (Iterator<Tenant<E, T>> it = tenants.values().iterator(); it.hasNext();) {
+				final Tenant<E, T> tenant = it.next();
+				tenant.items.clear();
+				tenant.prev = tenant.next = null;
+				tenant.deficit = 0;
+				if (tenant.members != null) {
+					tenant.members.clear();
+				}
+				if (tenant.waiting > 0) {
+					tenant.notFull.signalAll();
+				} else {
+					it.remove();
+				}
+			}
+			if (members != null) {
+				members.clear();
+			}
+			cursor = null;
+			count = 0;
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int drainTo(final Collection<? super E> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Takes the elements in the order takes would return them.
+	 */
+	@Override
+	public int drainTo(final Collection<? super E> c, final int maxElements) {
+		if (c == null) {
+			throw new NullPointerException();
+		}
+		if (c == this) {
+			throw new IllegalArgumentException();
+		}
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			final int n = Math.min(maxElements, count);
+			for (int i = 0; i < n; i++) {
+				c.add(dequeue());
+			}
+			return Math.max(n, 0);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Object[] toArray() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			final Object[] a = new Object[count];
+			int k = 0;
+			final Tenant<E, T> first = cursor;
+			if (first != null) {
+				Tenant<E, T> tenant = first;
+				do {
+					for (E e : tenant.items) {
+						a[k++] = e;
+					}
+					tenant = tenant.next;
+				} while (tenant != first);
+			}
+			return a;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Iterates over a snapshot of the queue, tenant after tenant, removing through the iterator removes
+	 * from the queue.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public Iterator<E> iterator() {
+		final Object[] snapshot = toArray();
+		return new Iterator<E>() {
+
+			private int cursor;
+
+			private int lastRet = -1;
+
+			@Override
+			public boolean hasNext() {
+				return cursor < snapshot.length;
+			}
+
+			@Override
+			public E next() {
+				if (cursor >= snapshot.length) {
+					throw new NoSuchElementException();
+				}
+				lastRet = cursor++;
+				return (E) snapshot[lastRet];
+			}
+
+			@Override
+			public void remove() {
+				if (lastRet < 0) {
+					throw new IllegalStateException();
+				}
+				ConcurrentUniqueFairBlockingQueue.this.remove(snapshot[lastRet]);
+				lastRet = -1;
+			}
+		};
+	}
+
+	private T tenantKey(final E e) {
+		if (e == null) {
+			throw new NullPointerException();
+		}
+		final T key = tenantOf.apply(e);
+		if (key == null) {
+			throw new NullPointerException("Null tenant");
+		}
+		return key;
+	}
+
+	/**
+	 * @return the tenant of the key, created if it is not known.
+	 * Call only with the lock held, and {@link #release(Tenant)} it if it may be left empty.
+	 */
+	private Tenant<E, T> tenant(final T key) {
+		Tenant<E, T> tenant = tenants.get(key);
+		if (tenant == null) {
+			final int quantum = weights.applyAsInt(key);
+			if (quantum <= 0) {
+				throw new IllegalArgumentException("Tenant weight must be positive");
+			}
+			tenant = new Tenant<>(key, quantum, uniqueness == Uniqueness.PER_TENANT);
+			tenants.put(key, tenant);
+		}
+		return tenant;
+	}
+
+	/**
+	 * Forgets a tenant with no element and no waiting put.
+	 * Call only with the lock held.
+	 */
+	private void release(final Tenant<E, T> tenant) {
+		if (tenant.items.isEmpty() && tenant.waiting == 0) {
+			tenants.remove(tenant.key);
+		}
+	}
+
+	private Set<E> membersOf(final Tenant<E, T> tenant) {
+		return members != null ? members : tenant.members;
+	}
+
+	private boolean isQueued(final Tenant<E, T> tenant, final E e) {
+		return membersOf(tenant).contains(e);
+	}
+
+	/**
+	 * Inserts the element at the end of the sub-queue of its tenant, linking the tenant in the ring
+	 * at the end of the current round if it was empty.
+	 * Call only with the lock held and room in the queue and in the tenant.
+	 * @return false if the element is already queued
+	 */
+	private boolean enqueue(final Tenant<E, T> tenant, final E e) {
+		if (!membersOf(tenant).add(e)) {
+			return false;
+		}
+		if (tenant.items.isEmpty()) {
+			final Tenant<E, T> c = cursor;
+			if (c == null) {
+				tenant.prev = tenant.next = tenant;
+				cursor = tenant;
+			} else {
+				tenant.prev = c.prev;
+				tenant.next = c;
+				c.prev.next = tenant;
+				c.prev = tenant;
+			}
+		}
+		tenant.items.addLast(e);
+		count++;
+		notEmpty.signal();
+		return true;
+	}
+
+	/**
+	 * Takes an element from the tenant at the cursor, the cursor moves to the next tenant once the tenant
+	 * has given its quantum or has no element left.
+	 * Call only with the lock held and a non empty queue.
+	 */
+	private E dequeue() {
+		final Tenant<E, T> tenant = cursor;
+		if (tenant.deficit == 0) {
+			tenant.deficit = tenant.quantum;
+		}
+		final E x = tenant.items.pollFirst();
+		membersOf(tenant).remove(x);
+		if (--tenant.deficit == 0 && !tenant.items.isEmpty()) {
+			cursor = tenant.next;
+		}
+		removed(tenant);
+		return x;
+	}
+
+	/**
+	 * Unlinks the tenant from the ring if it has no element left and wakes up a put waiting for room.
+	 * Call only with the lock held, once an element of the tenant has been removed.
+	 */
+	private void removed(final Tenant<E, T> tenant) {
+		if (tenant.items.isEmpty()) {
+			if (tenant.next == tenant) {
+				cursor = null;
+			} else {
+				tenant.prev.next = tenant.next;
+				tenant.next.prev = tenant.prev;
+				if (cursor == tenant) {
+					cursor = tenant.next;
+				}
+			}
+			tenant.prev = tenant.next = null;
+			tenant.deficit = 0;
+			release(tenant);
+		}
+		if (count-- == capacity) {
+			notFull.signal();
+		}
+		if (tenant.waiting > 0 && tenant.items.size() == tenantCapacity - 1) {
+			tenant.notFull.signal();
+		}
+	}
+
+	/**
+	 * Wakes up the next puts if there is still room for them, a woken put may leave without using the room
+	 * it was woken up for.
+	 * Call only with the lock held.
+	 */
+	private void passOn(final Tenant<E, T> tenant) {
+		if (count < capacity) {
+			notFull.signal();
+		}
+		if (tenant.waiting > 0 && tenant.items.size() < tenantCapacity) {
+			tenant.notFull.signal();
+		}
+	}
+
+	private static long await(final Condition condition, final boolean timed, final long nanos)
+			throws InterruptedException {
+		if (!timed) {
+			condition.await();
+			return nanos;
+		}
+		return condition.awaitNanos(nanos);
+	}
+}
@@ -0,0 +1,407 @@
+package com.hybhub.util.concurrent;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A blocking queue of primitive ints where duplicates inside the queue are not allowed.
+ * Elements are kept in a ring buffer and indexed by an open addressing {@link IntHashSet},
+ * neither of them boxes the elements, so once the buffers have grown to their working size
+ * offering and taking elements doesn't allocate anything.
+ * The ring buffer being shared by puts and takes, a single lock guards the queue,
+ * inspired by {@link java.util.concurrent.ArrayBlockingQueue}
+ */
+public class ConcurrentUniqueIntBlockingQueue {
+
+	/** Initial length of the ring buffer, it grows up to the capacity */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** Maximum capacity of the queue, no more than the index can hold */
+	private final int capacity;
+
+	/** Queued elements, in order from takeIndex */
+	private int[] items;
+
+	/** Index of the next element to take */
+	private int takeIndex;
+
+	/** Index of the next element to put */
+	private int putIndex;
+
+	/** Current number of elements */
+	private int count;
+
+	/** Index of the queued elements */
+	private final IntHashSet index;
+
+	/** Main lock guarding all access */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/** Wait queue for waiting takes */
+	private final Condition notEmpty = lock.newCondition();
+
+	/** Wait queue for waiting puts */
+	private final Condition notFull = lock.newCondition();
+
+	/**
+	 * @param capacity the capacity of the queue, capped at 2^30 - 1 elements, the most the index can hold
+	 */
+	public ConcurrentUniqueIntBlockingQueue(final int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException();
+		}
+		this.capacity = Math.min(capacity, LongHashSet.MAX_SIZE);
+		this.items = new int[Math.min(capacity, INITIAL_CAPACITY)];
+		this.index = new IntHashSet(items.length);
+	}
+
+	public ConcurrentUniqueIntBlockingQueue() {
+		this(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Inserts the element if it is not already queued and the queue is not full.
+	 * @return true if the element was added
+	 */
+	public boolean offer(final int e) {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			if (count == capacity || !index.add(e)) {
+				return false;
+			}
+			enqueue(e);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Inserts the element, waiting if necessary for space to become available.
+	 * Returns immediately if the element is already queued.
+	 */
+	public void put(final int e) throws InterruptedException {
+		final ReentrantLock lock = this.lock;
+		lock.lockInterruptibly();
+		try {
+			while (count == capacity) {
+				if (index.contains(e)) {
+					return;
+				}
+				notFull.await();
+			}
+			if (index.add(e)) {
+				enqueue(e);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Inserts the element, waiting up to the specified wait time for space to become available.
+	 * @return true if the element was added, false if it is already queued or if the time elapsed
+	 */
+	public boolean offer(final int e, final long timeout, final TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		final ReentrantLock lock = this.lock;
+		lock.lockInterruptibly();
+		try {
+			while (count == capacity) {
+				if (nanos <= 0 || index.contains(e)) {
+					return false;
+				}
+				nanos = notFull.awaitNanos(nanos);
+			}
+			if (!index.add(e)) {
+				return false;
+			}
+			enqueue(e);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Retrieves and removes the head of the queue, waiting if necessary until an element becomes available.
+	 */
+	public int take() throws InterruptedException {
+		final ReentrantLock lock = this.lock;
+		lock.lockInterruptibly();
+		try {
+			while (count == 0) {
+				notEmpty.await();
+			}
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Retrieves and removes the head of the queue.
+	 * @return the head of the queue, or emptyValue if the queue is empty
+	 */
+	public int poll(final int emptyValue) {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			return count == 0 ? emptyValue : dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Retrieves and removes the head of the queue, waiting up to the specified wait time for an element.
+	 * @return the head of the queue, or emptyValue if the time elapsed
+	 */
+	public int poll(final long timeout, final TimeUnit unit, final int emptyValue) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		final ReentrantLock lock = this.lock;
+		lock.lockInterruptibly();
+		try {
+			while (count == 0) {
+				if (nanos <= 0) {
+					return emptyValue;
+				}
+				nanos = notEmpty.awaitNanos(nanos);
+			}
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Retrieves and removes the head of the queue.
+	 * @throws NoSuchElementException if the queue is empty
+	 */
+	public int remove() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			if (count == 0) {
+				throw new NoSuchElementException();
+			}
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Retrieves, but does not remove, the head of the queue.
+	 * @throws NoSuchElementException if the queue is empty
+	 */
+	public int element() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			if (count == 0) {
+				throw new NoSuchElementException();
+			}
+			return items[takeIndex];
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Retrieves, but does not remove, the head of the queue.
+	 * @return the head of the queue, or emptyValue if the queue is empty
+	 */
+	public int peek(final int emptyValue) {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			return count == 0 ? emptyValue : items[takeIndex];
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes the element from anywhere in the queue.
+	 * @return true if the element was queued
+	 */
+	public boolean remove(final int e) {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			if (!index.remove(e)) {
+				return false;
+			}
+			final int[] items = this.items;
+			for (int i = takeIndex, k = 0; k < count; k++) {
+				if (items[i] == e) {
+					removeAt(i);
+					return true;
+				}
+				if (++i == items.length) {
+					i = 0;
+				}
+			}
+			throw new IllegalStateException("Index out of sync with the queue");
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public boolean contains(final int e) {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			return index.contains(e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes up to dst.length elements and copies them, in order, into dst.
+	 * @return the number of elements transferred
+	 */
+	public int drainTo(final int[] dst) {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			final int n = Math.min(dst.length, count);
+			for (int i = 0; i < n; i++) {
+				dst[i] = dequeue();
+			}
+			return n;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the queued elements, in order
+	 */
+	public int[] toArray() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			final int[] a = new int[count];
+			for (int i = takeIndex, k = 0; k < count; k++) {
+				a[k] = items[i];
+				if (++i == items.length) {
+					i = 0;
+				}
+			}
+			return a;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void clear() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			index.clear();
+			takeIndex = putIndex = 0;
+			count = 0;
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int size() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			return count;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	public int remainingCapacity() {
+		return capacity - size();
+	}
+
+	/**
+	 * Inserts an element already added to the index at the put position and signals a take.
+	 * Call only with the lock held and a non full queue.
+	 */
+	private void enqueue(final int e) {
+		if (count == items.length) {
+			grow();
+		}
+		items[putIndex] = e;
+		if (++putIndex == items.length) {
+			putIndex = 0;
+		}
+		count++;
+		notEmpty.signal();
+	}
+
+	/**
+	 * Extracts the element at the take position, removes it from the index and signals a put.
+	 * Call only with the lock held and a non empty queue.
+	 */
+	private int dequeue() {
+		final int x = items[takeIndex];
+		if (++takeIndex == items.length) {
+			takeIndex = 0;
+		}
+		count--;
+		index.remove(x);
+		notFull.signal();
+		return x;
+	}
+
+	/**
+	 * Deletes the item at position removeIndex, already removed from the index.
+	 * Call only with the lock held.
+	 */
+	private void removeAt(final int removeIndex) {
+		final int[] items = this.items;
+		if (removeIndex == takeIndex) {
+			if (++takeIndex == items.length) {
+				takeIndex = 0;
+			}
+		} else {
+			// slide over all others up through putIndex
+			for (int i = removeIndex, next; ; i = next) {
+				if ((next = i + 1) == items.length) {
+					next = 0;
+				}
+				if (next == putIndex) {
+					putIndex = i;
+					break;
+				}
+				items[i] = items[next];
+			}
+		}
+		count--;
+		notFull.signal();
+	}
+
+	/**
+	 * Doubles the ring buffer, up to the capacity, and lays the elements out from index 0.
+	 */
+	private void grow() {
+		final int[] old = items;
+		final int[] items = new int[(int) Math.min((long) old.length << 1, capacity)];
+		final int tail = old.length - takeIndex;
+		System.arraycopy(old, takeIndex, items, 0, Math.min(tail, count));
+		if (tail < count) {
+			System.arraycopy(old, 0, items, tail, count - tail);
+		}
+		this.items = items;
+		takeIndex = 0;
+		putIndex = count;
+	}
+}
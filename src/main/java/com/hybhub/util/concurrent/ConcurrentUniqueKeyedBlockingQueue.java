@@ -0,0 +1,436 @@
+package com.hybhub.util.concurrent;
+
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+
+/**
+ * A blocking queue of key value pairs where a key is queued at most once.
+ * Offering a key already queued doesn't add a second entry, the queued entry keeps its place
+ * and its value is replaced by the new one or merged with it, so bursts of updates to the same key
+ * are coalesced into a single unit of work.
+ * The merge runs inside {@link java.util.concurrent.ConcurrentHashMap#compute}, a single probe of the index
+ * finds the entry, merges the value or creates the entry. Takes remove the entry from the index before reading
+ * its value, so a merge is either seen by the take or applied to a new entry.
+ * Same two locks design as {@link ConcurrentSetBlockingQueue}.
+ * @param <K>
+ * @param <V>
+ */
+public class ConcurrentUniqueKeyedBlockingQueue<K, V> extends AbstractConcurrentSet<K> {
+
+	/**
+	 * Node holding the value of its key
+	 */
+	static final class Entry<K, V> extends Node<K> {
+
+		volatile V value;
+
+		Entry(final K key, final V value) {
+			super(key, key);
+			this.value = value;
+		}
+	}
+
+	public ConcurrentUniqueKeyedBlockingQueue(final int capacity) {
+		super(capacity);
+	}
+
+	public ConcurrentUniqueKeyedBlockingQueue() {
+		this(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Queues the pair, or replaces the value if the key is already queued.
+	 * @return false if the key is not queued and the queue is full
+	 */
+	public boolean offer(final K key, final V value) {
+		return offer(key, value, (queued, offered) -> offered);
+	}
+
+	/**
+	 * Queues the pair, or merges the value into the queued one if the key is already queued.
+	 * @param merge called with the queued value and the offered value, must not return null
+	 * @return false if the key is not queued and the queue is full
+	 */
+	public boolean offer(final K key, final V value, final BiFunction<? super V, ? super V, ? extends V> merge) {
+		if (key == null || value == null || merge == null) {
+			throw new NullPointerException();
+		}
+		int c = -1;
+		final ReentrantLock putLock = this.putLock;
+		putLock.lock();
+		try {
+			final Entry<K, V> entry = coalesce(key, value, merge);
+			if (entry == null) {
+				return false;
+			}
+			if (isLinked(entry)) {
+				return true;
+			}
+			c = link(entry);
+		} finally {
+			putLock.unlock();
+		}
+		if (c == 0) {
+			signalNotEmpty();
+		}
+		return true;
+	}
+
+	/**
+	 * Queues the pair, or replaces the value if the key is already queued,
+	 * waiting if necessary for space to become available.
+	 */
+	public void put(final K key, final V value) throws InterruptedException {
+		put(key, value, (queued, offered) -> offered);
+	}
+
+	/**
+	 * Queues the pair, or merges the value into the queued one if the key is already queued,
+	 * waiting if necessary for space to become available.
+	 * @param merge called with the queued value and the offered value, must not return null
+	 */
+	public void put(final K key, final V value, final BiFunction<? super V, ? super V, ? extends V> merge)
+			throws InterruptedException {
+		offer(key, value, merge, false, 0L);
+	}
+
+	/**
+	 * Queues the pair, or merges the value into the queued one if the key is already queued,
+	 * waiting up to the specified wait time for space to become available.
+	 * @param merge called with the queued value and the offered value, must not return null
+	 * @return false if the time elapsed before space was available
+	 */
+	public boolean offer(final K key, final V value, final BiFunction<? super V, ? super V, ? extends V> merge,
+			final long timeout, final TimeUnit unit) throws InterruptedException {
+		return offer(key, value, merge, true, unit.toNanos(timeout));
+	}
+
+	private boolean offer(final K key, final V value, final BiFunction<? super V, ? super V, ? extends V> merge,
+			final boolean timed, long nanos) throws InterruptedException {
+		if (key == null || value == null || merge == null) {
+			throw new NullPointerException();
+		}
+		int c = -1;
+		final ReentrantLock putLock = this.putLock;
+		putLock.lockInterruptibly();
+		try {
+			Entry<K, V> entry;
+			while ((entry = coalesce(key, value, merge)) == null) {
+				if (!timed) {
+					notFull.await();
+				} else if (nanos <= 0) {
+					return false;
+				} else {
+					nanos = notFull.awaitNanos(nanos);
+				}
+			}
+			if (isLinked(entry)) {
+				return true;
+			}
+			c = link(entry);
+		} finally {
+			putLock.unlock();
+		}
+		if (c == 0) {
+			signalNotEmpty();
+		}
+		return true;
+	}
+
+	/**
+	 * Retrieves and removes the head of the queue, waiting if necessary until an entry becomes available.
+	 */
+	public Map.Entry<K, V> take() throws InterruptedException {
+		Map.Entry<K, V> x;
+		int c;
+		final AtomicInteger count = this.count;
+		final ReentrantLock takeLock = this.takeLock;
+		takeLock.lockInterruptibly();
+		try {
+			while (count.get() == 0) {
+				notEmpty.await();
+			}
+			x = dequeueEntry();
+			c = count.getAndDecrement();
+			if (c > 1) {
+				notEmpty.signal();
+			}
+		} finally {
+			takeLock.unlock();
+		}
+		if (c == capacity) {
+			signalNotFull();
+		}
+		return x;
+	}
+
+	/**
+	 * Retrieves and removes the head of the queue, waiting up to the specified wait time for an entry.
+	 * @return the head of the queue, or null if the time elapsed
+	 */
+	public Map.Entry<K, V> poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+		Map.Entry<K, V> x;
+		int c;
+		long nanos = unit.toNanos(timeout);
+		final AtomicInteger count = this.count;
+		final ReentrantLock takeLock = this.takeLock;
+		takeLock.lockInterruptibly();
+		try {
+			while (count.get() == 0) {
+				if (nanos <= 0) {
+					return null;
+				}
+				nanos = notEmpty.awaitNanos(nanos);
+			}
+			x = dequeueEntry();
+			c = count.getAndDecrement();
+			if (c > 1) {
+				notEmpty.signal();
+			}
+		} finally {
+			takeLock.unlock();
+		}
+		if (c == capacity) {
+			signalNotFull();
+		}
+		return x;
+	}
+
+	/**
+	 * Retrieves and removes the head of the queue.
+	 * @return the head of the queue, or null if the queue is empty
+	 */
+	public Map.Entry<K, V> poll() {
+		final AtomicInteger count = this.count;
+		if (count.get() == 0) {
+			return null;
+		}
+		Map.Entry<K, V> x = null;
+		int c = -1;
+		final ReentrantLock takeLock = this.takeLock;
+		takeLock.lock();
+		try {
+			if (count.get() > 0) {
+				x = dequeueEntry();
+				c = count.getAndDecrement();
+				if (c > 1) {
+					notEmpty.signal();
+				}
+			}
+		} finally {
+			takeLock.unlock();
+		}
+		if (c == capacity) {
+			signalNotFull();
+		}
+		return x;
+	}
+
+	/**
+	 * Retrieves, but does not remove, the head of the queue. Its value may still be merged until it is taken.
+	 * @return the head of the queue, or null if the queue is empty
+	 */
+	@SuppressWarnings("unchecked")
+	public Map.Entry<K, V> peek() {
+		if (count.get() == 0) {
+			return null;
+		}
+		final ReentrantLock takeLock = this.takeLock;
+		takeLock.lock();
+		try {
+			final Entry<K, V> first = (Entry<K, V>) head.next;
+			return first == null ? null : new AbstractMap.SimpleImmutableEntry<>(first.item, first.value);
+		} finally {
+			takeLock.unlock();
+		}
+	}
+
+	/**
+	 * @return the value queued for the key, or null if the key is not queued
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(final Object key) {
+		if (key == null) {
+			return null;
+		}
+		final Entry<K, V> entry = (Entry<K, V>) index.get(key);
+		return entry == null ? null : entry.value;
+	}
+
+	public boolean containsKey(final Object key) {
+		return key != null && index.containsKey(key);
+	}
+
+	/**
+	 * Removes the entry of the key from anywhere in the queue.
+	 * @return true if the key was queued
+	 */
+	public boolean remove(final Object key) {
+		if (key == null) {
+			return false;
+		}
+		final boolean wasFull;
+		fullyLock();
+		try {
+			final Node<K> node = index.get(key);
+			if (node == null) {
+				return false;
+			}
+			wasFull = unlink(node);
+		} finally {
+			fullyUnlock();
+		}
+		if (wasFull) {
+			notifyListeners(notFullListeners);
+		}
+		return true;
+	}
+
+	/**
+	 * Removes all available entries and adds them to the given collection.
+	 * @return the number of entries transferred
+	 */
+	public int drainTo(final Collection<? super Map.Entry<K, V>> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Removes at most maxElements available entries and adds them to the given collection.
+	 * @return the number of entries transferred
+	 */
+	public int drainTo(final Collection<? super Map.Entry<K, V>> c, final int maxElements) {
+		if (c == null) {
+			throw new NullPointerException();
+		}
+		if (maxElements <= 0) {
+			return 0;
+		}
+		boolean signalNotFull = false;
+		final ReentrantLock takeLock = this.takeLock;
+		takeLock.lock();
+		try {
+			final int n = Math.min(maxElements, count.get());
+			int i = 0;
+			try {
+				while (i < n) {
+					final Map.Entry<K, V> x = dequeueEntry();
+					++i;
+					c.add(x);
+				}
+				return n;
+			} finally {
+				if (i > 0) {
+					signalNotFull = (count.getAndAdd(-i) == capacity);
+				}
+			}
+		} finally {
+			takeLock.unlock();
+			if (signalNotFull) {
+				signalNotFull();
+			}
+		}
+	}
+
+	public void clear() {
+		fullyLock();
+		try {
+			for (Node<K> p, h = head; (p = h.next) != null; h = p) {
+				h.next = h;
+				p.item = null;
+				p.key = null;
+				((Entry<?, ?>) p).value = null;
+			}
+			head = last;
+			head.prev = null;
+			index.clear();
+			if (count.getAndSet(0) == capacity) {
+				notFull.signal();
+			}
+		} finally {
+			fullyUnlock();
+		}
+	}
+
+	public int size() {
+		return count.get();
+	}
+
+	public boolean isEmpty() {
+		return count.get() == 0;
+	}
+
+	public int remainingCapacity() {
+		return capacity - count.get();
+	}
+
+	/**
+	 * Merges the value into the queued entry of the key, or creates a new entry if there is room for it.
+	 * Called with putLock held.
+	 * @return the entry, not yet linked if it has just been created, or null if the queue is full
+	 */
+	@SuppressWarnings("unchecked")
+	private Entry<K, V> coalesce(final K key, final V value, final BiFunction<? super V, ? super V, ? extends V> merge) {
+		final boolean room = count.get() < capacity;
+		return (Entry<K, V>) index.compute(key, (k, node) -> {
+			if (node == null) {
+				return room ? new Entry<>(key, value) : null;
+			}
+			final Entry<K, V> entry = (Entry<K, V>) node;
+			final V merged = merge.apply(entry.value, value);
+			if (merged == null) {
+				throw new NullPointerException("Merged value is null");
+			}
+			entry.value = merged;
+			return entry;
+		});
+	}
+
+	/**
+	 * A new entry has no successor and is not the last node until it is linked.
+	 * Called with putLock held.
+	 */
+	private boolean isLinked(final Entry<K, V> entry) {
+		return entry == last || entry.next != null;
+	}
+
+	/**
+	 * Links a new entry at the end of the queue.
+	 * Called with putLock held.
+	 * @return the count before the entry was added
+	 */
+	private int link(final Entry<K, V> entry) {
+		entry.prev = last;
+		last = last.next = entry;
+		final int c = count.getAndIncrement();
+		if (c + 1 < capacity) {
+			notFull.signal();
+		}
+		return c;
+	}
+
+	/**
+	 * Removes an entry from the head of the queue, the key is released from the index
+	 * before the value is read so no merge can be lost.
+	 * Called with takeLock held and a non empty queue.
+	 */
+	@SuppressWarnings("unchecked")
+	private Map.Entry<K, V> dequeueEntry() {
+		final Node<K> h = head;
+		final Entry<K, V> first = (Entry<K, V>) h.next;
+		h.next = h; // help GC
+		head = first;
+		first.prev = null;
+		final K key = first.item;
+		index.remove(key, first);
+		final V value = first.value;
+		first.item = null;
+		first.key = null;
+		first.value = null;
+		return new AbstractMap.SimpleImmutableEntry<>(key, value);
+	}
+}
@@ -0,0 +1,715 @@
+package com.hybhub.util.concurrent;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded blocking queue of fixed width keys persisted in memory mapped files, duplicates inside the queue are not
+ * allowed and the queued keys survive a restart.
+ * Offered keys are encoded by a {@link KeyCodec} straight into the mapped segment at the tail of a log, each record
+ * being a state byte followed by the key, the state is written last to commit the record. Segments are files of a
+ * fixed number of records, a small checkpoint file holds the position of the consumer and segments behind it are
+ * unmapped then deleted, a segment whose mapping can't be released before the buffer is garbage collected may not
+ * be deletable yet (on Windows), it is then left behind and deleted on the next startup. On startup the index is rebuilt by reading the records from the checkpoint to the tail, so recovery time
+ * depends on the backlog, not on the history of the queue.
+ * Delivery is at least once, a key taken right before a crash may be taken again after the restart.
+ * How often the mapped files are forced to the storage device is set by the {@link Sync} policy.
+ * A single lock guards the queue, inspired by {@link java.util.concurrent.ArrayBlockingQueue}
+ * @param <E>
+ */
+public class ConcurrentUniqueMappedBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E>, Closeable {
+
+	/**
+	 * When the mapped files are forced to the storage device.
+	 */
+	public static final class Sync {
+
+		/** Number of writes between two forces, 0 to never force */
+		final int every;
+
+		private Sync(final int every) {
+			this.every = every;
+		}
+
+		/**
+		 * Forces after every write, each operation is durable once it returns.
+		 */
+		public static Sync perOperation() {
+			return new Sync(1);
+		}
+
+		/**
+		 * Forces once every given number of writes, at most that many operations are lost on power failure.
+		 */
+		public static Sync batched(final int writes) {
+			if (writes <= 0) {
+				throw new IllegalArgumentException();
+			}
+			return new Sync(writes);
+		}
+
+		/**
+		 * Never forces, the operating system writes the pages back. Survives the process crashing but not the host.
+		 */
+		public static Sync os() {
+			return new Sync(0);
+		}
+	}
+
+	/** Record state of a slot never written, the first one is the tail of the log */
+	private static final byte FREE = 0;
+
+	/** Record state of a queued key */
+	private static final byte LIVE = 1;
+
+	/** Record state of a key removed with {@link #remove(Object)} before reaching the head */
+	private static final byte REMOVED = 2;
+
+	private static final String SEGMENT_SUFFIX = ".segment";
+
+	private static final String CHECKPOINT = "checkpoint";
+
+	/** Checkpoint layout: head sequence, records per segment, key width */
+	private static final int CHECKPOINT_SIZE = 16;
+
+	private static final int DEFAULT_SEGMENT_RECORDS = 1 << 16;
+
+	private final Path directory;
+
+	private final KeyCodec<E> codec;
+
+	/** Bytes of an encoded key */
+	private final int width;
+
+	/** Bytes of a record, the state byte and the key */
+	private final int recordSize;
+
+	private final int segmentRecords;
+
+	/** Maximum capacity of the queue */
+	private final int capacity;
+
+	private final Sync sync;
+
+	/** Mapped segments by segment number, from the head segment to the tail segment */
+	private final TreeMap<Long, MappedByteBuffer> segments = new TreeMap<>();
+
+	private final MappedByteBuffer checkpoint;
+
+	/** Sequence of the next record to take */
+	private long head;
+
+	/** Sequence of the next record to write */
+	private long tail;
+
+	/** Current number of keys */
+	private int count;
+
+	/** Writes since the files were last forced */
+	private int unsynced;
+
+	private boolean closed;
+
+	/** Sequence of each queued key, keyed by the encoded key so keys are compared as the codec encodes them */
+	private final ConcurrentHashMap<ByteBuffer, Long> index = new ConcurrentHashMap<>();
+
+	/** Main lock guarding all access */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/** Wait queue for waiting takes */
+	private final Condition notEmpty = lock.newCondition();
+
+	/** Wait queue for waiting puts */
+	private final Condition notFull = lock.newCondition();
+
+	/**
+	 * Opens the queue stored in the directory, creating it if needed, with segments of 65536 records
+	 * and the {@link Sync#os()} policy.
+	 */
+	public ConcurrentUniqueMappedBlockingQueue(final Path directory, final int capacity, final KeyCodec<E> codec)
+			throws IOException {
+		this(directory, capacity, codec, DEFAULT_SEGMENT_RECORDS, Sync.os());
+	}
+
+	/**
+	 * Opens the queue stored in the directory, creating it if needed.
+	 * @param segmentRecords number of records of a segment file, must not change once the queue is created
+	 * @throws IOException if the files can't be mapped, or if they were created with another segment size or key width
+	 */
+	public ConcurrentUniqueMappedBlockingQueue(final Path directory, final int capacity, final KeyCodec<E> codec,
+			final int segmentRecords, final Sync sync) throws IOException {
+		if (directory == null || codec == null || sync == null) {
+			throw new NullPointerException();
+		}
+		if (capacity <= 0 || segmentRecords <= 0 || (long) segmentRecords * (codec.width() + 1) > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException();
+		}
+		this.directory = directory;
+		this.codec = codec;
+		this.width = codec.width();
+		this.recordSize = width + 1;
+		this.segmentRecords = segmentRecords;
+		this.capacity = capacity;
+		this.sync = sync;
+		Files.createDirectories(directory);
+		this.checkpoint = map(directory.resolve(CHECKPOINT), CHECKPOINT_SIZE);
+		if (checkpoint.getInt(8) == 0) {
+			checkpoint.putInt(8, segmentRecords);
+			checkpoint.putInt(12, width);
+		} else if (checkpoint.getInt(8) != segmentRecords || checkpoint.getInt(12) != width) {
+			throw new IOException("Queue created with " + checkpoint.getInt(8) + " records per segment and keys of "
+					+ checkpoint.getInt(12) + " bytes");
+		}
+		this.head = checkpoint.getLong(0);
+		recover();
+	}
+
+	/**
+	 * Maps the segments from the head one and rebuilds the index from the head to the first free record.
+	 */
+	private void recover() throws IOException {
+		final long headSegment = head / segmentRecords;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+			for (Path file : files) {
+				final String name = file.getFileName().toString();
+				final long segment = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+				if (segment < headSegment) {
+					deleteRetired(file);
+				} else {
+					segments.put(segment, map(file, (long) segmentRecords * recordSize));
+				}
+			}
+		}
+		if (!segments.isEmpty() && segments.firstKey() > headSegment) {
+			// the checkpoint didn't reach the device before the consumed segments were deleted
+			head = segments.firstKey() * segmentRecords;
+		}
+		for (tail = head; ; tail++) {
+			final MappedByteBuffer buffer = segments.get(tail / segmentRecords);
+			if (buffer == null) {
+				break;
+			}
+			final int offset = offset(tail);
+			final byte state = buffer.get(offset);
+			if (state == FREE) {
+				break;
+			}
+			if (state == LIVE) {
+				if (index.putIfAbsent(keyAt(buffer, offset), tail) == null) {
+					count++;
+				} else {
+					buffer.put(offset, REMOVED);
+				}
+			}
+		}
+	}
+
+	@Override
+	public boolean offer(final E e) {
+		if (e == null) {
+			throw new NullPointerException();
+		}
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			ensureOpen();
+			return count < capacity && append(e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Inserts the element, waiting if necessary for space to become available.
+	 * Returns immediately if the element is already queued.
+	 */
+	@Override
+	public void put(final E e) throws InterruptedException {
+		if (e == null) {
+			throw new NullPointerException();
+		}
+		final ByteBuffer key = encode(e);
+		final ReentrantLock lock = this.lock;
+		lock.lockInterruptibly();
+		try {
+			ensureOpen();
+			while (count == capacity) {
+				if (index.containsKey(key)) {
+					return;
+				}
+				notFull.await();
+				ensureOpen();
+			}
+			append(e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean offer(final E e, final long timeout, final TimeUnit unit) throws InterruptedException {
+		if (e == null) {
+			throw new NullPointerException();
+		}
+		final ByteBuffer key = encode(e);
+		long nanos = unit.toNanos(timeout);
+		final ReentrantLock lock = this.lock;
+		lock.lockInterruptibly();
+		try {
+			ensureOpen();
+			while (count == capacity) {
+				if (nanos <= 0 || index.containsKey(key)) {
+					return false;
+				}
+				nanos = notFull.awaitNanos(nanos);
+				ensureOpen();
+			}
+			return append(e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public E poll() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			ensureOpen();
+			return count == 0 ? null : dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public E take() throws InterruptedException {
+		final ReentrantLock lock = this.lock;
+		lock.lockInterruptibly();
+		try {
+			ensureOpen();
+			while (count == 0) {
+				notEmpty.await();
+				ensureOpen();
+			}
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public E poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		final ReentrantLock lock = this.lock;
+		lock.lockInterruptibly();
+		try {
+			ensureOpen();
+			while (count == 0) {
+				if (nanos <= 0) {
+					return null;
+				}
+				nanos = notEmpty.awaitNanos(nanos);
+				ensureOpen();
+			}
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public E peek() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			ensureOpen();
+			for (long seq = head; seq < tail; seq++) {
+				final MappedByteBuffer buffer = segments.get(seq / segmentRecords);
+				final int offset = offset(seq);
+				if (buffer.get(offset) == LIVE) {
+					return codec.decode(buffer, offset + 1);
+				}
+			}
+			return null;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Marks the record of the element as removed, it is skipped when it reaches the head.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public boolean remove(final Object o) {
+		if (o == null) {
+			return false;
+		}
+		final ByteBuffer key = encode((E) o);
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			ensureOpen();
+			final Long seq = index.remove(key);
+			if (seq == null) {
+				return false;
+			}
+			final MappedByteBuffer buffer = segments.get(seq / segmentRecords);
+			buffer.put(offset(seq), REMOVED);
+			count--;
+			notFull.signal();
+			written(buffer);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Lock free, reads the concurrent index.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public boolean contains(final Object o) {
+		return o != null && index.containsKey(encode((E) o));
+	}
+
+	@Override
+	public int size() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			return count;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int remainingCapacity() {
+		return capacity - size();
+	}
+
+	/**
+	 * Moves the head to the tail, every segment but the tail one is deleted.
+	 */
+	@Override
+	public void clear() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			ensureOpen();
+			head = tail;
+			checkpoint.putLong(0, head);
+			releaseSegmentsBefore(head / segmentRecords);
+			index.clear();
+			count = 0;
+			written(checkpoint);
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int drainTo(final Collection<? super E> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int drainTo(final Collection<? super E> c, final int maxElements) {
+		if (c == null) {
+			throw new NullPointerException();
+		}
+		if (c == this) {
+			throw new IllegalArgumentException();
+		}
+		if (maxElements <= 0) {
+			return 0;
+		}
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			ensureOpen();
+			final int n = Math.min(maxElements, count);
+			for (int i = 0; i < n; i++) {
+				c.add(dequeue());
+			}
+			return n;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Object[] toArray() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			ensureOpen();
+			final List<E> a = new ArrayList<>(count);
+			for (long seq = head; seq < tail; seq++) {
+				final MappedByteBuffer buffer = segments.get(seq / segmentRecords);
+				final int offset = offset(seq);
+				if (buffer.get(offset) == LIVE) {
+					a.add(codec.decode(buffer, offset + 1));
+				}
+			}
+			return a.toArray();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Iterates over a snapshot of the queue, removing through the iterator removes from the queue.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public Iterator<E> iterator() {
+		final Object[] snapshot = toArray();
+		return new Iterator<E>() {
+
+			private int cursor;
+
+			private int lastRet = -1;
+
+			@Override
+			public boolean hasNext() {
+				return cursor < snapshot.length;
+			}
+
+			@Override
+			public E next() {
+				if (cursor >= snapshot.length) {
+					throw new NoSuchElementException();
+				}
+				lastRet = cursor++;
+				return (E) snapshot[lastRet];
+			}
+
+			@Override
+			public void remove() {
+				if (lastRet < 0) {
+					throw new IllegalStateException();
+				}
+				ConcurrentUniqueMappedBlockingQueue.this.remove(snapshot[lastRet]);
+				lastRet = -1;
+			}
+		};
+	}
+
+	/**
+	 * Forces the mapped segments and the checkpoint to the storage device, whatever the {@link Sync} policy.
+	 */
+	public void force() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			ensureOpen();
+			forceAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Forces the files, unmaps them and closes the queue, waiting puts and takes fail with an
+	 * {@link IllegalStateException}.
+	 */
+	@Override
+	public void close() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			if (closed) {
+				return;
+			}
+			forceAll();
+			closed = true;
+			for (MappedByteBuffer buffer : segments.values()) {
+				MappedBuffers.unmap(buffer);
+			}
+			segments.clear();
+			MappedBuffers.unmap(checkpoint);
+			index.clear();
+			notEmpty.signalAll();
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Encodes the key straight into the tail record and commits it unless it is already queued.
+	 * Call only with the lock held and a non full queue.
+	 */
+	private boolean append(final E e) {
+		final MappedByteBuffer buffer = tailSegment();
+		final int offset = offset(tail);
+		codec.encode(e, buffer, offset + 1);
+		if (index.putIfAbsent(keyAt(buffer, offset), tail) != null) {
+			// left free, the next append overwrites it
+			return false;
+		}
+		buffer.put(offset, LIVE);
+		tail++;
+		count++;
+		notEmpty.signal();
+		written(buffer);
+		return true;
+	}
+
+	/**
+	 * Takes the first live record, moving the head past it and past the removed records before it.
+	 * Call only with the lock held and a non empty queue.
+	 */
+	private E dequeue() {
+		for (;;) {
+			final MappedByteBuffer buffer = segments.get(head / segmentRecords);
+			final int offset = offset(head);
+			final boolean live = buffer.get(offset) == LIVE;
+			E x = null;
+			if (live) {
+				x = codec.decode(buffer, offset + 1);
+				index.remove(keyAt(buffer, offset));
+			}
+			checkpoint.putLong(0, ++head);
+			if (head % segmentRecords == 0) {
+				releaseSegmentsBefore(head / segmentRecords);
+			}
+			if (live) {
+				count--;
+				notFull.signal();
+				written(checkpoint);
+				return x;
+			}
+		}
+	}
+
+	/**
+	 * @return the segment of the tail record, created if needed
+	 */
+	private MappedByteBuffer tailSegment() {
+		final long segment = tail / segmentRecords;
+		MappedByteBuffer buffer = segments.get(segment);
+		if (buffer == null) {
+			try {
+				buffer = map(segmentFile(segment), (long) segmentRecords * recordSize);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			segments.put(segment, buffer);
+		}
+		return buffer;
+	}
+
+	/**
+	 * Unmaps and deletes the segments fully consumed, every access to the buffers being done with the lock held
+	 * none is left to touch them once unmapped.
+	 */
+	private void releaseSegmentsBefore(final long segment) {
+		final Iterator<Map.Entry<Long, MappedByteBuffer>> it = segments.headMap(segment).entrySet().iterator();
+		while (it.hasNext()) {
+			final Map.Entry<Long, MappedByteBuffer> consumed = it.next();
+			it.remove();
+			MappedBuffers.unmap(consumed.getValue());
+			deleteRetired(segmentFile(consumed.getKey()));
+		}
+	}
+
+	/**
+	 * Deletes a segment behind the head, if it is still mapped and can't be deleted yet it is left for the next
+	 * startup, the head being past it already.
+	 */
+	private static void deleteRetired(final Path file) {
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			// still mapped, deleted by the recovery of the next startup
+		}
+	}
+
+	/**
+	 * Applies the {@link Sync} policy after a write to the buffer.
+	 */
+	private void written(final MappedByteBuffer buffer) {
+		final int every = sync.every;
+		if (every == 1) {
+			buffer.force();
+		} else if (every > 1 && ++unsynced >= every) {
+			forceAll();
+		}
+	}
+
+	private void forceAll() {
+		for (MappedByteBuffer buffer : segments.values()) {
+			buffer.force();
+		}
+		checkpoint.force();
+		unsynced = 0;
+	}
+
+	private void ensureOpen() {
+		if (closed) {
+			throw new IllegalStateException("Queue closed");
+		}
+	}
+
+	private int offset(final long seq) {
+		return (int) (seq % segmentRecords) * recordSize;
+	}
+
+	private Path segmentFile(final long segment) {
+		return directory.resolve(String.format("%019d%s", segment, SEGMENT_SUFFIX));
+	}
+
+	/**
+	 * @return a heap copy of the key of the record, used as index key
+	 */
+	private ByteBuffer keyAt(final ByteBuffer buffer, final int offset) {
+		final byte[] key = new byte[width];
+		final ByteBuffer source = buffer.duplicate();
+		source.position(offset + 1);
+		source.get(key);
+		return ByteBuffer.wrap(key);
+	}
+
+	/**
+	 * @return the key encoded in a heap buffer, used to look up the index
+	 */
+	private ByteBuffer encode(final E e) {
+		final ByteBuffer key = ByteBuffer.allocate(width);
+		codec.encode(e, key, 0);
+		return key;
+	}
+
+	private static MappedByteBuffer map(final Path file, final long size) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+		}
+	}
+}
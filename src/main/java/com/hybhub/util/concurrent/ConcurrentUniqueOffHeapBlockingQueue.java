@@ -0,0 +1,543 @@
+package com.hybhub.util.concurrent;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded blocking queue of fixed width keys stored outside of the heap, duplicates inside the queue are not allowed.
+ * Keys are encoded by a {@link KeyCodec} into a ring of direct memory, an open addressing hash table, also in direct
+ * memory, maps the hash of each key to its position in the ring. Both are allocated for the capacity at construction,
+ * so a backlog of millions of keys is a handful of objects for the garbage collector and costs a known number of bytes
+ * per key, see {@link #memoryUsage()}. Keys are only materialized as objects when they are taken or inspected.
+ * A single lock guards the queue, inspired by {@link java.util.concurrent.ArrayBlockingQueue}
+ * @param <E>
+ */
+public class ConcurrentUniqueOffHeapBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+	/** Bytes of a hash table slot, the ring position plus one (0 marks a free slot) then the hash of the key */
+	private static final int SLOT = 8;
+
+	private final KeyCodec<E> codec;
+
+	/** Bytes of an encoded key */
+	private final int width;
+
+	/** Maximum capacity of the queue */
+	private final int capacity;
+
+	/** Encoded keys, capacity slots in order from takeIndex followed by one scratch slot used for lookups */
+	private final ByteBuffer ring;
+
+	/** Offset of the scratch slot */
+	private final int scratch;
+
+	/** Hash table of {@link #SLOT} bytes slots */
+	private final ByteBuffer table;
+
+	private final int mask;
+
+	/** Index of the next key to take */
+	private int takeIndex;
+
+	/** Index of the next key to put */
+	private int putIndex;
+
+	/** Current number of keys */
+	private int count;
+
+	/** Main lock guarding all access */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/** Wait queue for waiting takes */
+	private final Condition notEmpty = lock.newCondition();
+
+	/** Wait queue for waiting puts */
+	private final Condition notFull = lock.newCondition();
+
+	/**
+	 * @throws IllegalArgumentException if the ring or the hash table would exceed 2GB
+	 */
+	public ConcurrentUniqueOffHeapBlockingQueue(final int capacity, final KeyCodec<E> codec) {
+		if (codec == null) {
+			throw new NullPointerException();
+		}
+		final int tableLength = LongHashSet.tableSizeFor(capacity);
+		if (capacity <= 0 || (capacity + 1L) * codec.width() > Integer.MAX_VALUE
+				|| (long) tableLength * SLOT > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException();
+		}
+		this.codec = codec;
+		this.width = codec.width();
+		this.capacity = capacity;
+		this.ring = ByteBuffer.allocateDirect((capacity + 1) * width).order(ByteOrder.nativeOrder());
+		this.scratch = capacity * width;
+		this.table = ByteBuffer.allocateDirect(tableLength * SLOT).order(ByteOrder.nativeOrder());
+		this.mask = tableLength - 1;
+	}
+
+	/**
+	 * @return the number of bytes of direct memory held by the queue, whatever its size
+	 */
+	public long memoryUsage() {
+		return (long) ring.capacity() + table.capacity();
+	}
+
+	@Override
+	public boolean offer(final E e) {
+		if (e == null) {
+			throw new NullPointerException();
+		}
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			if (count == capacity) {
+				return false;
+			}
+			final int hash = encode(e);
+			final int slot = find(scratch, hash);
+			if (slot >= 0) {
+				return false;
+			}
+			enqueue(-slot - 1, hash);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Inserts the element, waiting if necessary for space to become available.
+	 * Returns immediately if the element is already queued.
+	 */
+	@Override
+	public void put(final E e) throws InterruptedException {
+		if (e == null) {
+			throw new NullPointerException();
+		}
+		final ReentrantLock lock = this.lock;
+		lock.lockInterruptibly();
+		try {
+			int hash;
+			int slot;
+			// the scratch slot is shared, encode again after each wait
+			while ((slot = find(scratch, hash = encode(e))) < 0 && count == capacity) {
+				notFull.await();
+			}
+			if (slot < 0) {
+				enqueue(-slot - 1, hash);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean offer(final E e, final long timeout, final TimeUnit unit) throws InterruptedException {
+		if (e == null) {
+			throw new NullPointerException();
+		}
+		long nanos = unit.toNanos(timeout);
+		final ReentrantLock lock = this.lock;
+		lock.lockInterruptibly();
+		try {
+			int hash;
+			int slot;
+			while ((slot = find(scratch, hash = encode(e))) < 0 && count == capacity) {
+				if (nanos <= 0) {
+					return false;
+				}
+				nanos = notFull.awaitNanos(nanos);
+			}
+			if (slot >= 0) {
+				return false;
+			}
+			enqueue(-slot - 1, hash);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public E poll() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			return count == 0 ? null : dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public E take() throws InterruptedException {
+		final ReentrantLock lock = this.lock;
+		lock.lockInterruptibly();
+		try {
+			while (count == 0) {
+				notEmpty.await();
+			}
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public E poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		final ReentrantLock lock = this.lock;
+		lock.lockInterruptibly();
+		try {
+			while (count == 0) {
+				if (nanos <= 0) {
+					return null;
+				}
+				nanos = notEmpty.awaitNanos(nanos);
+			}
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public E peek() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			return count == 0 ? null : codec.decode(ring, takeIndex * width);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes the element from anywhere in the queue, the following keys are shifted so this is O(n).
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public boolean remove(final Object o) {
+		if (o == null) {
+			return false;
+		}
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			final int slot = find(scratch, encode((E) o));
+			if (slot < 0) {
+				return false;
+			}
+			final int pos = table.getInt(slot * SLOT) - 1;
+			delete(slot);
+			removeAt(pos);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public boolean contains(final Object o) {
+		if (o == null) {
+			return false;
+		}
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			return find(scratch, encode((E) o)) >= 0;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int size() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			return count;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int remainingCapacity() {
+		return capacity - size();
+	}
+
+	@Override
+	public void clear() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			final ByteBuffer table = this.table;
+			for (int i = 0, n = table.capacity(); i < n; i += SLOT) {
+				table.putLong(i, 0L);
+			}
+			takeIndex = putIndex = count = 0;
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int drainTo(final Collection<? super E> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int drainTo(final Collection<? super E> c, final int maxElements) {
+		if (c == null) {
+			throw new NullPointerException();
+		}
+		if (c == this) {
+			throw new IllegalArgumentException();
+		}
+		if (maxElements <= 0) {
+			return 0;
+		}
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			final int n = Math.min(maxElements, count);
+			for (int i = 0; i < n; i++) {
+				c.add(dequeue());
+			}
+			return n;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Object[] toArray() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			final Object[] a = new Object[count];
+			for (int i = takeIndex, k = 0; k < count; k++) {
+				a[k] = codec.decode(ring, i * width);
+				if (++i == capacity) {
+					i = 0;
+				}
+			}
+			return a;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Iterates over a snapshot of the queue, removing through the iterator removes from the queue.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public Iterator<E> iterator() {
+		final Object[] snapshot = toArray();
+		return new Iterator<E>() {
+
+			private int cursor;
+
+			private int lastRet = -1;
+
+			@Override
+			public boolean hasNext() {
+				return cursor < snapshot.length;
+			}
+
+			@Override
+			public E next() {
+				if (cursor >= snapshot.length) {
+					throw new NoSuchElementException();
+				}
+				lastRet = cursor++;
+				return (E) snapshot[lastRet];
+			}
+
+			@Override
+			public void remove() {
+				if (lastRet < 0) {
+					throw new IllegalStateException();
+				}
+				ConcurrentUniqueOffHeapBlockingQueue.this.remove(snapshot[lastRet]);
+				lastRet = -1;
+			}
+		};
+	}
+
+	/**
+	 * Encodes the key into the scratch slot.
+	 * Call only with the lock held.
+	 * @return the hash of the encoded key
+	 */
+	private int encode(final E e) {
+		codec.encode(e, ring, scratch);
+		return hash(scratch);
+	}
+
+	/**
+	 * Copies the encoded key of the scratch slot at the put position and signals a take.
+	 * Call only with the lock held and a non full queue.
+	 */
+	private void enqueue(final int freeSlot, final int hash) {
+		final int offset = putIndex * width;
+		copy(scratch, offset);
+		table.putInt(freeSlot * SLOT, putIndex + 1);
+		table.putInt(freeSlot * SLOT + 4, hash);
+		if (++putIndex == capacity) {
+			putIndex = 0;
+		}
+		count++;
+		notEmpty.signal();
+	}
+
+	/**
+	 * Decodes the key at the take position, removes it from the hash table and signals a put.
+	 * Call only with the lock held and a non empty queue.
+	 */
+	private E dequeue() {
+		final int offset = takeIndex * width;
+		final E x = codec.decode(ring, offset);
+		delete(slotOf(takeIndex, hash(offset)));
+		if (++takeIndex == capacity) {
+			takeIndex = 0;
+		}
+		count--;
+		notFull.signal();
+		return x;
+	}
+
+	/**
+	 * Deletes the key at ring position removeIndex, already removed from the hash table,
+	 * the following keys are moved back and their slots updated.
+	 * Call only with the lock held.
+	 */
+	private void removeAt(final int removeIndex) {
+		if (removeIndex == takeIndex) {
+			if (++takeIndex == capacity) {
+				takeIndex = 0;
+			}
+		} else {
+			// slide over all others up through putIndex
+			for (int i = removeIndex, next; ; i = next) {
+				if ((next = i + 1) == capacity) {
+					next = 0;
+				}
+				if (next == putIndex) {
+					putIndex = i;
+					break;
+				}
+				table.putInt(slotOf(next, hash(next * width)) * SLOT, i + 1);
+				copy(next * width, i * width);
+			}
+		}
+		count--;
+		notFull.signal();
+	}
+
+	/**
+	 * @return the slot of the key encoded at the offset, or -(free slot + 1) if it is not in the table
+	 */
+	private int find(final int offset, final int hash) {
+		final ByteBuffer table = this.table;
+		for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+			final int ref = table.getInt(slot * SLOT);
+			if (ref == 0) {
+				return -slot - 1;
+			}
+			if (table.getInt(slot * SLOT + 4) == hash && equalKeys((ref - 1) * width, offset)) {
+				return slot;
+			}
+		}
+	}
+
+	/**
+	 * @return the slot referencing the ring position
+	 */
+	private int slotOf(final int pos, final int hash) {
+		final ByteBuffer table = this.table;
+		int slot = hash & mask;
+		while (table.getInt(slot * SLOT) != pos + 1) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Frees the slot and shifts the following slots back until a slot already in place or a free slot is met.
+	 */
+	private void delete(int slot) {
+		final ByteBuffer table = this.table;
+		for (;;) {
+			final int last = slot;
+			slot = (slot + 1) & mask;
+			long current;
+			for (;;) {
+				current = table.getLong(slot * SLOT);
+				if (table.getInt(slot * SLOT) == 0) {
+					table.putLong(last * SLOT, 0L);
+					return;
+				}
+				final int home = table.getInt(slot * SLOT + 4) & mask;
+				if (last <= slot ? last >= home || home > slot : last >= home && home > slot) {
+					break;
+				}
+				slot = (slot + 1) & mask;
+			}
+			table.putLong(last * SLOT, current);
+		}
+	}
+
+	private int hash(final int offset) {
+		final ByteBuffer ring = this.ring;
+		long h = 0;
+		int i = 0;
+		for (; i + Long.BYTES <= width; i += Long.BYTES) {
+			h = (h ^ ring.getLong(offset + i)) * 0x9E3779B97F4A7C15L;
+			h ^= h >>> 29;
+		}
+		for (; i < width; i++) {
+			h = (h ^ ring.get(offset + i)) * 0x9E3779B97F4A7C15L;
+		}
+		return (int) (h ^ (h >>> 32));
+	}
+
+	private boolean equalKeys(final int a, final int b) {
+		final ByteBuffer ring = this.ring;
+		int i = 0;
+		for (; i + Long.BYTES <= width; i += Long.BYTES) {
+			if (ring.getLong(a + i) != ring.getLong(b + i)) {
+				return false;
+			}
+		}
+		for (; i < width; i++) {
+			if (ring.get(a + i) != ring.get(b + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void copy(final int from, final int to) {
+		final ByteBuffer ring = this.ring;
+		int i = 0;
+		for (; i + Long.BYTES <= width; i += Long.BYTES) {
+			ring.putLong(to + i, ring.getLong(from + i));
+		}
+		for (; i < width; i++) {
+			ring.put(to + i, ring.get(from + i));
+		}
+	}
+}
@@ -0,0 +1,327 @@
+package com.hybhub.util.concurrent;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Lock free queue where duplicate elements are not allowed.
+ * Elements are linked in a Michael-Scott queue, a {@link ConcurrentHashMap} from each element to its node
+ * guaranties that there are no duplicates. A node claims its element in the index when it is offered,
+ * the element is released once a poll or a remove has taken the item out of the node with a CAS.
+ * Removed nodes are unlinked as in {@link java.util.concurrent.ConcurrentLinkedQueue}, by a CAS of the
+ * predecessor's next past them, when iterators walk over them and once they outnumber the queued elements.
+ * The last node is never unlinked so an offer never appends to a node that has left the list.
+ * Unlike {@link ConcurrentSetQueue} no {@link java.util.concurrent.locks.ReentrantLock} is ever held,
+ * so producers and consumers scale with the number of cores.
+ * Inspired by {@link java.util.concurrent.ConcurrentLinkedQueue}
+ * @param <E>
+ */
+public class ConcurrentUniqueQueue<E> extends AbstractQueue<E> implements Queue<E> {
+
+	/**
+	 * Linked list node, the item is set to null once taken
+	 */
+	static final class Node<E> {
+
+		volatile E item;
+
+		volatile Node<E> next;
+
+		Node(final E item) {
+			this.item = item;
+		}
+
+		boolean casItem(final E expected, final E item) {
+			return ITEM.compareAndSet(this, expected, item);
+		}
+
+		boolean casNext(final Node<E> expected, final Node<E> next) {
+			return NEXT.compareAndSet(this, expected, next);
+		}
+
+		@SuppressWarnings("rawtypes")
+		private static final AtomicReferenceFieldUpdater<Node, Object> ITEM =
+				AtomicReferenceFieldUpdater.newUpdater(Node.class, Object.class, "item");
+
+		@SuppressWarnings("rawtypes")
+		private static final AtomicReferenceFieldUpdater<Node, Node> NEXT =
+				AtomicReferenceFieldUpdater.newUpdater(Node.class, Node.class, "next");
+	}
+
+	@SuppressWarnings("rawtypes")
+	private static final AtomicReferenceFieldUpdater<ConcurrentUniqueQueue, Node> HEAD =
+			AtomicReferenceFieldUpdater.newUpdater(ConcurrentUniqueQueue.class, Node.class, "head");
+
+	@SuppressWarnings("rawtypes")
+	private static final AtomicReferenceFieldUpdater<ConcurrentUniqueQueue, Node> TAIL =
+			AtomicReferenceFieldUpdater.newUpdater(ConcurrentUniqueQueue.class, Node.class, "tail");
+
+	/** Maximum capacity of the queue */
+	private final int capacity;
+
+	/** Removed nodes counted before the list is swept, on top of the number of queued elements */
+	private static final int SWEEP_THRESHOLD = 64;
+
+	/** Current number of elements, reserved before an element is linked */
+	private final AtomicInteger count = new AtomicInteger();
+
+	/** Nodes removed since the last sweep, approximate, they may also have been unlinked by a poll or an iterator */
+	private final AtomicInteger removedNodes = new AtomicInteger();
+
+	/** Index of the queued elements */
+	private final ConcurrentHashMap<E, Node<E>> index = new ConcurrentHashMap<>();
+
+	/**
+	 * Dummy node preceding the first element.
+	 * Invariant: head.item == null
+	 */
+	volatile Node<E> head;
+
+	/** Last node or a node close to it, lagging behind at most while an offer is in progress */
+	private volatile Node<E> tail;
+
+	public ConcurrentUniqueQueue(final int capacity) {
+		this.capacity = capacity;
+		head = tail = new Node<>(null);
+	}
+
+	public ConcurrentUniqueQueue() {
+		this(Integer.MAX_VALUE);
+	}
+
+	@Override
+	public boolean offer(final E e) {
+		if (e == null) {
+			throw new NullPointerException();
+		}
+		if (!reserve()) {
+			return false;
+		}
+		final Node<E> node = new Node<>(e);
+		if (index.putIfAbsent(e, node) != null) {
+			count.decrementAndGet();
+			return false;
+		}
+		for (;;) {
+			final Node<E> t = tail;
+			final Node<E> next = t.next;
+			if (next == null) {
+				if (t.casNext(null, node)) {
+					TAIL.compareAndSet(this, t, node);
+					return true;
+				}
+			} else {
+				TAIL.compareAndSet(this, t, next);
+			}
+		}
+	}
+
+	@Override
+	public boolean add(final E e) {
+		if (offer(e)) {
+			return true;
+		}
+		else {
+			throw new IllegalStateException("Queue full");
+		}
+	}
+
+	@Override
+	public E poll() {
+		for (;;) {
+			final Node<E> h = head;
+			final Node<E> first = h.next;
+			if (first == null) {
+				return null;
+			}
+			if (HEAD.compareAndSet(this, h, first)) {
+				final E x = first.item;
+				if (x != null && first.casItem(x, null)) {
+					release(x, first);
+					return x;
+				}
+				// removed by remove(Object), skip it
+			}
+		}
+	}
+
+	@Override
+	public E peek() {
+		for (;;) {
+			final Node<E> h = head;
+			final Node<E> first = h.next;
+			if (first == null) {
+				return null;
+			}
+			final E x = first.item;
+			if (x != null) {
+				return x;
+			}
+			// removed node, unlink it and retry
+			HEAD.compareAndSet(this, h, first);
+		}
+	}
+
+	@Override
+	public boolean remove(final Object o) {
+		if (o == null) {
+			return false;
+		}
+		final Node<E> node = index.get(o);
+		if (node == null) {
+			return false;
+		}
+		final E x = node.item;
+		if (x != null && node.casItem(x, null)) {
+			release(x, node);
+			removed();
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public boolean contains(final Object o) {
+		return o != null && index.containsKey(o);
+	}
+
+	@Override
+	public int size() {
+		return count.get();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return count.get() == 0;
+	}
+
+	public int remainingCapacity() {
+		return capacity - count.get();
+	}
+
+	/**
+	 * Weakly consistent iterator, it never throws {@link java.util.ConcurrentModificationException}.
+	 */
+	@Override
+	public Iterator<E> iterator() {
+		return new Itr();
+	}
+
+	/**
+	 * Reserves room for one element.
+	 * @return false if the queue is full
+	 */
+	private boolean reserve() {
+		for (;;) {
+			final int c = count.get();
+			if (c >= capacity) {
+				return false;
+			}
+			if (count.compareAndSet(c, c + 1)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Releases the element once it has been taken out of its node.
+	 */
+	private void release(final E x, final Node<E> node) {
+		index.remove(x, node);
+		count.decrementAndGet();
+	}
+
+	/**
+	 * Counts a node removed from the middle of the list, and sweeps the list once the removed nodes
+	 * outnumber the queued elements so the sweep is paid for by the removals.
+	 */
+	private void removed() {
+		final int removed = removedNodes.incrementAndGet();
+		if (removed > count.get() + SWEEP_THRESHOLD && removedNodes.compareAndSet(removed, 0)) {
+			for (Node<E> pred = head, p = pred.next; p != null; ) {
+				final Node<E> next = p.next;
+				if (p.item == null && next != null && pred.casNext(p, next)) {
+					p = next;
+				} else {
+					pred = p;
+					p = next;
+				}
+			}
+		}
+	}
+
+	private class Itr implements Iterator<E> {
+
+		/** Next node holding an item, null at the end */
+		private Node<E> nextNode;
+
+		/** Item of nextNode, kept in case it is taken before next() */
+		private E nextItem;
+
+		/** Node returned by the last call to next() */
+		private Node<E> lastRet;
+
+		Itr() {
+			advance(head);
+		}
+
+		/**
+		 * Moves to the first node holding an item after pred, unlinking the removed nodes on the way.
+		 */
+		private void advance(Node<E> pred) {
+			for (Node<E> p = pred.next; p != null; ) {
+				final E x = p.item;
+				if (x != null) {
+					nextNode = p;
+					nextItem = x;
+					return;
+				}
+				final Node<E> next = p.next;
+				if (next != null && pred.casNext(p, next)) {
+					p = next;
+				} else {
+					pred = p;
+					p = next;
+				}
+			}
+			nextNode = null;
+			nextItem = null;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return nextNode != null;
+		}
+
+		@Override
+		public E next() {
+			final Node<E> p = nextNode;
+			if (p == null) {
+				throw new NoSuchElementException();
+			}
+			final E x = nextItem;
+			lastRet = p;
+			advance(p);
+			return x;
+		}
+
+		@Override
+		public void remove() {
+			final Node<E> p = lastRet;
+			if (p == null) {
+				throw new IllegalStateException();
+			}
+			lastRet = null;
+			final E x = p.item;
+			if (x != null && p.casItem(x, null)) {
+				release(x, p);
+				removed();
+			}
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package com.hybhub.util.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Blocked counting Bloom filter kept in front of the index of a queue, it answers "definitely not queued"
+ * for most of the keys that are not, without probing the index.
+ * Each key maps to a single 64 bits block of sixteen 4 bits counters and increments three of them,
+ * so adding or removing a key is a single compare and set and a lookup reads a single word.
+ * A counter reaching 15 sticks there and is never decremented, so a removal never hides another key.
+ * Keys are added before they enter the index and removed once they have left it,
+ * a key found in the index is therefore always reported by the filter.
+ */
+final class CountingBloomFilter {
+
+	/** Upper bound of the number of blocks, 8 MB of counters */
+	private static final int MAX_BLOCKS = 1 << 20;
+
+	/** Counters incremented by each key in its block */
+	private static final int HASHES = 3;
+
+	/** Value of a saturated counter */
+	private static final long STUCK = 0xFL;
+
+	/** Blocks of sixteen 4 bits counters */
+	private final AtomicLongArray blocks;
+
+	/** Number of blocks minus one, a power of two minus one */
+	private final int mask;
+
+	/**
+	 * One block per expected key, about one false positive in a hundred lookups when the filter holds expectedSize keys.
+	 */
+	CountingBloomFilter(final int expectedSize) {
+		if (expectedSize <= 0) {
+			throw new IllegalArgumentException();
+		}
+		final int size = Math.min(expectedSize, MAX_BLOCKS);
+		final int n = size == 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+		this.blocks = new AtomicLongArray(n);
+		this.mask = n - 1;
+	}
+
+	/**
+	 * Counts the key in, before it is added to the index.
+	 */
+	void add(final Object key) {
+		final int h = BloomDedupWindow.mix(key.hashCode());
+		final int i = h & mask;
+		final int counters = BloomDedupWindow.mix(h);
+		for (;;) {
+			final long w = blocks.get(i);
+			final long u = increment(w, counters);
+			if (u == w || blocks.compareAndSet(i, w, u)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Counts the key out, once it has been removed from the index.
+	 */
+	void remove(final Object key) {
+		final int h = BloomDedupWindow.mix(key.hashCode());
+		final int i = h & mask;
+		final int counters = BloomDedupWindow.mix(h);
+		for (;;) {
+			final long w = blocks.get(i);
+			final long u = decrement(w, counters);
+			if (u == w || blocks.compareAndSet(i, w, u)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return false if the key is definitely not in the index, true if it may be
+	 */
+	boolean mightContain(final Object key) {
+		final int h = BloomDedupWindow.mix(key.hashCode());
+		final long w = blocks.get(h & mask);
+		int counters = BloomDedupWindow.mix(h);
+		for (int j = 0; j < HASHES; j++, counters >>>= 4) {
+			if ((w >>> ((counters & 15) << 2) & STUCK) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Resets every counter, called once the index has been cleared and while no key can be added or removed.
+	 */
+	void clear() {
+		for (int i = 0, n = blocks.length(); i < n; i++) {
+			blocks.lazySet(i, 0L);
+		}
+	}
+
+	private static long increment(long w, int counters) {
+		for (int j = 0; j < HASHES; j++, counters >>>= 4) {
+			final int shift = (counters & 15) << 2;
+			if ((w >>> shift & STUCK) != STUCK) {
+				w += 1L << shift;
+			}
+		}
+		return w;
+	}
+
+	private static long decrement(long w, int counters) {
+		for (int j = 0; j < HASHES; j++, counters >>>= 4) {
+			final int shift = (counters & 15) << 2;
+			if ((w >>> shift & STUCK) != STUCK) {
+				w -= 1L << shift;
+			}
+		}
+		return w;
+	}
+}
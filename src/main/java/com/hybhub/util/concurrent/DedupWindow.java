@@ -0,0 +1,64 @@
+package com.hybhub.util.concurrent;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the elements recently taken from a queue, so they are still rejected as duplicates for a while
+ * once they are no longer queued. The window is bounded by a number of elements and optionally by a time to live.
+ * Elements are recorded by the thread holding the take lock and checked by the thread holding the put lock,
+ * implementations support one writer and concurrent readers without any lock of their own.
+ * Pass it to {@link ConcurrentSetBlockingQueue.Builder#window(DedupWindow)}, a window
+ * must not be shared by several queues.
+ */
+public abstract class DedupWindow {
+
+	DedupWindow() {
+	}
+
+	/**
+	 * Exact window remembering the last maxSize taken elements.
+	 */
+	public static DedupWindow lastTaken(final int maxSize) {
+		return new ExactDedupWindow(maxSize, 0L);
+	}
+
+	/**
+	 * Exact window remembering the elements taken within the time to live, at most the last maxSize of them.
+	 */
+	public static DedupWindow exact(final int maxSize, final long ttl, final TimeUnit unit) {
+		if (ttl <= 0) {
+			throw new IllegalArgumentException();
+		}
+		return new ExactDedupWindow(maxSize, unit.toNanos(ttl));
+	}
+
+	/**
+	 * Approximate window backed by two rotating Bloom filters, using a fixed amount of memory whatever the elements.
+	 * Each element is remembered for at least maxSize and at most 2 * maxSize takes,
+	 * an element never taken is wrongly reported with the false positive probability fpp.
+	 */
+	public static DedupWindow approximate(final int maxSize, final double fpp) {
+		return new BloomDedupWindow(maxSize, fpp, 0L);
+	}
+
+	/**
+	 * Approximate window backed by two rotating Bloom filters, each element is remembered for at least ttl
+	 * and at most 2 * ttl, unless more than maxSize elements are taken in the meantime.
+	 */
+	public static DedupWindow approximate(final int maxSize, final double fpp, final long ttl, final TimeUnit unit) {
+		if (ttl <= 0) {
+			throw new IllegalArgumentException();
+		}
+		return new BloomDedupWindow(maxSize, fpp, unit.toNanos(ttl));
+	}
+
+	/**
+	 * Records an element taken from the queue. Called with the take lock held.
+	 */
+	abstract void record(Object e);
+
+	/**
+	 * @return true if the element has been taken recently. Called by any thread.
+	 */
+	abstract boolean contains(Object e);
+}
@@ -0,0 +1,13 @@
+package com.hybhub.util.concurrent;
+
+/**
+ * Strategy deciding whether two keys are the same, used in place of their equals and hashCode methods.
+ * Must be consistent: equivalent keys have the same hash.
+ * @param <T>
+ */
+public interface Equivalence<T> {
+
+	boolean equivalent(T a, T b);
+
+	int hash(T t);
+}
@@ -0,0 +1,29 @@
+package com.hybhub.util.concurrent;
+
+/**
+ * Index key delegating equals and hashCode to an {@link Equivalence}.
+ */
+final class EquivalentKey {
+
+	private final Object key;
+
+	private final Equivalence<Object> equivalence;
+
+	private final int hash;
+
+	EquivalentKey(final Object key, final Equivalence<Object> equivalence) {
+		this.key = key;
+		this.equivalence = equivalence;
+		this.hash = equivalence.hash(key);
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		return o instanceof EquivalentKey && equivalence.equivalent(key, ((EquivalentKey) o).key);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+}
@@ -0,0 +1,77 @@
+package com.hybhub.util.concurrent;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Exact {@link DedupWindow}, a {@link ConcurrentHashMap} from each element to the time it was taken
+ * answers the lookups, a ring buffer keeps the elements in the order they were taken.
+ * Elements are taken in time order, so the oldest element is always at the head of the ring
+ * and expiring elements is a matter of advancing the head.
+ */
+final class ExactDedupWindow extends DedupWindow {
+
+	private final ConcurrentHashMap<Object, Long> seen = new ConcurrentHashMap<>();
+
+	/** Time to live in nanoseconds, 0 if elements only leave the window when it is full */
+	private final long ttlNanos;
+
+	/** Taken elements, only accessed by the writer */
+	private final Object[] ring;
+
+	/** Time each element of the ring was taken */
+	private final long[] times;
+
+	/** Index of the oldest element */
+	private int head;
+
+	/** Number of elements in the ring */
+	private int size;
+
+	ExactDedupWindow(final int maxSize, final long ttlNanos) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException();
+		}
+		this.ttlNanos = ttlNanos;
+		this.ring = new Object[maxSize];
+		this.times = new long[maxSize];
+	}
+
+	@Override
+	void record(final Object e) {
+		final long now = System.nanoTime();
+		final Object[] ring = this.ring;
+		if (ttlNanos > 0) {
+			while (size > 0 && now - times[head] >= ttlNanos) {
+				evictOldest();
+			}
+		}
+		if (size == ring.length) {
+			evictOldest();
+		}
+		int tail = head + size;
+		if (tail >= ring.length) {
+			tail -= ring.length;
+		}
+		ring[tail] = e;
+		times[tail] = now;
+		size++;
+		seen.put(e, now);
+	}
+
+	@Override
+	boolean contains(final Object e) {
+		final Long time = seen.get(e);
+		return time != null && (ttlNanos == 0 || System.nanoTime() - time < ttlNanos);
+	}
+
+	private void evictOldest() {
+		final Object e = ring[head];
+		// a later record of the same element has replaced the time, keep it
+		seen.remove(e, times[head]);
+		ring[head] = null;
+		if (++head == ring.length) {
+			head = 0;
+		}
+		size--;
+	}
+}
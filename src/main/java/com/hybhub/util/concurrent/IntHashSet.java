@@ -0,0 +1,166 @@
+package com.hybhub.util.concurrent;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash set of primitive ints, with linear probing and backward shift deletion so
+ * removed keys never leave tombstones behind. Not thread safe, the owner guards it with its lock.
+ * 0 marks a free slot, the key 0 itself is tracked by a flag.
+ */
+final class IntHashSet {
+
+	/** Free slot marker */
+	private static final int FREE = 0;
+
+	private int[] keys;
+
+	private int mask;
+
+	private int size;
+
+	private boolean containsFree;
+
+	/** Size above which the table is doubled, half of its length until the table is at its largest */
+	private int maxFill;
+
+	/**
+	 * @param expected number of keys the table can hold without being resized
+	 */
+	IntHashSet(final int expected) {
+		final int n = LongHashSet.tableSizeFor(expected);
+		keys = new int[n];
+		mask = n - 1;
+		maxFill = LongHashSet.maxFill(n);
+	}
+
+	boolean contains(final int k) {
+		if (k == FREE) {
+			return containsFree;
+		}
+		final int[] keys = this.keys;
+		int current;
+		for (int pos = mix(k) & mask; (current = keys[pos]) != FREE; pos = (pos + 1) & mask) {
+			if (current == k) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if the key was not in the set
+	 */
+	boolean add(final int k) {
+		if (k == FREE) {
+			if (containsFree) {
+				return false;
+			}
+			checkNotFull();
+			containsFree = true;
+			size++;
+			return true;
+		}
+		final int[] keys = this.keys;
+		int pos = mix(k) & mask;
+		int current;
+		while ((current = keys[pos]) != FREE) {
+			if (current == k) {
+				return false;
+			}
+			pos = (pos + 1) & mask;
+		}
+		checkNotFull();
+		keys[pos] = k;
+		if (++size >= maxFill && keys.length < LongHashSet.MAX_TABLE) {
+			rehash(keys.length << 1);
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if the key was in the set
+	 */
+	boolean remove(final int k) {
+		if (k == FREE) {
+			if (!containsFree) {
+				return false;
+			}
+			containsFree = false;
+			size--;
+			return true;
+		}
+		final int[] keys = this.keys;
+		int current;
+		for (int pos = mix(k) & mask; (current = keys[pos]) != FREE; pos = (pos + 1) & mask) {
+			if (current == k) {
+				size--;
+				shiftKeys(pos);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	int size() {
+		return size;
+	}
+
+	private void checkNotFull() {
+		if (size == LongHashSet.MAX_SIZE) {
+			throw new IllegalStateException("Set full");
+		}
+	}
+
+	void clear() {
+		Arrays.fill(keys, FREE);
+		containsFree = false;
+		size = 0;
+	}
+
+	/**
+	 * Shifts the following keys back into the freed slot until a key already in place or a free slot is met.
+	 */
+	private void shiftKeys(int pos) {
+		final int[] keys = this.keys;
+		for (;;) {
+			final int last = pos;
+			pos = (pos + 1) & mask;
+			int current;
+			for (;;) {
+				if ((current = keys[pos]) == FREE) {
+					keys[last] = FREE;
+					return;
+				}
+				final int slot = mix(current) & mask;
+				if (last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos) {
+					break;
+				}
+				pos = (pos + 1) & mask;
+			}
+			keys[last] = current;
+		}
+	}
+
+	private void rehash(final int n) {
+		final int[] old = keys;
+		final int[] keys = new int[n];
+		final int mask = n - 1;
+		for (int k : old) {
+			if (k != FREE) {
+				int pos = mix(k) & mask;
+				while (keys[pos] != FREE) {
+					pos = (pos + 1) & mask;
+				}
+				keys[pos] = k;
+			}
+		}
+		this.keys = keys;
+		this.mask = mask;
+		this.maxFill = LongHashSet.maxFill(n);
+	}
+
+	private static int mix(final int k) {
+		final int h = k * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
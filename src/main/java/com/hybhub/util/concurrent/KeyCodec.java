@@ -0,0 +1,43 @@
+package com.hybhub.util.concurrent;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * Encodes keys of a fixed width into a buffer, used by {@link ConcurrentUniqueOffHeapBlockingQueue}
+ * to keep its keys outside of the heap. Two keys are considered equal when their encoded bytes are equal.
+ * A codec must not keep a reference to the buffers it is given, they may be mapped files later unmapped.
+ * @param <E>
+ */
+public interface KeyCodec<E> {
+
+	/**
+	 * @return the number of bytes of every encoded key
+	 */
+	int width();
+
+	/**
+	 * Writes the key at the absolute offset of the buffer, exactly {@link #width()} bytes.
+	 */
+	void encode(E key, ByteBuffer dst, int offset);
+
+	/**
+	 * Reads the key at the absolute offset of the buffer.
+	 */
+	E decode(ByteBuffer src, int offset);
+
+	static KeyCodec<Long> longs() {
+		return KeyCodecs.LONGS;
+	}
+
+	static KeyCodec<UUID> uuids() {
+		return KeyCodecs.UUIDS;
+	}
+
+	/**
+	 * Codec for byte arrays of the given length, arrays are compared by content.
+	 */
+	static KeyCodec<byte[]> bytes(final int width) {
+		return new KeyCodecs.Bytes(width);
+	}
+}
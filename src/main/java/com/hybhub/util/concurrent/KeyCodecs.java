@@ -0,0 +1,86 @@
+package com.hybhub.util.concurrent;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * Implementations of the {@link KeyCodec} factories.
+ */
+final class KeyCodecs {
+
+	static final KeyCodec<Long> LONGS = new KeyCodec<Long>() {
+
+		@Override
+		public int width() {
+			return Long.BYTES;
+		}
+
+		@Override
+		public void encode(final Long key, final ByteBuffer dst, final int offset) {
+			dst.putLong(offset, key);
+		}
+
+		@Override
+		public Long decode(final ByteBuffer src, final int offset) {
+			return src.getLong(offset);
+		}
+	};
+
+	static final KeyCodec<UUID> UUIDS = new KeyCodec<UUID>() {
+
+		@Override
+		public int width() {
+			return 2 * Long.BYTES;
+		}
+
+		@Override
+		public void encode(final UUID key, final ByteBuffer dst, final int offset) {
+			dst.putLong(offset, key.getMostSignificantBits());
+			dst.putLong(offset + Long.BYTES, key.getLeastSignificantBits());
+		}
+
+		@Override
+		public UUID decode(final ByteBuffer src, final int offset) {
+			return new UUID(src.getLong(offset), src.getLong(offset + Long.BYTES));
+		}
+	};
+
+	static final class Bytes implements KeyCodec<byte[]> {
+
+		private final int width;
+
+		Bytes(final int width) {
+			if (width <= 0) {
+				throw new IllegalArgumentException();
+			}
+			this.width = width;
+		}
+
+		@Override
+		public int width() {
+			return width;
+		}
+
+		@Override
+		public void encode(final byte[] key, final ByteBuffer dst, final int offset) {
+			if (key.length != width) {
+				throw new IllegalArgumentException("Expected " + width + " bytes, got " + key.length);
+			}
+			for (int i = 0; i < width; i++) {
+				dst.put(offset + i, key[i]);
+			}
+		}
+
+		@Override
+		public byte[] decode(final ByteBuffer src, final int offset) {
+			final byte[] key = new byte[width];
+			for (int i = 0; i < width; i++) {
+				key[i] = src.get(offset + i);
+			}
+			return key;
+		}
+	}
+
+	private KeyCodecs() {
+	}
+}
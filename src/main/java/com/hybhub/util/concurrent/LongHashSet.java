@@ -0,0 +1,187 @@
+package com.hybhub.util.concurrent;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash set of primitive longs, with linear probing and backward shift deletion so
+ * removed keys never leave tombstones behind. Not thread safe, the owner guards it with its lock.
+ * 0 marks a free slot, the key 0 itself is tracked by a flag.
+ */
+final class LongHashSet {
+
+	/** Free slot marker */
+	private static final long FREE = 0L;
+
+	/** Largest table length, once reached the table is no longer doubled but filled up */
+	static final int MAX_TABLE = 1 << 30;
+
+	/** Most keys a set can hold, one slot is always left free so probes terminate */
+	static final int MAX_SIZE = MAX_TABLE - 1;
+
+	private long[] keys;
+
+	private int mask;
+
+	private int size;
+
+	private boolean containsFree;
+
+	/** Size above which the table is doubled, half of its length until the table is at its largest */
+	private int maxFill;
+
+	/**
+	 * @param expected number of keys the table can hold without being resized
+	 */
+	LongHashSet(final int expected) {
+		final int n = tableSizeFor(expected);
+		keys = new long[n];
+		mask = n - 1;
+		maxFill = maxFill(n);
+	}
+
+	boolean contains(final long k) {
+		if (k == FREE) {
+			return containsFree;
+		}
+		final long[] keys = this.keys;
+		long current;
+		for (int pos = mix(k) & mask; (current = keys[pos]) != FREE; pos = (pos + 1) & mask) {
+			if (current == k) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if the key was not in the set
+	 */
+	boolean add(final long k) {
+		if (k == FREE) {
+			if (containsFree) {
+				return false;
+			}
+			checkNotFull();
+			containsFree = true;
+			size++;
+			return true;
+		}
+		final long[] keys = this.keys;
+		int pos = mix(k) & mask;
+		long current;
+		while ((current = keys[pos]) != FREE) {
+			if (current == k) {
+				return false;
+			}
+			pos = (pos + 1) & mask;
+		}
+		checkNotFull();
+		keys[pos] = k;
+		if (++size >= maxFill && keys.length < MAX_TABLE) {
+			rehash(keys.length << 1);
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if the key was in the set
+	 */
+	boolean remove(final long k) {
+		if (k == FREE) {
+			if (!containsFree) {
+				return false;
+			}
+			containsFree = false;
+			size--;
+			return true;
+		}
+		final long[] keys = this.keys;
+		long current;
+		for (int pos = mix(k) & mask; (current = keys[pos]) != FREE; pos = (pos + 1) & mask) {
+			if (current == k) {
+				size--;
+				shiftKeys(pos);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	int size() {
+		return size;
+	}
+
+	private void checkNotFull() {
+		if (size == MAX_SIZE) {
+			throw new IllegalStateException("Set full");
+		}
+	}
+
+	void clear() {
+		Arrays.fill(keys, FREE);
+		containsFree = false;
+		size = 0;
+	}
+
+	/**
+	 * Shifts the following keys back into the freed slot until a key already in place or a free slot is met.
+	 */
+	private void shiftKeys(int pos) {
+		final long[] keys = this.keys;
+		for (;;) {
+			final int last = pos;
+			pos = (pos + 1) & mask;
+			long current;
+			for (;;) {
+				if ((current = keys[pos]) == FREE) {
+					keys[last] = FREE;
+					return;
+				}
+				final int slot = mix(current) & mask;
+				if (last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos) {
+					break;
+				}
+				pos = (pos + 1) & mask;
+			}
+			keys[last] = current;
+		}
+	}
+
+	private void rehash(final int n) {
+		final long[] old = keys;
+		final long[] keys = new long[n];
+		final int mask = n - 1;
+		for (long k : old) {
+			if (k != FREE) {
+				int pos = mix(k) & mask;
+				while (keys[pos] != FREE) {
+					pos = (pos + 1) & mask;
+				}
+				keys[pos] = k;
+			}
+		}
+		this.keys = keys;
+		this.mask = mask;
+		this.maxFill = maxFill(n);
+	}
+
+	private static int mix(final long k) {
+		final long h = k * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	/**
+	 * @return the size above which a table of length n is doubled, or its fill limit at the largest length
+	 */
+	static int maxFill(final int n) {
+		return n == MAX_TABLE ? MAX_SIZE : n >>> 1;
+	}
+
+	/**
+	 * @return the power of two table length keeping expected keys under half load, at least 16
+	 */
+	static int tableSizeFor(final int expected) {
+		final long n = Math.max(16L, Long.highestOneBit(Math.max(expected, 1) * 2L) << 1);
+		return (int) Math.min(n, MAX_TABLE);
+	}
+}
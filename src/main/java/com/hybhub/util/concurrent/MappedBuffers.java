@@ -0,0 +1,33 @@
+package com.hybhub.util.concurrent;
+
+import java.lang.reflect.Method;
+import java.nio.MappedByteBuffer;
+
+/**
+ * Mapped buffer facilities depending on the Java version, this is the Java 8 version.
+ * Newer versions are packaged under META-INF/versions of the multi-release jar.
+ */
+final class MappedBuffers {
+
+	private MappedBuffers() {
+	}
+
+	/**
+	 * Releases the mapping of the buffer right away through its cleaner instead of waiting for it to be garbage
+	 * collected, the buffer must not be accessed afterwards.
+	 * @return false if the mapping couldn't be released, it then lasts until the buffer is garbage collected
+	 */
+	static boolean unmap(final MappedByteBuffer buffer) {
+		try {
+			final Method cleaner = buffer.getClass().getMethod("cleaner");
+			cleaner.setAccessible(true);
+			final Object c = cleaner.invoke(buffer);
+			if (c != null) {
+				c.getClass().getMethod("clean").invoke(c);
+			}
+			return true;
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return false;
+		}
+	}
+}
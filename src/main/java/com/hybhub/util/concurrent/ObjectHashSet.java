@@ -0,0 +1,114 @@
+package com.hybhub.util.concurrent;
+
+import java.util.Arrays;
+
+/**
+ * Fixed size open addressing hash set, with linear probing and backward shift deletion so
+ * removed elements never leave tombstones behind. The table is allocated once for the maximum
+ * number of elements and never resized. Not thread safe, the owner guards it with its lock.
+ * null marks a free slot.
+ * @param <E>
+ */
+final class ObjectHashSet<E> {
+
+	private final Object[] keys;
+
+	private final int mask;
+
+	private int size;
+
+	/**
+	 * @param maxSize maximum number of elements, the table is kept at most half full
+	 */
+	ObjectHashSet(final int maxSize) {
+		final int n = LongHashSet.tableSizeFor(maxSize);
+		if (n >>> 1 < maxSize) {
+			throw new IllegalArgumentException("Capacity too large " + maxSize);
+		}
+		keys = new Object[n];
+		mask = n - 1;
+	}
+
+	boolean contains(final Object k) {
+		final Object[] keys = this.keys;
+		Object current;
+		for (int pos = mix(k) & mask; (current = keys[pos]) != null; pos = (pos + 1) & mask) {
+			if (current.equals(k)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if the element was not in the set
+	 */
+	boolean add(final E k) {
+		final Object[] keys = this.keys;
+		int pos = mix(k) & mask;
+		Object current;
+		while ((current = keys[pos]) != null) {
+			if (current.equals(k)) {
+				return false;
+			}
+			pos = (pos + 1) & mask;
+		}
+		keys[pos] = k;
+		size++;
+		return true;
+	}
+
+	/**
+	 * @return true if the element was in the set
+	 */
+	boolean remove(final Object k) {
+		final Object[] keys = this.keys;
+		Object current;
+		for (int pos = mix(k) & mask; (current = keys[pos]) != null; pos = (pos + 1) & mask) {
+			if (current.equals(k)) {
+				size--;
+				shiftKeys(pos);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	int size() {
+		return size;
+	}
+
+	void clear() {
+		Arrays.fill(keys, null);
+		size = 0;
+	}
+
+	/**
+	 * Shifts the following keys back into the freed slot until a key already in place or a free slot is met.
+	 */
+	private void shiftKeys(int pos) {
+		final Object[] keys = this.keys;
+		for (;;) {
+			final int last = pos;
+			pos = (pos + 1) & mask;
+			Object current;
+			for (;;) {
+				if ((current = keys[pos]) == null) {
+					keys[last] = null;
+					return;
+				}
+				final int slot = mix(current) & mask;
+				if (last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos) {
+					break;
+				}
+				pos = (pos + 1) & mask;
+			}
+			keys[last] = current;
+		}
+	}
+
+	private static int mix(final Object k) {
+		final int h = k.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
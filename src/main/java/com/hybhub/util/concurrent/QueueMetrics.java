@@ -0,0 +1,342 @@
+package com.hybhub.util.concurrent;
+
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of a {@link ConcurrentSetBlockingQueue}, pass an instance to
+ * {@link ConcurrentSetBlockingQueue.Builder#metrics(QueueMetrics)} to turn them on.
+ * Counters are {@link LongAdder}s so producers and consumers updating them don't contend on a shared cache line,
+ * a queue created without metrics doesn't update anything.
+ * The time elements spend in the queue is recorded in a histogram of power of two buckets of nanoseconds.
+ * Read the counters with {@link #snapshot()} or register the metrics as an MXBean.
+ */
+public final class QueueMetrics implements QueueMetricsMXBean {
+
+	/** Bucket i counts the times in [2^(i-1), 2^i) nanoseconds, bucket 0 the times under a nanosecond */
+	static final int BUCKETS = 64;
+
+	@SuppressWarnings("rawtypes")
+	private static final AtomicReferenceFieldUpdater<QueueMetrics, AbstractConcurrentSet> QUEUE =
+			AtomicReferenceFieldUpdater.newUpdater(QueueMetrics.class, AbstractConcurrentSet.class, "queue");
+
+	final LongAdder accepted = new LongAdder();
+
+	final LongAdder duplicates = new LongAdder();
+
+	final LongAdder full = new LongAdder();
+
+	final LongAdder taken = new LongAdder();
+
+	final LongAdder timedOut = new LongAdder();
+
+	final LongAdder drained = new LongAdder();
+
+	final LongAdder putLockContentions = new LongAdder();
+
+	final LongAdder putLockWaitNanos = new LongAdder();
+
+	final LongAdder takeLockContentions = new LongAdder();
+
+	final LongAdder takeLockWaitNanos = new LongAdder();
+
+	final LongAdder timeInQueueNanos = new LongAdder();
+
+	private final LongAdder[] timeInQueue = new LongAdder[BUCKETS];
+
+	/** Queue counted, set once by its constructor */
+	private volatile AbstractConcurrentSet<?> queue;
+
+	public QueueMetrics() {
+		for (int i = 0; i < BUCKETS; i++) {
+			timeInQueue[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Attaches the metrics to the queue they count.
+	 * @throws IllegalStateException if they already count another queue
+	 */
+	void bind(final AbstractConcurrentSet<?> queue) {
+		if (!QUEUE.compareAndSet(this, null, queue)) {
+			throw new IllegalStateException("Metrics already bound to a queue");
+		}
+	}
+
+	/**
+	 * Counts an element taken after nanos in the queue.
+	 */
+	void taken(final long nanos) {
+		taken.increment();
+		timeInQueueNanos.add(nanos);
+		timeInQueue[bucket(nanos)].increment();
+	}
+
+	/**
+	 * Counts a contended acquisition of the put or take lock.
+	 */
+	void lockWaited(final boolean put, final long nanos) {
+		if (put) {
+			putLockContentions.increment();
+			putLockWaitNanos.add(nanos);
+		} else {
+			takeLockContentions.increment();
+			takeLockWaitNanos.add(nanos);
+		}
+	}
+
+	static int bucket(final long nanos) {
+		return nanos <= 0L ? 0 : BUCKETS - Long.numberOfLeadingZeros(nanos);
+	}
+
+	/**
+	 * Reads every counter, they are read one after the other so the snapshot is only consistent
+	 * while the queue is idle.
+	 */
+	public Snapshot snapshot() {
+		final long[] buckets = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets[i] = timeInQueue[i].sum();
+		}
+		final AbstractConcurrentSet<?> queue = this.queue;
+		return new Snapshot(accepted.sum(), duplicates.sum(), full.sum(), taken.sum(), timedOut.sum(), drained.sum(),
+				putLockContentions.sum(), putLockWaitNanos.sum(), takeLockContentions.sum(), takeLockWaitNanos.sum(),
+				queue == null ? 0 : queue.count.get(), queue == null ? 0 : queue.capacity, timeInQueueNanos.sum(),
+				buckets);
+	}
+
+	@Override
+	public long getAccepted() {
+		return accepted.sum();
+	}
+
+	@Override
+	public long getDuplicates() {
+		return duplicates.sum();
+	}
+
+	@Override
+	public long getRejectedFull() {
+		return full.sum();
+	}
+
+	@Override
+	public double getDuplicateRate() {
+		return snapshot().getDuplicateRate();
+	}
+
+	@Override
+	public long getTaken() {
+		return taken.sum();
+	}
+
+	@Override
+	public long getTimedOutPolls() {
+		return timedOut.sum();
+	}
+
+	@Override
+	public long getDrained() {
+		return drained.sum();
+	}
+
+	@Override
+	public long getPutLockContentions() {
+		return putLockContentions.sum();
+	}
+
+	@Override
+	public long getPutLockWaitNanos() {
+		return putLockWaitNanos.sum();
+	}
+
+	@Override
+	public long getTakeLockContentions() {
+		return takeLockContentions.sum();
+	}
+
+	@Override
+	public long getTakeLockWaitNanos() {
+		return takeLockWaitNanos.sum();
+	}
+
+	@Override
+	public int getDepth() {
+		final AbstractConcurrentSet<?> queue = this.queue;
+		return queue == null ? 0 : queue.count.get();
+	}
+
+	@Override
+	public int getCapacity() {
+		final AbstractConcurrentSet<?> queue = this.queue;
+		return queue == null ? 0 : queue.capacity;
+	}
+
+	@Override
+	public long getTimeInQueueMeanNanos() {
+		return snapshot().getTimeInQueueMeanNanos();
+	}
+
+	@Override
+	public long getTimeInQueueP50Nanos() {
+		return snapshot().getTimeInQueuePercentileNanos(0.5);
+	}
+
+	@Override
+	public long getTimeInQueueP99Nanos() {
+		return snapshot().getTimeInQueuePercentileNanos(0.99);
+	}
+
+	/**
+	 * Values of the metrics at the time of {@link QueueMetrics#snapshot()}.
+	 */
+	public static final class Snapshot {
+
+		private final long accepted;
+
+		private final long duplicates;
+
+		private final long rejectedFull;
+
+		private final long taken;
+
+		private final long timedOutPolls;
+
+		private final long drained;
+
+		private final long putLockContentions;
+
+		private final long putLockWaitNanos;
+
+		private final long takeLockContentions;
+
+		private final long takeLockWaitNanos;
+
+		private final int depth;
+
+		private final int capacity;
+
+		private final long timeInQueueNanos;
+
+		private final long[] timeInQueueBuckets;
+
+		Snapshot(final long accepted, final long duplicates, final long rejectedFull, final long taken,
+				final long timedOutPolls, final long drained, final long putLockContentions,
+				final long putLockWaitNanos, final long takeLockContentions, final long takeLockWaitNanos,
+				final int depth, final int capacity, final long timeInQueueNanos, final long[] timeInQueueBuckets) {
+			this.accepted = accepted;
+			this.duplicates = duplicates;
+			this.rejectedFull = rejectedFull;
+			this.taken = taken;
+			this.timedOutPolls = timedOutPolls;
+			this.drained = drained;
+			this.putLockContentions = putLockContentions;
+			this.putLockWaitNanos = putLockWaitNanos;
+			this.takeLockContentions = takeLockContentions;
+			this.takeLockWaitNanos = takeLockWaitNanos;
+			this.depth = depth;
+			this.capacity = capacity;
+			this.timeInQueueNanos = timeInQueueNanos;
+			this.timeInQueueBuckets = timeInQueueBuckets;
+		}
+
+		public long getAccepted() {
+			return accepted;
+		}
+
+		public long getDuplicates() {
+			return duplicates;
+		}
+
+		public long getRejectedFull() {
+			return rejectedFull;
+		}
+
+		/**
+		 * @return the duplicates over all the elements offered, 0 if none has been offered
+		 */
+		public double getDuplicateRate() {
+			final long offered = accepted + duplicates + rejectedFull;
+			return offered == 0L ? 0d : (double) duplicates / offered;
+		}
+
+		public long getTaken() {
+			return taken;
+		}
+
+		public long getTimedOutPolls() {
+			return timedOutPolls;
+		}
+
+		public long getDrained() {
+			return drained;
+		}
+
+		public long getPutLockContentions() {
+			return putLockContentions;
+		}
+
+		public long getPutLockWaitNanos() {
+			return putLockWaitNanos;
+		}
+
+		public long getTakeLockContentions() {
+			return takeLockContentions;
+		}
+
+		public long getTakeLockWaitNanos() {
+			return takeLockWaitNanos;
+		}
+
+		public int getDepth() {
+			return depth;
+		}
+
+		public int getCapacity() {
+			return capacity;
+		}
+
+		public long getTimeInQueueMeanNanos() {
+			final long n = sum(timeInQueueBuckets);
+			return n == 0L ? 0L : timeInQueueNanos / n;
+		}
+
+		/**
+		 * @param quantile between 0 and 1
+		 * @return the upper bound of the bucket holding the quantile of the times in queue, 0 if none was taken
+		 */
+		public long getTimeInQueuePercentileNanos(final double quantile) {
+			if (quantile < 0d || quantile > 1d) {
+				throw new IllegalArgumentException();
+			}
+			final long n = sum(timeInQueueBuckets);
+			if (n == 0L) {
+				return 0L;
+			}
+			final long rank = Math.max(1L, (long) Math.ceil(quantile * n));
+			long seen = 0L;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += timeInQueueBuckets[i];
+				if (seen >= rank) {
+					return i == 0 ? 0L : i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1;
+				}
+			}
+			return Long.MAX_VALUE;
+		}
+
+		/**
+		 * @return the counts of the histogram, bucket i holds the times in [2^(i-1), 2^i) nanoseconds
+		 */
+		public long[] getTimeInQueueBuckets() {
+			return timeInQueueBuckets.clone();
+		}
+
+		private static long sum(final long[] a) {
+			long n = 0L;
+			for (long x : a) {
+				n += x;
+			}
+			return n;
+		}
+	}
+}
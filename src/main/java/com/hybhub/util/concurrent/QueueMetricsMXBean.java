@@ -0,0 +1,56 @@
+package com.hybhub.util.concurrent;
+
+/**
+ * Management interface of {@link QueueMetrics}, register the metrics of a queue with
+ * {@link java.lang.management.ManagementFactory#getPlatformMBeanServer()} to expose them over JMX.
+ */
+public interface QueueMetricsMXBean {
+
+	/** @return the number of elements accepted by offers and puts */
+	long getAccepted();
+
+	/** @return the number of elements rejected because they were queued or recently taken */
+	long getDuplicates();
+
+	/** @return the number of elements rejected because the queue was full */
+	long getRejectedFull();
+
+	/** @return the duplicates over all the elements offered, 0 if none has been offered */
+	double getDuplicateRate();
+
+	/** @return the number of elements taken from the head of the queue, drained ones included */
+	long getTaken();
+
+	/** @return the number of timed polls returning no element */
+	long getTimedOutPolls();
+
+	/** @return the number of elements taken by drainTo */
+	long getDrained();
+
+	/** @return the number of times a put found the put lock held */
+	long getPutLockContentions();
+
+	/** @return the total time puts waited for the put lock */
+	long getPutLockWaitNanos();
+
+	/** @return the number of times a take found the take lock held */
+	long getTakeLockContentions();
+
+	/** @return the total time takes waited for the take lock */
+	long getTakeLockWaitNanos();
+
+	/** @return the current number of queued elements */
+	int getDepth();
+
+	/** @return the capacity of the queue */
+	int getCapacity();
+
+	/** @return the mean time the taken elements spent in the queue */
+	long getTimeInQueueMeanNanos();
+
+	/** @return the median time in queue, rounded up to a power of two */
+	long getTimeInQueueP50Nanos();
+
+	/** @return the 99th percentile of the time in queue, rounded up to a power of two */
+	long getTimeInQueueP99Nanos();
+}
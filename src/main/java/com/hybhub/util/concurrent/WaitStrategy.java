@@ -0,0 +1,178 @@
+package com.hybhub.util.concurrent;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * How {@link ConcurrentSetBlockingQueue} waits for an element when it is empty and for space when it is full.
+ */
+public abstract class WaitStrategy {
+
+	WaitStrategy() {
+	}
+
+	/**
+	 * Waits on the conditions of the put and take locks, a put making the queue non empty takes the take lock
+	 * to signal a waiting take and the other way around. The default.
+	 */
+	public static WaitStrategy blocking() {
+		return Blocking.INSTANCE;
+	}
+
+	/**
+	 * Parks waiting threads on lock free stacks, a put making the queue non empty unparks a waiting take
+	 * without taking the take lock and the other way around. Suited to a large number of waiting threads,
+	 * virtual threads in particular. Platform threads spin briefly before parking, virtual threads never spin.
+	 */
+	public static WaitStrategy parking() {
+		return Parking.INSTANCE;
+	}
+
+	/**
+	 * Spins, then yields, then parks like {@link #parking()}. The number of spins adapts to the queue,
+	 * it doubles when a spinning thread gets what it waited for and halves when it has to park,
+	 * trading CPU for a faster hand off to consumers pinned to their own cores.
+	 * Virtual threads never spin nor yield.
+	 */
+	public static WaitStrategy spinning() {
+		return spinning(SpinYieldPark.MAX_SPINS, SpinYieldPark.YIELDS);
+	}
+
+	/**
+	 * @param maxSpins upper bound of the adaptive number of spins
+	 * @param yields number of yields after spinning and before parking
+	 * @see #spinning()
+	 */
+	public static WaitStrategy spinning(final int maxSpins, final int yields) {
+		if (maxSpins < 0 || yields < 0) {
+			throw new IllegalArgumentException();
+		}
+		return new SpinYieldPark(maxSpins, yields);
+	}
+
+	/**
+	 * Spins until the wait is over, calling {@link Thread#onSpinWait()} on Java 9 and later, a waiting thread
+	 * never parks so it keeps its core busy. Only suited to threads with a core of their own.
+	 */
+	public static WaitStrategy busySpin() {
+		return BusySpin.INSTANCE;
+	}
+
+	/**
+	 * Strategy waiting on {@link Waiters} rather than on the lock conditions, every strategy but {@link #blocking()}
+	 */
+	abstract static class OnWaiters extends WaitStrategy {
+
+		/**
+		 * Waits until ready returns true, the thread is woken up or the time elapses. Called without holding any lock.
+		 * @return the remaining nanoseconds if timed
+		 */
+		abstract long await(Waiters waiters, BooleanSupplier ready, boolean timed, long nanos)
+				throws InterruptedException;
+	}
+
+	/**
+	 * Waits on the lock conditions, the queue awaits and signals them itself
+	 */
+	private static final class Blocking extends WaitStrategy {
+
+		static final Blocking INSTANCE = new Blocking();
+	}
+
+	private static final class Parking extends OnWaiters {
+
+		static final Parking INSTANCE = new Parking();
+
+		/** Checks made by a platform thread before parking */
+		private static final int SPINS = 64;
+
+		@Override
+		long await(final Waiters waiters, final BooleanSupplier ready, final boolean timed, final long nanos)
+				throws InterruptedException {
+			if (!Threads.isVirtual(Thread.currentThread())) {
+				for (int i = 0; i < SPINS; i++) {
+					if (ready.getAsBoolean()) {
+						return nanos;
+					}
+					Threads.onSpinWait();
+				}
+			}
+			return waiters.await(ready, timed, nanos);
+		}
+	}
+
+	private static final class SpinYieldPark extends OnWaiters {
+
+		static final int MAX_SPINS = 1 << 12;
+
+		static final int MIN_SPINS = 16;
+
+		static final int YIELDS = 8;
+
+		private final int maxSpins;
+
+		private final int yields;
+
+		SpinYieldPark(final int maxSpins, final int yields) {
+			this.maxSpins = maxSpins;
+			this.yields = yields;
+		}
+
+		@Override
+		long await(final Waiters waiters, final BooleanSupplier ready, final boolean timed, long nanos)
+				throws InterruptedException {
+			if (Threads.isVirtual(Thread.currentThread())) {
+				return waiters.await(ready, timed, nanos);
+			}
+			final long deadline = timed ? System.nanoTime() + nanos : 0L;
+			final int spins = waiters.spins == 0 ? Math.min(MIN_SPINS, maxSpins) : waiters.spins;
+			for (int i = 0; i < spins; i++) {
+				if (ready.getAsBoolean()) {
+					waiters.spins = Math.min(Math.max(spins << 1, MIN_SPINS), maxSpins);
+					return timed ? deadline - System.nanoTime() : nanos;
+				}
+				Threads.onSpinWait();
+			}
+			for (int i = 0; i < yields; i++) {
+				if (ready.getAsBoolean()) {
+					return timed ? deadline - System.nanoTime() : nanos;
+				}
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+				if (timed && deadline - System.nanoTime() <= 0L) {
+					return 0L;
+				}
+				Thread.yield();
+			}
+			waiters.spins = Math.max(spins >> 1, 1);
+			if (timed) {
+				nanos = deadline - System.nanoTime();
+				if (nanos <= 0L) {
+					return 0L;
+				}
+			}
+			return waiters.await(ready, timed, nanos);
+		}
+	}
+
+	private static final class BusySpin extends OnWaiters {
+
+		static final BusySpin INSTANCE = new BusySpin();
+
+		@Override
+		long await(final Waiters waiters, final BooleanSupplier ready, final boolean timed, final long nanos)
+				throws InterruptedException {
+			final long deadline = timed ? System.nanoTime() + nanos : 0L;
+			while (!ready.getAsBoolean()) {
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+				if (timed && deadline - System.nanoTime() <= 0L) {
+					return 0L;
+				}
+				Threads.onSpinWait();
+			}
+			return timed ? deadline - System.nanoTime() : nanos;
+		}
+	}
+}
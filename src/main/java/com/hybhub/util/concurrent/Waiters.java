@@ -0,0 +1,127 @@
+package com.hybhub.util.concurrent;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Lock free stack of parked threads, a thread pushes itself before checking one last time whether it can go on,
+ * a waker pops the most recent waiter and unparks it, so no lock is ever taken to wait or to wake up.
+ * Waiters leaving on their own, timed out or interrupted, are marked cancelled and unlinked.
+ * Inspired by the stack of {@link java.util.concurrent.SynchronousQueue}
+ */
+final class Waiters {
+
+	static final int WAITING = 0;
+
+	static final int WOKEN = 1;
+
+	static final int CANCELLED = 2;
+
+	static final class Waiter {
+
+		final Thread thread;
+
+		volatile Waiter next;
+
+		volatile int state;
+
+		Waiter(final Thread thread) {
+			this.thread = thread;
+		}
+
+		boolean casState(final int expected, final int state) {
+			return STATE.compareAndSet(this, expected, state);
+		}
+
+		private static final AtomicIntegerFieldUpdater<Waiter> STATE =
+				AtomicIntegerFieldUpdater.newUpdater(Waiter.class, "state");
+	}
+
+	private final AtomicReference<Waiter> head = new AtomicReference<>();
+
+	/** Spins made before parking by {@link WaitStrategy#spinning()}, updated without synchronization */
+	int spins;
+
+	boolean hasWaiters() {
+		return head.get() != null;
+	}
+
+	/**
+	 * Wakes up the most recent waiter, if any.
+	 */
+	void wakeOne() {
+		Waiter h;
+		while ((h = head.get()) != null) {
+			if (head.compareAndSet(h, h.next) && h.casState(WAITING, WOKEN)) {
+				LockSupport.unpark(h.thread);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Wakes up at most n waiters.
+	 */
+	void wake(final int n) {
+		for (int i = 0; i < n && hasWaiters(); i++) {
+			wakeOne();
+		}
+	}
+
+	/**
+	 * Parks the current thread until ready returns true, it is woken up or the time elapses.
+	 * @return the remaining nanoseconds if timed
+	 */
+	long await(final BooleanSupplier ready, final boolean timed, long nanos) throws InterruptedException {
+		final long deadline = timed ? System.nanoTime() + nanos : 0L;
+		final Waiter w = new Waiter(Thread.currentThread());
+		Waiter h;
+		do {
+			w.next = h = head.get();
+		} while (!head.compareAndSet(h, w));
+		boolean interrupted = false;
+		try {
+			while (w.state == WAITING && !ready.getAsBoolean()) {
+				if (Thread.interrupted()) {
+					interrupted = true;
+					throw new InterruptedException();
+				}
+				if (!timed) {
+					LockSupport.park(this);
+				} else if ((nanos = deadline - System.nanoTime()) > 0) {
+					LockSupport.parkNanos(this, nanos);
+				} else {
+					break;
+				}
+			}
+		} finally {
+			if (w.casState(WAITING, CANCELLED)) {
+				clean();
+			} else if (interrupted) {
+				// woken up but leaving, hand the wake up over
+				wakeOne();
+			}
+		}
+		return timed ? deadline - System.nanoTime() : nanos;
+	}
+
+	/**
+	 * Unlinks the cancelled waiters.
+	 */
+	private void clean() {
+		Waiter h;
+		while ((h = head.get()) != null && h.state == CANCELLED) {
+			head.compareAndSet(h, h.next);
+		}
+		for (Waiter p = head.get(); p != null; ) {
+			final Waiter n = p.next;
+			if (n != null && n.state == CANCELLED) {
+				p.next = n.next;
+			} else {
+				p = n;
+			}
+		}
+	}
+}
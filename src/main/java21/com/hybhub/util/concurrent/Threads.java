@@ -0,0 +1,24 @@
+package com.hybhub.util.concurrent;
+
+/**
+ * Thread facilities depending on the Java version, this is the Java 21 version.
+ */
+final class Threads {
+
+	private Threads() {
+	}
+
+	/**
+	 * @return true if the thread is a virtual thread
+	 */
+	static boolean isVirtual(final Thread thread) {
+		return thread.isVirtual();
+	}
+
+	/**
+	 * Hints that the caller is busy waiting.
+	 */
+	static void onSpinWait() {
+		Thread.onSpinWait();
+	}
+}
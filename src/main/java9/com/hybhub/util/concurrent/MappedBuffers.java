@@ -0,0 +1,45 @@
+package com.hybhub.util.concurrent;
+
+import java.lang.reflect.Field;
+import java.nio.MappedByteBuffer;
+
+import sun.misc.Unsafe;
+
+/**
+ * Mapped buffer facilities depending on the Java version, this is the Java 9 version.
+ */
+final class MappedBuffers {
+
+	/** Null if the jdk.unsupported module doesn't give access to it */
+	private static final Unsafe UNSAFE = unsafe();
+
+	private MappedBuffers() {
+	}
+
+	/**
+	 * Releases the mapping of the buffer right away through {@link Unsafe#invokeCleaner} instead of waiting for it
+	 * to be garbage collected, the buffer must not be accessed afterwards.
+	 * @return false if the mapping couldn't be released, it then lasts until the buffer is garbage collected
+	 */
+	static boolean unmap(final MappedByteBuffer buffer) {
+		if (UNSAFE == null) {
+			return false;
+		}
+		try {
+			UNSAFE.invokeCleaner(buffer);
+			return true;
+		} catch (RuntimeException e) {
+			return false;
+		}
+	}
+
+	private static Unsafe unsafe() {
+		try {
+			final Field field = Unsafe.class.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			return (Unsafe) field.get(null);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+}
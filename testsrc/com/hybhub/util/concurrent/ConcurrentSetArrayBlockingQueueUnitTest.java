@@ -0,0 +1,99 @@
+package com.hybhub.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class ConcurrentSetArrayBlockingQueueUnitTest {
+
+	public void testOfferDuplicatesAndCapacity() throws InterruptedException {
+		//Arrange
+		final BlockingQueue<String> queue = new ConcurrentSetArrayBlockingQueue<>(2);
+
+		//Act
+		final boolean first = queue.offer("a");
+		final boolean duplicate = queue.offer("a");
+		final boolean second = queue.offer("b");
+		final boolean full = queue.offer("c");
+		final boolean timedOut = queue.offer("c", 10, TimeUnit.MILLISECONDS);
+
+		//Test
+		Assert.assertTrue(first);
+		Assert.assertFalse(duplicate);
+		Assert.assertTrue(second);
+		Assert.assertFalse(full);
+		Assert.assertFalse(timedOut);
+		Assert.assertEquals(queue.remainingCapacity(), 0);
+		Assert.assertEquals(queue.take(), "a");
+		Assert.assertTrue(queue.offer("a"));
+		Assert.assertEquals(queue.poll(), "b");
+		Assert.assertEquals(queue.poll(), "a");
+		Assert.assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+	}
+
+	public void testWrapAroundRemoveAndDrain() {
+		//Arrange
+		final BlockingQueue<Integer> queue = new ConcurrentSetArrayBlockingQueue<>(5);
+		for (int i = 0; i < 5; i++) {
+			queue.offer(i);
+		}
+		queue.poll();
+		queue.poll();
+		queue.offer(5);
+		queue.offer(6);
+
+		//Act
+		final boolean removed = queue.remove(4);
+		final boolean reAdded = queue.offer(4);
+		final Iterator<Integer> iterator = queue.iterator();
+		iterator.next();
+		iterator.remove();
+		final Object[] remaining = queue.toArray();
+		final List<Integer> drained = new ArrayList<>();
+		final int drainedCount = queue.drainTo(drained, 2);
+
+		//Test
+		Assert.assertTrue(removed);
+		Assert.assertTrue(reAdded);
+		Assert.assertEquals(remaining, new Object[]{3, 5, 6, 4});
+		Assert.assertEquals(drainedCount, 2);
+		Assert.assertEquals(drained, Arrays.asList(3, 5));
+		Assert.assertFalse(queue.contains(3));
+		Assert.assertTrue(queue.contains(4));
+		Assert.assertEquals(queue.peek(), Integer.valueOf(6));
+		queue.clear();
+		Assert.assertTrue(queue.isEmpty());
+		Assert.assertNull(queue.peek());
+	}
+
+	public void testPutWaitsForTake() throws Exception {
+		//Arrange
+		final BlockingQueue<Integer> queue = new ConcurrentSetArrayBlockingQueue<>(1);
+		queue.put(1);
+		final Thread producer = new Thread(() -> {
+			try {
+				queue.put(2);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+
+		//Act
+		producer.start();
+		Thread.sleep(50);
+		final Integer first = queue.take();
+		producer.join(1_000);
+
+		//Test
+		Assert.assertEquals(first, Integer.valueOf(1));
+		Assert.assertFalse(producer.isAlive());
+		Assert.assertEquals(queue.take(), Integer.valueOf(2));
+	}
+}
@@ -1,8 +1,22 @@
 package com.hybhub.util.concurrent;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -57,4 +71,844 @@ public class ConcurrentSetBlockingQueueUnitTest {
 		Assert.assertEquals(capacityEleven, 5);
 	}
 
+	public void testTakeWhilePutIsBlocked() throws Exception {
+		//Arrange
+		final BlockingQueue<Integer> queue = new ConcurrentSetBlockingQueue<>(1);
+		queue.put(1);
+		final Thread producer = new Thread(() -> {
+			try {
+				queue.put(2);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+
+		//Act
+		producer.start();
+		Thread.sleep(100);
+		final Integer taken = queue.poll(1, TimeUnit.SECONDS);
+		producer.join(1_000);
+		final Integer second = queue.poll(1, TimeUnit.SECONDS);
+
+		//Test
+		Assert.assertEquals(taken, Integer.valueOf(1));
+		Assert.assertFalse(producer.isAlive());
+		Assert.assertEquals(second, Integer.valueOf(2));
+	}
+
+	public void testRemoveAndClear() throws InterruptedException {
+		//Arrange
+		final BlockingQueue<Integer> queue = new ConcurrentSetBlockingQueue<>(3);
+
+		//Act
+		queue.put(1);
+		queue.put(2);
+		queue.put(3);
+		final boolean removedLast = queue.remove(3);
+		final boolean reAdded = queue.offer(3);
+		final boolean removedMiddle = queue.remove(2);
+		final Object[] remaining = queue.toArray();
+		queue.clear();
+		final int sizeAfterClear = queue.size();
+		final int capacityAfterClear = queue.remainingCapacity();
+		final boolean addedAfterClear = queue.offer(1);
+
+		//Test
+		Assert.assertTrue(removedLast);
+		Assert.assertTrue(reAdded);
+		Assert.assertTrue(removedMiddle);
+		Assert.assertEquals(remaining, new Object[]{1, 3});
+		Assert.assertEquals(sizeAfterClear, 0);
+		Assert.assertEquals(capacityAfterClear, 3);
+		Assert.assertTrue(addedAfterClear);
+		Assert.assertEquals(queue.poll(), Integer.valueOf(1));
+	}
+
+	public void testDrainToMaxElements() {
+		//Arrange
+		final BlockingQueue<Integer> queue = new ConcurrentSetBlockingQueue<>(5);
+		IntStream.rangeClosed(1, 5).forEach(queue::offer);
+		final List<Integer> drained = new ArrayList<>();
+
+		//Act
+		final int firstDrain = queue.drainTo(drained, 2);
+		final boolean removedFirst = queue.remove(3);
+		final boolean removedLast = queue.remove(5);
+		final boolean reAdded = queue.offer(1);
+		final int secondDrain = queue.drainTo(drained);
+
+		//Test
+		Assert.assertEquals(firstDrain, 2);
+		Assert.assertTrue(removedFirst);
+		Assert.assertTrue(removedLast);
+		Assert.assertTrue(reAdded);
+		Assert.assertEquals(secondDrain, 2);
+		Assert.assertEquals(drained, Arrays.asList(1, 2, 4, 1));
+		Assert.assertTrue(queue.isEmpty());
+		Assert.assertEquals(queue.remainingCapacity(), 5);
+	}
+
+	public void testOfferAll() throws InterruptedException {
+		//Arrange
+		final ConcurrentSetBlockingQueue<Integer> queue = new ConcurrentSetBlockingQueue<>(4);
+		queue.put(1);
+
+		//Act
+		final BatchOfferResult<Integer> result = queue.offerAll(Arrays.asList(1, 2, 3, 2, 4, 5));
+		final BatchOfferResult<Integer> timedResult = queue.offerAll(Arrays.asList(6, 3), 10, TimeUnit.MILLISECONDS);
+
+		//Test
+		Assert.assertEquals(result.getAccepted(), 3);
+		Assert.assertEquals(result.getRejected(), Arrays.asList(1, 2, 5));
+		Assert.assertFalse(result.isAllAccepted());
+		Assert.assertEquals(timedResult.getAccepted(), 0);
+		Assert.assertEquals(timedResult.getRejected(), Arrays.asList(6, 3));
+		Assert.assertEquals(Arrays.asList(queue.toArray()), Arrays.asList(1, 2, 3, 4));
+	}
+
+	public void testAddAllSkipsDuplicatesAndFailsWhenFull() {
+		//Arrange
+		final ConcurrentSetBlockingQueue<Integer> queue = new ConcurrentSetBlockingQueue<>(3);
+		queue.offer(1);
+
+		//Act
+		final boolean duplicatesOnly = queue.addAll(Arrays.asList(1, 1));
+		final boolean added = queue.addAll(Arrays.asList(1, 2, 2, 3));
+		final boolean fullOfDuplicates = queue.addAll(Arrays.asList(3, 1));
+		IllegalStateException full = null;
+		try {
+			queue.addAll(Arrays.asList(2, 4));
+		} catch (IllegalStateException e) {
+			full = e;
+		}
+
+		//Test
+		Assert.assertFalse(duplicatesOnly);
+		Assert.assertTrue(added);
+		Assert.assertFalse(fullOfDuplicates);
+		Assert.assertNotNull(full);
+		Assert.assertEquals(Arrays.asList(queue.toArray()), Arrays.asList(1, 2, 3));
+	}
+
+	public void testPutFindingItsElementQueuedPassesTheSignalOn() throws Exception {
+		//Arrange
+		final ConcurrentSetBlockingQueue<String> queue = new ConcurrentSetBlockingQueue<>(2);
+		queue.put("a");
+		queue.put("z");
+		final List<Thread> puts = new ArrayList<>();
+		for (String e : Arrays.asList("b", "b", "c")) {
+			final Thread put = new Thread(() -> {
+				try {
+					queue.put(e);
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			put.start();
+			awaitWaiting(put);
+			puts.add(put);
+		}
+
+		//Act
+		// only the first put is signalled, it passes the signal to the second one which finds "b" queued
+		queue.putLock.lock();
+		try {
+			queue.take();
+			queue.take();
+		} finally {
+			queue.putLock.unlock();
+		}
+		for (Thread put : puts) {
+			put.join(1_000);
+		}
+
+		//Test
+		for (Thread put : puts) {
+			Assert.assertFalse(put.isAlive());
+		}
+		Assert.assertEquals(Arrays.asList(queue.toArray()), Arrays.asList("b", "c"));
+	}
+
+	private static void awaitWaiting(final Thread thread) throws InterruptedException {
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (thread.getState() != Thread.State.WAITING && System.nanoTime() < deadline) {
+			Thread.sleep(1);
+		}
+	}
+
+	public void testPutAllWaitsForConsumers() throws Exception {
+		//Arrange
+		final ConcurrentSetBlockingQueue<Integer> queue = new ConcurrentSetBlockingQueue<>(3);
+		final List<Integer> batch = IntStream.range(0, 100).boxed().collect(Collectors.toList());
+		final List<Integer> taken = new ArrayList<>();
+		final Thread consumer = new Thread(() -> {
+			try {
+				while (taken.size() < batch.size()) {
+					taken.add(queue.take());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+
+		//Act
+		consumer.start();
+		final BatchOfferResult<Integer> result = queue.putAll(batch);
+		consumer.join(5_000);
+
+		//Test
+		Assert.assertEquals(result.getAccepted(), 100);
+		Assert.assertTrue(result.isAllAccepted());
+		Assert.assertEquals(taken, batch);
+		Assert.assertTrue(queue.isEmpty());
+	}
+
+	public void testWeaklyConsistentIterator() {
+		//Arrange
+		final BlockingQueue<Integer> queue = new ConcurrentSetBlockingQueue<>();
+		IntStream.range(0, 5).forEach(queue::offer);
+
+		//Act
+		final Iterator<Integer> iterator = queue.iterator();
+		final Integer first = iterator.next();
+		queue.poll();
+		queue.poll();
+		queue.offer(5);
+		final List<Integer> iterated = new ArrayList<>();
+		iterator.forEachRemaining(iterated::add);
+		final Iterator<Integer> removing = queue.iterator();
+		while (removing.hasNext()) {
+			if (removing.next() % 2 == 0) {
+				removing.remove();
+			}
+		}
+
+		//Test
+		Assert.assertEquals(first, Integer.valueOf(0));
+		Assert.assertEquals(iterated, Arrays.asList(1, 2, 3, 4, 5));
+		Assert.assertEquals(Arrays.asList(queue.toArray()), Arrays.asList(3, 5));
+		Assert.assertEquals(queue.size(), 2);
+		Assert.assertTrue(queue.offer(4));
+	}
+
+	public void testSpliterator() {
+		//Arrange
+		final BlockingQueue<Integer> queue = new ConcurrentSetBlockingQueue<>();
+		IntStream.range(0, 10_000).forEach(queue::offer);
+
+		//Act
+		final Spliterator<Integer> spliterator = queue.spliterator();
+		final long sum = queue.parallelStream().mapToLong(Integer::longValue).sum();
+		final List<Integer> sequential = queue.stream().collect(Collectors.toList());
+
+		//Test
+		Assert.assertTrue(spliterator.hasCharacteristics(Spliterator.CONCURRENT));
+		Assert.assertTrue(spliterator.hasCharacteristics(Spliterator.NONNULL));
+		Assert.assertTrue(spliterator.hasCharacteristics(Spliterator.DISTINCT));
+		Assert.assertTrue(spliterator.hasCharacteristics(Spliterator.ORDERED));
+		Assert.assertEquals(sum, 10_000L * 9_999L / 2);
+		Assert.assertEquals(sequential, IntStream.range(0, 10_000).boxed().collect(Collectors.toList()));
+	}
+
+	public void testContainsDoesNotWaitForLocks() throws Exception {
+		//Arrange
+		final ConcurrentSetBlockingQueue<Integer> queue = new ConcurrentSetBlockingQueue<>();
+		IntStream.range(0, 10).forEach(queue::offer);
+		final CountDownLatch locked = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Thread holder = new Thread(() -> {
+			queue.fullyLock();
+			try {
+				locked.countDown();
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				queue.fullyUnlock();
+			}
+		});
+		holder.start();
+		locked.await();
+
+		//Act
+		final ExecutorService exec = Executors.newSingleThreadExecutor();
+		final Future<Boolean> contains = exec.submit(() -> queue.contains(3) && !queue.contains(10) && !queue.contains(null));
+		final Future<Boolean> containsAll = exec.submit(() -> queue.containsAll(Arrays.asList(1, 5, 9))
+				&& !queue.containsAll(Arrays.asList(1, 10)));
+
+		//Test
+		try {
+			Assert.assertTrue(contains.get(1, TimeUnit.SECONDS));
+			Assert.assertTrue(containsAll.get(1, TimeUnit.SECONDS));
+		} finally {
+			release.countDown();
+			holder.join();
+			exec.shutdown();
+		}
+	}
+
+	public void testKeyExtractorDedupsByKey() throws InterruptedException {
+		//Arrange
+		final BlockingQueue<String> queue = ConcurrentSetBlockingQueue.builder(10)
+				.keyExtractor((String event) -> event.split(":")[0]).build();
+
+		//Act
+		final boolean first = queue.offer("1:created");
+		final boolean sameKey = queue.offer("1:updated");
+		final boolean otherKey = queue.offer("2:created");
+		final boolean contains = queue.contains("1:deleted");
+		final boolean removed = queue.remove("2:whatever");
+
+		//Test
+		Assert.assertTrue(first);
+		Assert.assertFalse(sameKey);
+		Assert.assertTrue(otherKey);
+		Assert.assertTrue(contains);
+		Assert.assertTrue(removed);
+		Assert.assertEquals(queue.take(), "1:created");
+		Assert.assertTrue(queue.offer("1:updated"));
+		Assert.assertEquals(queue.poll(), "1:updated");
+	}
+
+	public void testKeyExtractorRunsOncePerQueuedElement() throws InterruptedException {
+		//Arrange
+		final AtomicInteger extracted = new AtomicInteger();
+		final ConcurrentSetBlockingQueue<String> queue = ConcurrentSetBlockingQueue.builder(10)
+				.keyExtractor((String event) -> {
+					extracted.incrementAndGet();
+					return event.split(":")[0];
+				}).build();
+		IntStream.range(0, 4).forEach(i -> queue.offer(i + ":created"));
+
+		//Act
+		final String taken = queue.take();
+		final Iterator<String> it = queue.iterator();
+		it.next();
+		it.remove();
+		final List<String> drained = new ArrayList<>();
+		queue.drainTo(drained);
+
+		//Test
+		Assert.assertEquals(taken, "0:created");
+		Assert.assertEquals(drained, Arrays.asList("2:created", "3:created"));
+		Assert.assertEquals(extracted.get(), 4);
+	}
+
+	public void testEquivalenceComparesTheKeys() {
+		//Arrange
+		final Equivalence<String> ignoreCase = new Equivalence<String>() {
+
+			@Override
+			public boolean equivalent(final String a, final String b) {
+				return a.equalsIgnoreCase(b);
+			}
+
+			@Override
+			public int hash(final String t) {
+				return t.toLowerCase().hashCode();
+			}
+		};
+		final BlockingQueue<String[]> queue = ConcurrentSetBlockingQueue.builder(10)
+				.keyExtractor((String[] event) -> event[0]).equivalence(ignoreCase).window(DedupWindow.lastTaken(10)).build();
+
+		//Act
+		final boolean first = queue.offer(new String[] {"Key", "a"});
+		final boolean sameKey = queue.offer(new String[] {"KEY", "b"});
+		final String[] taken = queue.poll();
+		final boolean recentlyTaken = queue.offer(new String[] {"key", "c"});
+
+		//Test
+		Assert.assertTrue(first);
+		Assert.assertFalse(sameKey);
+		Assert.assertEquals(taken[1], "a");
+		Assert.assertFalse(recentlyTaken);
+		Assert.assertTrue(queue.isEmpty());
+	}
+
+	public void testBuilderCombinesFeatures() throws InterruptedException {
+		//Arrange
+		final QueueMetrics metrics = new QueueMetrics();
+		final ConcurrentSetBlockingQueue<String> queue = ConcurrentSetBlockingQueue.builder(2)
+				.keyExtractor((String event) -> event.split(":")[0]).window(DedupWindow.lastTaken(10)).prefilter()
+				.waitStrategy(WaitStrategy.parking()).metrics(metrics).build();
+
+		//Act
+		final boolean first = queue.offer("1:created");
+		final boolean sameKey = queue.offer("1:updated");
+		final boolean otherKey = queue.offer("2:created");
+		final boolean full = queue.offer("3:created");
+		final String taken = queue.take();
+		final boolean recentlyTaken = queue.offer("1:deleted");
+		final boolean containsMissing = queue.contains("4:created");
+
+		//Test
+		Assert.assertTrue(first);
+		Assert.assertFalse(sameKey);
+		Assert.assertTrue(otherKey);
+		Assert.assertFalse(full);
+		Assert.assertEquals(taken, "1:created");
+		Assert.assertFalse(recentlyTaken);
+		Assert.assertFalse(containsMissing);
+		Assert.assertSame(queue.metrics(), metrics);
+		Assert.assertEquals(metrics.getTaken(), 1);
+		Assert.assertEquals(metrics.getDuplicates(), 2);
+	}
+
+	public void testParkingWaitStrategyHandsOffToManyConsumers() throws InterruptedException {
+		//Arrange
+		final BlockingQueue<Integer> queue = ConcurrentSetBlockingQueue.builder(8).waitStrategy(WaitStrategy.parking()).build();
+		final int consumers = 200;
+		final int elements = 20_000;
+		final CountDownLatch consumed = new CountDownLatch(elements);
+		final ExecutorService exec = Executors.newFixedThreadPool(consumers);
+		for (int i = 0; i < consumers; i++) {
+			exec.execute(() -> {
+				try {
+					for (;;) {
+						queue.take();
+						consumed.countDown();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+		}
+
+		//Act
+		final Thread producer = new Thread(() -> {
+			try {
+				for (int i = 0; i < elements; i++) {
+					queue.put(i);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		producer.start();
+		final boolean allConsumed = consumed.await(10, TimeUnit.SECONDS);
+		exec.shutdownNow();
+
+		//Test
+		Assert.assertTrue(allConsumed);
+		Assert.assertTrue(exec.awaitTermination(1, TimeUnit.SECONDS));
+		Assert.assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+		Assert.assertTrue(queue.offer(1, 10, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testSpinningWaitStrategyHandsOffBothWays() throws InterruptedException {
+		//Arrange
+		final BlockingQueue<Integer> queue = ConcurrentSetBlockingQueue.builder(4).waitStrategy(WaitStrategy.spinning()).build();
+		final int elements = 50_000;
+		final AtomicLong sum = new AtomicLong();
+		final Thread consumer = new Thread(() -> {
+			try {
+				for (int i = 0; i < elements; i++) {
+					sum.addAndGet(queue.take());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		consumer.start();
+
+		//Act
+		for (int i = 0; i < elements; i++) {
+			queue.put(i);
+		}
+		consumer.join(10_000);
+
+		//Test
+		Assert.assertFalse(consumer.isAlive());
+		Assert.assertEquals(sum.get(), (long) elements * (elements - 1) / 2);
+		Assert.assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testBusySpinWaitStrategy() throws InterruptedException {
+		//Arrange
+		final BlockingQueue<Integer> queue = ConcurrentSetBlockingQueue.builder(1).waitStrategy(WaitStrategy.busySpin()).build();
+		final Thread producer = new Thread(() -> {
+			try {
+				queue.put(1);
+				queue.put(2);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+
+		//Act
+		final long start = System.nanoTime();
+		final Integer none = queue.poll(20, TimeUnit.MILLISECONDS);
+		final long waited = System.nanoTime() - start;
+		producer.start();
+		final Integer first = queue.take();
+		final Integer second = queue.poll(5, TimeUnit.SECONDS);
+		producer.join(1_000);
+
+		//Test
+		Assert.assertNull(none);
+		Assert.assertTrue(waited >= TimeUnit.MILLISECONDS.toNanos(20));
+		Assert.assertEquals(first, Integer.valueOf(1));
+		Assert.assertEquals(second, Integer.valueOf(2));
+		Assert.assertTrue(queue.offer(3));
+		Assert.assertFalse(queue.offer(4, 10, TimeUnit.MILLISECONDS));
+		final Thread main = Thread.currentThread();
+		final Thread interrupter = new Thread(() -> {
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(20));
+			main.interrupt();
+		});
+		interrupter.start();
+		try {
+			queue.put(5);
+			Assert.fail();
+		} catch (InterruptedException e) {
+			Assert.assertFalse(Thread.currentThread().isInterrupted());
+		}
+	}
+
+	@Test
+	public void testBatchTakeWaitsForTheBatchToFill() throws InterruptedException {
+		for (WaitStrategy waitStrategy : Arrays.asList(WaitStrategy.blocking(), WaitStrategy.parking())) {
+			//Arrange
+			final ConcurrentSetBlockingQueue<Integer> queue = ConcurrentSetBlockingQueue.builder(100).waitStrategy(waitStrategy).build();
+			queue.offer(1);
+			final Thread producer = new Thread(() -> {
+				for (int i = 2; i <= 5; i++) {
+					LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+					queue.offer(i);
+				}
+			});
+			producer.start();
+
+			//Act
+			final long start = System.nanoTime();
+			final List<Integer> batch = queue.take(5, 10, 10, TimeUnit.SECONDS);
+			final long waited = System.nanoTime() - start;
+			producer.join(1_000);
+
+			//Test
+			Assert.assertEquals(batch, Arrays.asList(1, 2, 3, 4, 5));
+			Assert.assertTrue(waited < TimeUnit.SECONDS.toNanos(5));
+			Assert.assertTrue(queue.isEmpty());
+			Assert.assertTrue(queue.offer(1));
+		}
+	}
+
+	@Test
+	public void testBatchTakeDoesNotSwallowTheSignalOfATake() throws Exception {
+		for (WaitStrategy waitStrategy : Arrays.asList(WaitStrategy.blocking(), WaitStrategy.parking())) {
+			//Arrange
+			final ConcurrentSetBlockingQueue<Integer> queue = ConcurrentSetBlockingQueue.builder(100).waitStrategy(waitStrategy).build();
+			final ExecutorService executor = Executors.newFixedThreadPool(2);
+			final Future<List<Integer>> batch = executor.submit(() -> queue.take(2, 10, 10, TimeUnit.SECONDS));
+			final Future<Integer> take = executor.submit(() -> queue.take());
+			Thread.sleep(50);
+
+			//Act
+			queue.put(1);
+			final Integer taken = take.get(1, TimeUnit.SECONDS);
+			queue.put(2);
+			queue.put(3);
+			final List<Integer> batched = batch.get(1, TimeUnit.SECONDS);
+			executor.shutdown();
+
+			//Test
+			Assert.assertEquals(taken, Integer.valueOf(1));
+			Assert.assertEquals(batched, Arrays.asList(2, 3));
+		}
+	}
+
+	@Test
+	public void testBatchTakeReturnsAPartialBatchOnTimeout() throws InterruptedException {
+		//Arrange
+		final ConcurrentSetBlockingQueue<Integer> queue = new ConcurrentSetBlockingQueue<>(100);
+		queue.offer(1);
+		queue.offer(2);
+
+		//Act
+		final long start = System.nanoTime();
+		final List<Integer> batch = queue.take(5, 10, 20, TimeUnit.MILLISECONDS);
+		final long waited = System.nanoTime() - start;
+
+		//Test
+		Assert.assertEquals(batch, Arrays.asList(1, 2));
+		Assert.assertTrue(waited >= TimeUnit.MILLISECONDS.toNanos(20));
+	}
+
+	@Test
+	public void testBatchTakeIsBoundedByMax() throws InterruptedException {
+		//Arrange
+		final ConcurrentSetBlockingQueue<Integer> queue = new ConcurrentSetBlockingQueue<>(10);
+		IntStream.range(0, 10).forEach(queue::offer);
+		final Thread producer = new Thread(() -> {
+			try {
+				queue.put(10);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		producer.start();
+
+		//Act
+		final List<Integer> first = queue.take(1, 4, 1, TimeUnit.SECONDS);
+		producer.join(1_000);
+		final List<Integer> second = queue.take(1, 100, 0, TimeUnit.SECONDS);
+
+		//Test
+		Assert.assertEquals(first, Arrays.asList(0, 1, 2, 3));
+		Assert.assertFalse(producer.isAlive());
+		Assert.assertEquals(second, Arrays.asList(4, 5, 6, 7, 8, 9, 10));
+	}
+
+	@Test
+	public void testTimedDrainTo() throws InterruptedException {
+		//Arrange
+		final ConcurrentSetBlockingQueue<Integer> queue = new ConcurrentSetBlockingQueue<>(10);
+		final List<Integer> drained = new ArrayList<>();
+		final Thread producer = new Thread(() -> {
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(20));
+			queue.offerAll(Arrays.asList(1, 2, 3));
+		});
+
+		//Act
+		final int none = queue.drainTo(drained, 2, 10, TimeUnit.MILLISECONDS);
+		producer.start();
+		final int first = queue.drainTo(drained, 2, 5, TimeUnit.SECONDS);
+		final int second = queue.drainTo(drained, 2, 0, TimeUnit.SECONDS);
+		producer.join(1_000);
+
+		//Test
+		Assert.assertEquals(none, 0);
+		Assert.assertEquals(first, 2);
+		Assert.assertEquals(second, 1);
+		Assert.assertEquals(drained, Arrays.asList(1, 2, 3));
+	}
+
+	@Test
+	public void testTakeAsyncIsCompletedByAPut() throws Exception {
+		//Arrange
+		final ConcurrentSetBlockingQueue<Integer> queue = new ConcurrentSetBlockingQueue<>(10);
+		queue.offer(1);
+
+		//Act
+		final CompletableFuture<Integer> ready = queue.takeAsync();
+		final CompletableFuture<Integer> first = queue.takeAsync();
+		final CompletableFuture<Integer> second = queue.takeAsync();
+		final boolean waiting = !first.isDone() && !second.isDone();
+		queue.offerAll(Arrays.asList(2, 3, 4));
+
+		//Test
+		Assert.assertTrue(waiting);
+		Assert.assertEquals(ready.getNow(null), Integer.valueOf(1));
+		Assert.assertEquals(first.getNow(null), Integer.valueOf(2));
+		Assert.assertEquals(second.getNow(null), Integer.valueOf(3));
+		Assert.assertEquals(queue.poll(), Integer.valueOf(4));
+	}
+
+	@Test
+	public void testPutAsyncIsCompletedByATake() throws Exception {
+		//Arrange
+		final ConcurrentSetBlockingQueue<Integer> queue = new ConcurrentSetBlockingQueue<>(1);
+		queue.offer(1);
+
+		//Act
+		final CompletableFuture<Boolean> duplicate = queue.putAsync(1);
+		final CompletableFuture<Boolean> put = queue.putAsync(2);
+		final boolean waiting = !put.isDone();
+		final Integer taken = queue.take();
+
+		//Test
+		Assert.assertFalse(duplicate.getNow(null));
+		Assert.assertTrue(waiting);
+		Assert.assertTrue(put.getNow(null));
+		Assert.assertEquals(taken, Integer.valueOf(1));
+		Assert.assertEquals(queue.poll(), Integer.valueOf(2));
+	}
+
+	@Test
+	public void testCancelledAsyncWaitersAreSkipped() throws Exception {
+		//Arrange
+		final ConcurrentSetBlockingQueue<Integer> queue = new ConcurrentSetBlockingQueue<>(1);
+		final CompletableFuture<Integer> cancelled = queue.takeAsync();
+		final CompletableFuture<Integer> take = queue.takeAsync();
+
+		//Act
+		final boolean cancel = cancelled.cancel(false);
+		queue.offer(0);
+		final boolean completeTake = take.complete(-1);
+		queue.offer(1);
+		final CompletableFuture<Boolean> cancelledPut = queue.putAsync(2);
+		final CompletableFuture<Boolean> put = queue.putAsync(3);
+		final boolean cancelPut = cancelledPut.cancel(false);
+		final Integer head = queue.poll();
+
+		//Test
+		Assert.assertTrue(cancel);
+		Assert.assertTrue(cancelled.isCancelled());
+		Assert.assertFalse(completeTake);
+		Assert.assertEquals(take.getNow(null), Integer.valueOf(0));
+		Assert.assertTrue(cancelPut);
+		Assert.assertEquals(head, Integer.valueOf(1));
+		Assert.assertTrue(put.getNow(null));
+		Assert.assertEquals(queue.poll(), Integer.valueOf(3));
+		Assert.assertFalse(queue.contains(2));
+	}
+
+	@Test
+	public void testAsyncCallbacksRunOutsideTheLocks() throws Exception {
+		//Arrange
+		final ConcurrentSetBlockingQueue<Integer> queue = new ConcurrentSetBlockingQueue<>(1);
+		queue.offer(1);
+		final List<Boolean> lockFree = new ArrayList<>();
+		queue.putAsync(2).thenRun(() -> lockFree.add(
+				!queue.putLock.isHeldByCurrentThread() && !queue.takeLock.isHeldByCurrentThread()));
+		queue.putAsync(3).thenRun(() -> lockFree.add(
+				!queue.putLock.isHeldByCurrentThread() && !queue.takeLock.isHeldByCurrentThread()));
+
+		//Act
+		queue.remove(1);
+		queue.clear();
+
+		//Test
+		Assert.assertEquals(lockFree, Arrays.asList(true, true));
+		Assert.assertTrue(queue.contains(3));
+	}
+
+	@Test
+	public void testServedAsyncWaitersCancelTheirTimeout() throws Exception {
+		//Arrange
+		final ConcurrentSetBlockingQueue<Integer> queue = new ConcurrentSetBlockingQueue<>(1_000);
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		final Future<?> producer = executor.submit(() -> IntStream.range(0, 1_000).forEach(queue::offer));
+
+		//Act
+		final List<CompletableFuture<Integer>> takes = new ArrayList<>();
+		for (int i = 0; i < 1_000; i++) {
+			takes.add(queue.takeAsync(1, TimeUnit.HOURS));
+		}
+		producer.get(5, TimeUnit.SECONDS);
+		executor.shutdown();
+		CompletableFuture.allOf(takes.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+
+		//Test
+		Assert.assertTrue(AsyncWaiter.TIMER.getQueue().isEmpty());
+	}
+
+	@Test
+	public void testAsyncWaitersTimeOut() throws Exception {
+		//Arrange
+		final ConcurrentSetBlockingQueue<Integer> queue = new ConcurrentSetBlockingQueue<>(1);
+
+		//Act
+		final Integer taken = queue.takeAsync(20, TimeUnit.MILLISECONDS).get(5, TimeUnit.SECONDS);
+		queue.offer(1);
+		final Boolean put = queue.putAsync(2, 20, TimeUnit.MILLISECONDS).get(5, TimeUnit.SECONDS);
+		final Integer head = queue.poll();
+		final Integer next = queue.poll();
+
+		//Test
+		Assert.assertNull(taken);
+		Assert.assertFalse(put);
+		Assert.assertEquals(head, Integer.valueOf(1));
+		Assert.assertNull(next);
+	}
+
+	@Test
+	public void testAsyncProducersAndConsumers() throws Exception {
+		//Arrange
+		final ConcurrentSetBlockingQueue<Integer> queue = new ConcurrentSetBlockingQueue<>(4);
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		final List<CompletableFuture<Integer>> takes = new ArrayList<>();
+		final List<CompletableFuture<Boolean>> puts = new ArrayList<>();
+
+		//Act
+		final Future<?> consumer = executor.submit(() -> {
+			for (int i = 0; i < 1_000; i++) {
+				synchronized (takes) {
+					takes.add(queue.takeAsync());
+				}
+			}
+		});
+		final Future<?> producer = executor.submit(() -> {
+			for (int i = 0; i < 1_000; i++) {
+				synchronized (puts) {
+					puts.add(queue.putAsync(i));
+				}
+			}
+		});
+		consumer.get(5, TimeUnit.SECONDS);
+		producer.get(5, TimeUnit.SECONDS);
+		executor.shutdown();
+		CompletableFuture.allOf(takes.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+		CompletableFuture.allOf(puts.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+
+		//Test
+		Assert.assertEquals(takes.stream().map(CompletableFuture::join).sorted().collect(Collectors.toList()),
+				IntStream.range(0, 1_000).boxed().collect(Collectors.toList()));
+		Assert.assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	public void testPrefilteredQueue() throws InterruptedException {
+		//Arrange
+		final ConcurrentSetBlockingQueue<Integer> queue = ConcurrentSetBlockingQueue.builder(4).prefilter().build();
+		IntStream.range(0, 4).forEach(queue::offer);
+
+		//Act
+		final boolean duplicate = queue.offer(2);
+		final boolean full = queue.offer(4, 1, TimeUnit.MILLISECONDS);
+		final boolean removedMissing = queue.remove(5);
+		final boolean removed = queue.remove(1);
+		final Integer taken = queue.take();
+		final boolean reOffered = queue.offer(0);
+		final boolean containsTaken = queue.contains(1);
+		queue.clear();
+		final boolean afterClear = queue.offer(2);
+
+		//Test
+		Assert.assertFalse(duplicate);
+		Assert.assertFalse(full);
+		Assert.assertFalse(removedMissing);
+		Assert.assertTrue(removed);
+		Assert.assertEquals(taken, Integer.valueOf(0));
+		Assert.assertTrue(reOffered);
+		Assert.assertFalse(containsTaken);
+		Assert.assertTrue(afterClear);
+		Assert.assertTrue(queue.contains(2));
+		Assert.assertEquals(queue.size(), 1);
+	}
+
+	@Test
+	public void testPrefilterNeverHidesAQueuedElement() throws Exception {
+		//Arrange
+		final ConcurrentSetBlockingQueue<Integer> queue = ConcurrentSetBlockingQueue.builder(64).prefilter().build();
+		IntStream.range(0, 32).forEach(queue::offer);
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		final Future<?> churn = executor.submit(() -> {
+			for (int i = 0; i < 200_000; i++) {
+				final int e = 32 + i % 10_000;
+				queue.offer(e);
+				queue.remove(e);
+			}
+		});
+
+		//Act
+		int missed = 0;
+		while (!churn.isDone()) {
+			for (int e = 0; e < 32; e++) {
+				if (!queue.contains(e)) {
+					missed++;
+				}
+			}
+		}
+		churn.get(10, TimeUnit.SECONDS);
+		executor.shutdown();
+
+		//Test
+		Assert.assertEquals(missed, 0);
+		Assert.assertEquals(queue.size(), 32);
+		Assert.assertFalse(queue.contains(32));
+	}
+
 }
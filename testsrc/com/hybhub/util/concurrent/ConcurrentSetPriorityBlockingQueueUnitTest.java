@@ -0,0 +1,141 @@
+package com.hybhub.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class ConcurrentSetPriorityBlockingQueueUnitTest {
+
+	/**
+	 * Equal by id, ordered by priority
+	 */
+	private static final class Job {
+
+		final int id;
+
+		final int priority;
+
+		Job(final int id, final int priority) {
+			this.id = id;
+			this.priority = priority;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			return o instanceof Job && ((Job) o).id == id;
+		}
+
+		@Override
+		public int hashCode() {
+			return id;
+		}
+	}
+
+	private static final Comparator<Job> BY_PRIORITY = Comparator.comparingInt(job -> job.priority);
+
+	public void testTakesInPriorityOrderWithoutDuplicates() throws InterruptedException {
+		//Arrange
+		final BlockingQueue<Integer> queue = new ConcurrentSetPriorityBlockingQueue<>(3);
+
+		//Act
+		final boolean five = queue.offer(5);
+		final boolean one = queue.offer(1);
+		final boolean duplicate = queue.offer(5);
+		final boolean three = queue.offer(3);
+		final boolean full = queue.offer(2, 10, TimeUnit.MILLISECONDS);
+
+		//Test
+		Assert.assertTrue(five);
+		Assert.assertTrue(one);
+		Assert.assertFalse(duplicate);
+		Assert.assertTrue(three);
+		Assert.assertFalse(full);
+		Assert.assertEquals(queue.peek(), Integer.valueOf(1));
+		Assert.assertEquals(queue.take(), Integer.valueOf(1));
+		Assert.assertEquals(queue.poll(), Integer.valueOf(3));
+		Assert.assertEquals(queue.poll(10, TimeUnit.MILLISECONDS), Integer.valueOf(5));
+		Assert.assertNull(queue.poll());
+	}
+
+	public void testReOfferRaisesPriority() {
+		//Arrange
+		final BlockingQueue<Job> queue = new ConcurrentSetPriorityBlockingQueue<>(BY_PRIORITY);
+		queue.offer(new Job(1, 10));
+		queue.offer(new Job(2, 5));
+		queue.offer(new Job(3, 7));
+
+		//Act
+		final boolean raised = queue.offer(new Job(1, 1));
+		final boolean lowered = queue.offer(new Job(2, 20));
+		final Job first = queue.poll();
+
+		//Test
+		Assert.assertTrue(raised);
+		Assert.assertFalse(lowered);
+		Assert.assertEquals(first.id, 1);
+		Assert.assertEquals(first.priority, 1);
+		Assert.assertEquals(queue.poll().id, 2);
+		Assert.assertEquals(queue.poll().id, 3);
+	}
+
+	public void testRemoveKeepsTheHeapOrdered() {
+		//Arrange
+		final BlockingQueue<Integer> queue = new ConcurrentSetPriorityBlockingQueue<>();
+		final Random random = new Random(42);
+		final List<Integer> expected = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			final int x = random.nextInt(10_000);
+			if (queue.offer(x)) {
+				expected.add(x);
+			}
+		}
+
+		//Act
+		for (int i = 0; i < expected.size(); i += 3) {
+			Assert.assertTrue(queue.remove(expected.get(i)));
+		}
+		final List<Integer> drained = new ArrayList<>();
+		queue.drainTo(drained);
+
+		//Test
+		final List<Integer> kept = new ArrayList<>();
+		for (int i = 0; i < expected.size(); i++) {
+			if (i % 3 != 0) {
+				kept.add(expected.get(i));
+			}
+		}
+		kept.sort(null);
+		Assert.assertEquals(drained, kept);
+		Assert.assertTrue(queue.isEmpty());
+		Assert.assertFalse(queue.contains(kept.get(0)));
+	}
+
+	public void testPutWaitsForSpace() throws InterruptedException {
+		//Arrange
+		final BlockingQueue<Integer> queue = new ConcurrentSetPriorityBlockingQueue<>(1);
+		queue.put(2);
+		final Thread producer = new Thread(() -> {
+			try {
+				queue.put(1);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+
+		//Act
+		producer.start();
+		final Integer first = queue.take();
+		producer.join(1000);
+
+		//Test
+		Assert.assertEquals(first, Integer.valueOf(2));
+		Assert.assertEquals(queue.poll(), Integer.valueOf(1));
+	}
+}
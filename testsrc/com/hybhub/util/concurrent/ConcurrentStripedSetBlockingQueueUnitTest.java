@@ -0,0 +1,199 @@
+package com.hybhub.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.hybhub.util.concurrent.ConcurrentStripedSetBlockingQueue.Ordering;
+
+@Test
+public class ConcurrentStripedSetBlockingQueueUnitTest {
+
+	public void testGlobalFifo() {
+		//Arrange
+		final BlockingQueue<Integer> queue = new ConcurrentStripedSetBlockingQueue<>(8, 100, Ordering.GLOBAL_FIFO);
+		final List<Integer> dataSet = IntStream.range(0, 50).map(i -> 49 - i).boxed().collect(Collectors.toList());
+
+		//Act
+		dataSet.forEach(queue::offer);
+		final boolean duplicate = queue.offer(10);
+		final List<Integer> polled = new ArrayList<>();
+		queue.drainTo(polled);
+
+		//Test
+		Assert.assertFalse(duplicate);
+		Assert.assertEquals(polled, dataSet);
+		Assert.assertTrue(queue.isEmpty());
+	}
+
+	public void testGlobalFifoAfterRemoveAndClear() throws InterruptedException {
+		//Arrange
+		final BlockingQueue<Integer> queue = new ConcurrentStripedSetBlockingQueue<>(4, 100, Ordering.GLOBAL_FIFO);
+		IntStream.range(0, 20).forEach(queue::offer);
+
+		//Act
+		final boolean removed = queue.remove(4);
+		queue.offer(4);
+		final boolean removedAgain = queue.remove(8);
+		final List<Integer> taken = new ArrayList<>();
+		for (int i = 0; i < 19; i++) {
+			taken.add(queue.take());
+		}
+		queue.offer(100);
+		queue.offer(101);
+		queue.clear();
+		queue.offer(102);
+		queue.offer(103);
+		final Integer peeked = queue.peek();
+		final List<Integer> afterClear = new ArrayList<>();
+		queue.drainTo(afterClear);
+
+		//Test
+		final List<Integer> expected = IntStream.range(0, 20).filter(i -> i != 4 && i != 8).boxed()
+				.collect(Collectors.toList());
+		expected.add(4);
+		Assert.assertTrue(removed);
+		Assert.assertTrue(removedAgain);
+		Assert.assertEquals(taken, expected);
+		Assert.assertEquals(peeked, Integer.valueOf(102));
+		Assert.assertEquals(afterClear, Arrays.asList(102, 103));
+		Assert.assertTrue(queue.isEmpty());
+		Assert.assertNull(queue.poll());
+	}
+
+	public void testGlobalFifoRemovalsUnlinkTheirTokens() {
+		//Arrange
+		final ConcurrentStripedSetBlockingQueue<Integer> queue = new ConcurrentStripedSetBlockingQueue<>(4, 100,
+				Ordering.GLOBAL_FIFO);
+		queue.offer(-1);
+
+		//Act
+		for (int i = 0; i < 10_000; i++) {
+			queue.offer(i);
+			queue.remove(i);
+		}
+
+		//Test
+		Assert.assertEquals(queue.order.size(), 1);
+		Assert.assertEquals(queue.size(), 1);
+		Assert.assertEquals(queue.poll(), Integer.valueOf(-1));
+		Assert.assertNull(queue.poll());
+	}
+
+	public void testPutFindingItsElementQueuedPassesTheSignalOn() throws Exception {
+		for (Ordering ordering : Ordering.values()) {
+			//Arrange
+			final BlockingQueue<String> queue = new ConcurrentStripedSetBlockingQueue<>(4, 2, ordering);
+			queue.put("a");
+			queue.put("z");
+			final List<Thread> puts = new ArrayList<>();
+			for (String e : Arrays.asList("b", "b", "c")) {
+				final Thread put = new Thread(() -> {
+					try {
+						queue.put(e);
+					} catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+					}
+				});
+				put.start();
+				final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+				while (put.getState() != Thread.State.WAITING && System.nanoTime() < deadline) {
+					Thread.sleep(1);
+				}
+				puts.add(put);
+			}
+
+			//Act
+			// a single put is signalled by the first take, one of the puts of "b" finds it queued
+			queue.take();
+			queue.take();
+			for (Thread put : puts) {
+				put.join(1_000);
+			}
+
+			//Test
+			for (Thread put : puts) {
+				Assert.assertFalse(put.isAlive(), ordering.name());
+			}
+			Assert.assertEquals(queue.size(), 2, ordering.name());
+			Assert.assertTrue(queue.contains("b"));
+			Assert.assertTrue(queue.contains("c"));
+		}
+	}
+
+	public void testStripeFifoCapacityAndRemove() {
+		//Arrange
+		final BlockingQueue<Integer> queue = new ConcurrentStripedSetBlockingQueue<>(4, 3, Ordering.STRIPE_FIFO);
+
+		//Act
+		final boolean first = queue.offer(1);
+		final boolean duplicate = queue.offer(1);
+		final boolean second = queue.offer(2);
+		final boolean third = queue.offer(3);
+		final boolean full = queue.offer(4);
+		final boolean removed = queue.remove(2);
+		final boolean afterRemove = queue.offer(4);
+		final List<Integer> polled = new ArrayList<>();
+		queue.drainTo(polled);
+
+		//Test
+		Assert.assertTrue(first);
+		Assert.assertFalse(duplicate);
+		Assert.assertTrue(second);
+		Assert.assertTrue(third);
+		Assert.assertFalse(full);
+		Assert.assertTrue(removed);
+		Assert.assertTrue(afterRemove);
+		Assert.assertEquals(polled.size(), 3);
+		Assert.assertTrue(polled.containsAll(Arrays.asList(1, 3, 4)));
+		Assert.assertEquals(queue.remainingCapacity(), 3);
+	}
+
+	public void testManyProducersPutTake() throws InterruptedException {
+		for (Ordering ordering : Ordering.values()) {
+			//Arrange
+			final BlockingQueue<Integer> queue = new ConcurrentStripedSetBlockingQueue<>(16, 32, ordering);
+			final Set<Integer> taken = ConcurrentHashMap.newKeySet();
+			final List<Callable<Object>> tasks = new ArrayList<>();
+			for (int p = 0; p < 8; p++) {
+				final int producer = p;
+				tasks.add(() -> {
+					for (int i = 0; i < 1_000; i++) {
+						queue.put(producer * 1_000 + i);
+					}
+					return Boolean.TRUE;
+				});
+			}
+			for (int c = 0; c < 4; c++) {
+				tasks.add(() -> {
+					for (int i = 0; i < 2_000; i++) {
+						Assert.assertTrue(taken.add(queue.take()));
+					}
+					return Boolean.TRUE;
+				});
+			}
+			final ExecutorService exec = Executors.newFixedThreadPool(12);
+
+			//Act
+			exec.invokeAll(tasks, 20, TimeUnit.SECONDS);
+			exec.shutdownNow();
+
+			//Test
+			Assert.assertEquals(taken.size(), 8_000);
+			Assert.assertTrue(queue.isEmpty());
+			Assert.assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+		}
+	}
+}
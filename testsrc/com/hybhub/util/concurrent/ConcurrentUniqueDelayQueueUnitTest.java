@@ -0,0 +1,139 @@
+package com.hybhub.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class ConcurrentUniqueDelayQueueUnitTest {
+
+	/**
+	 * Equal by id, due after a delay
+	 */
+	private static final class Task implements Delayed {
+
+		final String id;
+
+		final long triggerTime;
+
+		Task(final String id, final long delayMillis) {
+			this.id = id;
+			this.triggerTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+		}
+
+		@Override
+		public long getDelay(final TimeUnit unit) {
+			return unit.convert(triggerTime - System.nanoTime(), TimeUnit.NANOSECONDS);
+		}
+
+		@Override
+		public int compareTo(final Delayed o) {
+			return Long.compare(getDelay(TimeUnit.NANOSECONDS), o.getDelay(TimeUnit.NANOSECONDS));
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			return o instanceof Task && ((Task) o).id.equals(id);
+		}
+
+		@Override
+		public int hashCode() {
+			return id.hashCode();
+		}
+	}
+
+	public void testTakesExpiredElementsInDeadlineOrder() throws InterruptedException {
+		//Arrange
+		final ConcurrentUniqueDelayQueue<Task> queue = new ConcurrentUniqueDelayQueue<>();
+		queue.offer(new Task("late", 80));
+		queue.offer(new Task("early", 20));
+
+		//Act
+		final Task notYet = queue.poll();
+		final boolean duplicate = queue.offer(new Task("early", 0));
+		final Task first = queue.take();
+		final Task second = queue.poll(1, TimeUnit.SECONDS);
+
+		//Test
+		Assert.assertNull(notYet);
+		Assert.assertFalse(duplicate);
+		Assert.assertEquals(first.id, "early");
+		Assert.assertEquals(second.id, "late");
+		Assert.assertTrue(queue.isEmpty());
+	}
+
+	public void testExtendDebouncesReOffers() throws InterruptedException {
+		//Arrange
+		final ConcurrentUniqueDelayQueue<Task> queue = new ConcurrentUniqueDelayQueue<>(
+				ConcurrentUniqueDelayQueue.Reschedule.EXTEND);
+		queue.offer(new Task("a", 50));
+
+		//Act
+		final boolean shorter = queue.offer(new Task("a", 10));
+		final boolean longer = queue.offer(new Task("a", 200));
+		final Task early = queue.poll(100, TimeUnit.MILLISECONDS);
+		final Task late = queue.poll(1, TimeUnit.SECONDS);
+
+		//Test
+		Assert.assertFalse(shorter);
+		Assert.assertTrue(longer);
+		Assert.assertNull(early);
+		Assert.assertEquals(late.id, "a");
+		Assert.assertEquals(queue.size(), 0);
+	}
+
+	public void testShortenWakesTheWaitingTake() throws InterruptedException {
+		//Arrange
+		final ConcurrentUniqueDelayQueue<Task> queue = new ConcurrentUniqueDelayQueue<>(
+				ConcurrentUniqueDelayQueue.Reschedule.SHORTEN);
+		queue.offer(new Task("a", 10_000));
+		final List<Task> taken = new ArrayList<>();
+		final Thread consumer = new Thread(() -> {
+			try {
+				taken.add(queue.take());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		consumer.start();
+		Thread.sleep(20);
+
+		//Act
+		final boolean longer = queue.offer(new Task("a", 20_000));
+		final boolean shorter = queue.offer(new Task("a", 10));
+		consumer.join(1000);
+
+		//Test
+		Assert.assertFalse(longer);
+		Assert.assertTrue(shorter);
+		Assert.assertFalse(consumer.isAlive());
+		Assert.assertEquals(taken.size(), 1);
+	}
+
+	public void testRemoveAndDrainTo() {
+		//Arrange
+		final ConcurrentUniqueDelayQueue<Task> queue = new ConcurrentUniqueDelayQueue<>(
+				ConcurrentUniqueDelayQueue.Reschedule.REPLACE);
+		for (int i = 0; i < 100; i++) {
+			queue.offer(new Task("t" + i, i % 2 == 0 ? 0 : 10_000));
+		}
+
+		//Act
+		final boolean removed = queue.remove(new Task("t0", 0));
+		final Long delay = queue.getDelay(new Task("t1", 0), TimeUnit.MILLISECONDS);
+		final List<Task> drained = new ArrayList<>();
+		final int n = queue.drainTo(drained);
+
+		//Test
+		Assert.assertTrue(removed);
+		Assert.assertTrue(delay > 5_000);
+		Assert.assertEquals(n, 49);
+		Assert.assertEquals(queue.size(), 50);
+		Assert.assertFalse(queue.contains(new Task("t2", 0)));
+		Assert.assertTrue(queue.contains(new Task("t1", 0)));
+	}
+}
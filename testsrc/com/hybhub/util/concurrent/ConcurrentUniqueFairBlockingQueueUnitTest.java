@@ -0,0 +1,216 @@
+package com.hybhub.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.hybhub.util.concurrent.ConcurrentUniqueFairBlockingQueue.Uniqueness;
+
+@Test
+public class ConcurrentUniqueFairBlockingQueueUnitTest {
+
+	/** Tenant of "a1" is "a" */
+	private static String tenantOf(final String e) {
+		return e.substring(0, 1);
+	}
+
+	public void testTenantsAreServedRoundRobin() throws InterruptedException {
+		//Arrange
+		final ConcurrentUniqueFairBlockingQueue<String, String> queue =
+				new ConcurrentUniqueFairBlockingQueue<>(ConcurrentUniqueFairBlockingQueueUnitTest::tenantOf, 100, 10);
+		for (String e : Arrays.asList("a1", "a2", "a3", "a4", "b1", "c1", "c2")) {
+			queue.put(e);
+		}
+
+		//Act
+		final List<String> taken = new ArrayList<>();
+		while (!queue.isEmpty()) {
+			taken.add(queue.take());
+		}
+
+		//Test
+		Assert.assertEquals(taken, Arrays.asList("a1", "b1", "c1", "a2", "c2", "a3", "a4"));
+		Assert.assertEquals(queue.activeTenants(), 0);
+	}
+
+	public void testWeightsSetTheShareOfEachTenant() {
+		//Arrange
+		final ConcurrentUniqueFairBlockingQueue<String, String> queue = new ConcurrentUniqueFairBlockingQueue<>(
+				ConcurrentUniqueFairBlockingQueueUnitTest::tenantOf, 100, 10, Uniqueness.GLOBAL,
+				tenant -> tenant.equals("a") ? 3 : 1);
+		for (String e : Arrays.asList("a1", "a2", "a3", "a4", "a5", "b1", "b2", "b3")) {
+			queue.offer(e);
+		}
+
+		//Act
+		final List<String> drained = new ArrayList<>();
+		queue.drainTo(drained);
+
+		//Test
+		Assert.assertEquals(drained, Arrays.asList("a1", "a2", "a3", "b1", "a4", "a5", "b2", "b3"));
+	}
+
+	public void testNewTenantIsServedAfterTheActiveTenants() {
+		//Arrange
+		final ConcurrentUniqueFairBlockingQueue<String, String> queue =
+				new ConcurrentUniqueFairBlockingQueue<>(ConcurrentUniqueFairBlockingQueueUnitTest::tenantOf, 100, 10);
+		queue.offer("a1");
+		queue.offer("a2");
+		queue.offer("b1");
+		queue.offer("b2");
+
+		//Act
+		final String first = queue.poll();
+		queue.offer("c1");
+		final List<String> rest = new ArrayList<>();
+		queue.drainTo(rest);
+
+		//Test
+		Assert.assertEquals(first, "a1");
+		Assert.assertEquals(rest, Arrays.asList("b1", "a2", "c1", "b2"));
+	}
+
+	public void testTenantCapacity() throws InterruptedException {
+		//Arrange
+		final ConcurrentUniqueFairBlockingQueue<String, String> queue =
+				new ConcurrentUniqueFairBlockingQueue<>(ConcurrentUniqueFairBlockingQueueUnitTest::tenantOf, 3, 2);
+
+		//Act
+		final boolean a1 = queue.offer("a1");
+		final boolean a2 = queue.offer("a2");
+		final boolean a3 = queue.offer("a3", 10, TimeUnit.MILLISECONDS);
+		final boolean b1 = queue.offer("b1");
+		final boolean b2 = queue.offer("b2");
+
+		//Test
+		Assert.assertTrue(a1);
+		Assert.assertTrue(a2);
+		Assert.assertFalse(a3);
+		Assert.assertTrue(b1);
+		Assert.assertFalse(b2);
+		Assert.assertEquals(queue.size("a"), 2);
+		Assert.assertEquals(queue.size("b"), 1);
+		Assert.assertEquals(queue.remainingCapacity(), 0);
+	}
+
+	public void testPutWaitsForRoomInItsTenant() throws InterruptedException {
+		//Arrange
+		final ConcurrentUniqueFairBlockingQueue<String, String> queue =
+				new ConcurrentUniqueFairBlockingQueue<>(ConcurrentUniqueFairBlockingQueueUnitTest::tenantOf, 10, 1);
+		queue.put("a1");
+		final Thread producer = new Thread(() -> {
+			try {
+				queue.put("a2");
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		producer.start();
+
+		//Act
+		final boolean other = queue.offer("b1");
+		final String first = queue.take();
+		producer.join(1_000);
+
+		//Test
+		Assert.assertTrue(other);
+		Assert.assertEquals(first, "a1");
+		Assert.assertFalse(producer.isAlive());
+		Assert.assertTrue(queue.contains("a2"));
+	}
+
+	public void testGlobalUniqueness() {
+		//Arrange
+		final ConcurrentUniqueFairBlockingQueue<String, Integer> queue =
+				new ConcurrentUniqueFairBlockingQueue<>(String::length, 10, 10);
+
+		//Act
+		final boolean first = queue.offer("ab");
+		final boolean duplicate = queue.offer("ab");
+		final boolean other = queue.offer("cd");
+
+		//Test
+		Assert.assertTrue(first);
+		Assert.assertFalse(duplicate);
+		Assert.assertTrue(other);
+		Assert.assertEquals(queue.size(), 2);
+	}
+
+	public void testPerTenantUniqueness() {
+		//Arrange
+		final ConcurrentUniqueFairBlockingQueue<Job, String> global =
+				new ConcurrentUniqueFairBlockingQueue<>(Job::getTenant, 10, 10);
+		final ConcurrentUniqueFairBlockingQueue<Job, String> perTenant = new ConcurrentUniqueFairBlockingQueue<>(
+				Job::getTenant, 10, 10, Uniqueness.PER_TENANT, tenant -> 1);
+
+		//Act
+		final boolean globalA = global.offer(new Job("a", 1));
+		final boolean globalB = global.offer(new Job("b", 1));
+		final boolean perTenantA = perTenant.offer(new Job("a", 1));
+		final boolean perTenantB = perTenant.offer(new Job("b", 1));
+		final boolean perTenantDuplicate = perTenant.offer(new Job("b", 1));
+
+		//Test
+		Assert.assertTrue(globalA);
+		Assert.assertFalse(globalB);
+		Assert.assertTrue(perTenantA);
+		Assert.assertTrue(perTenantB);
+		Assert.assertFalse(perTenantDuplicate);
+		Assert.assertEquals(perTenant.size(), 2);
+		Assert.assertEquals(perTenant.activeTenants(), 2);
+	}
+
+	public void testRemoveLeavesTheRing() {
+		//Arrange
+		final ConcurrentUniqueFairBlockingQueue<String, String> queue =
+				new ConcurrentUniqueFairBlockingQueue<>(ConcurrentUniqueFairBlockingQueueUnitTest::tenantOf, 10, 10);
+		queue.offer("a1");
+		queue.offer("b1");
+		queue.offer("c1");
+
+		//Act
+		final boolean removed = queue.remove("b1");
+		final boolean missing = queue.remove("b1");
+		final List<String> drained = new ArrayList<>();
+		queue.drainTo(drained);
+
+		//Test
+		Assert.assertTrue(removed);
+		Assert.assertFalse(missing);
+		Assert.assertEquals(drained, Arrays.asList("a1", "c1"));
+		Assert.assertNull(queue.peek());
+	}
+
+	/**
+	 * Job equal to the jobs with the same id, whatever their tenant
+	 */
+	private static final class Job {
+
+		private final String tenant;
+
+		private final int id;
+
+		Job(final String tenant, final int id) {
+			this.tenant = tenant;
+			this.id = id;
+		}
+
+		String getTenant() {
+			return tenant;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			return o instanceof Job && ((Job) o).id == id;
+		}
+
+		@Override
+		public int hashCode() {
+			return id;
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package com.hybhub.util.concurrent;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class ConcurrentUniqueIntBlockingQueueUnitTest {
+
+	public void testOfferTakeAndGrowth() throws InterruptedException {
+		//Arrange
+		final ConcurrentUniqueIntBlockingQueue queue = new ConcurrentUniqueIntBlockingQueue(100);
+
+		//Act
+		for (int i = 0; i < 10; i++) {
+			queue.offer(i);
+			queue.take();
+		}
+		for (int i = 0; i < 100; i++) {
+			Assert.assertTrue(queue.offer(i * 31));
+			Assert.assertFalse(queue.offer(i * 31));
+		}
+		final boolean full = queue.offer(-5, 10, TimeUnit.MILLISECONDS);
+
+		//Test
+		Assert.assertFalse(full);
+		Assert.assertEquals(queue.size(), 100);
+		for (int i = 0; i < 100; i++) {
+			Assert.assertEquals(queue.take(), i * 31);
+		}
+		Assert.assertEquals(queue.poll(Integer.MIN_VALUE), Integer.MIN_VALUE);
+		Assert.assertTrue(queue.offer(0));
+	}
+
+	public void testOfferDuplicatesAndCapacity() throws InterruptedException {
+		//Arrange
+		final ConcurrentUniqueIntBlockingQueue queue = new ConcurrentUniqueIntBlockingQueue(3);
+
+		//Act
+		final boolean zero = queue.offer(0);
+		final boolean zeroAgain = queue.offer(0);
+		final boolean first = queue.offer(42);
+		final boolean second = queue.offer(-1);
+		final boolean full = queue.offer(7);
+		final boolean timedOut = queue.offer(7, 10, TimeUnit.MILLISECONDS);
+
+		//Test
+		Assert.assertTrue(zero);
+		Assert.assertFalse(zeroAgain);
+		Assert.assertTrue(first);
+		Assert.assertTrue(second);
+		Assert.assertFalse(full);
+		Assert.assertFalse(timedOut);
+		Assert.assertEquals(queue.remainingCapacity(), 0);
+		Assert.assertEquals(queue.take(), 0);
+		Assert.assertEquals(queue.take(), 42);
+		Assert.assertEquals(queue.take(), -1);
+		Assert.assertEquals(queue.poll(Integer.MIN_VALUE), Integer.MIN_VALUE);
+		Assert.assertEquals(queue.poll(10, TimeUnit.MILLISECONDS, Integer.MIN_VALUE), Integer.MIN_VALUE);
+	}
+
+	public void testRemoveAndDrain() {
+		//Arrange
+		final ConcurrentUniqueIntBlockingQueue queue = new ConcurrentUniqueIntBlockingQueue();
+		for (int i = 0; i < 100; i++) {
+			queue.offer(i);
+		}
+		final int[] drained = new int[10];
+
+		//Act
+		final boolean removed = queue.remove(50);
+		final boolean removedTwice = queue.remove(50);
+		final int drainedCount = queue.drainTo(drained);
+		final int[] remaining = queue.toArray();
+
+		//Test
+		Assert.assertTrue(removed);
+		Assert.assertFalse(removedTwice);
+		Assert.assertEquals(drainedCount, 10);
+		Assert.assertEquals(drained, new int[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9});
+		Assert.assertEquals(remaining.length, 89);
+		Assert.assertEquals(remaining[40], 51);
+		Assert.assertEquals(queue.element(), 10);
+		Assert.assertFalse(queue.contains(5));
+		Assert.assertTrue(queue.contains(99));
+		queue.clear();
+		Assert.assertTrue(queue.isEmpty());
+		Assert.assertEquals(queue.peek(-1), -1);
+	}
+
+	@Test(expectedExceptions = NoSuchElementException.class)
+	public void testRemoveFromEmptyQueue() {
+		new ConcurrentUniqueIntBlockingQueue().remove();
+	}
+
+	public void testRemoveAcrossTheWrapAround() {
+		//Arrange
+		final ConcurrentUniqueIntBlockingQueue queue = new ConcurrentUniqueIntBlockingQueue(4);
+		for (int i = 0; i < 4; i++) {
+			queue.offer(i);
+		}
+		queue.poll(-1);
+		queue.poll(-1);
+		queue.offer(4);
+		queue.offer(5);
+
+		//Act
+		final boolean removedBeforeEnd = queue.remove(3);
+		final boolean removedAfterStart = queue.remove(4);
+		final boolean offered = queue.offer(6);
+		final int[] drained = new int[4];
+		final int drainedCount = queue.drainTo(drained);
+
+		//Test
+		Assert.assertTrue(removedBeforeEnd);
+		Assert.assertTrue(removedAfterStart);
+		Assert.assertTrue(offered);
+		Assert.assertEquals(drainedCount, 3);
+		Assert.assertEquals(drained, new int[]{2, 5, 6, 0});
+		Assert.assertTrue(queue.isEmpty());
+		Assert.assertTrue(queue.offer(3));
+	}
+
+	public void testMatchesReferenceImplementation() {
+		//Arrange
+		final ConcurrentUniqueIntBlockingQueue queue = new ConcurrentUniqueIntBlockingQueue(1_000);
+		final Deque<Integer> expectedOrder = new ArrayDeque<>();
+		final Set<Integer> expectedSet = new HashSet<>();
+		final Random random = new Random(42);
+
+		//Act & Test
+		for (int i = 0; i < 200_000; i++) {
+			// multiples of a large power of two collide in the index, removals shift the probe chains back
+			final int e = random.nextInt(2_000) << (random.nextBoolean() ? 0 : 16);
+			switch (random.nextInt(3)) {
+				case 0:
+					final boolean expected = expectedOrder.size() < 1_000 && expectedSet.add(e);
+					if (expected) {
+						expectedOrder.addLast(e);
+					}
+					Assert.assertEquals(queue.offer(e), expected);
+					break;
+				case 1:
+					final Integer head = expectedOrder.pollFirst();
+					if (head != null) {
+						expectedSet.remove(head);
+					}
+					Assert.assertEquals(queue.poll(-1), head == null ? -1 : head.intValue());
+					break;
+				default:
+					final boolean removed = expectedSet.remove(e);
+					if (removed) {
+						expectedOrder.remove(e);
+					}
+					Assert.assertEquals(queue.remove(e), removed);
+			}
+			Assert.assertEquals(queue.size(), expectedOrder.size());
+		}
+	}
+
+	public void testPutWaitsForTake() throws Exception {
+		//Arrange
+		final ConcurrentUniqueIntBlockingQueue queue = new ConcurrentUniqueIntBlockingQueue(1);
+		queue.put(1);
+		final Thread producer = new Thread(() -> {
+			try {
+				queue.put(2);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+
+		//Act
+		producer.start();
+		Thread.sleep(50);
+		final int first = queue.take();
+		producer.join(1_000);
+
+		//Test
+		Assert.assertEquals(first, 1);
+		Assert.assertFalse(producer.isAlive());
+		Assert.assertEquals(queue.take(), 2);
+	}
+
+	public void testCapacityIsCappedAtWhatTheIndexCanHold() {
+		//Arrange
+		final ConcurrentUniqueIntBlockingQueue queue = new ConcurrentUniqueIntBlockingQueue();
+
+		//Act
+		final int remaining = queue.remainingCapacity();
+
+		//Test
+		Assert.assertEquals(remaining, (1 << 30) - 1);
+	}
+}
@@ -0,0 +1,115 @@
+package com.hybhub.util.concurrent;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class ConcurrentUniqueKeyedBlockingQueueUnitTest {
+
+	public void testOfferReplacesValueInPlace() throws InterruptedException {
+		//Arrange
+		final ConcurrentUniqueKeyedBlockingQueue<String, Integer> queue = new ConcurrentUniqueKeyedBlockingQueue<>();
+
+		//Act
+		queue.offer("a", 1);
+		queue.offer("b", 2);
+		queue.offer("a", 3);
+		final int size = queue.size();
+		final Integer queuedValue = queue.get("a");
+
+		//Test
+		Assert.assertEquals(size, 2);
+		Assert.assertEquals(queuedValue, Integer.valueOf(3));
+		Assert.assertEquals(queue.take(), entry("a", 3));
+		Assert.assertEquals(queue.take(), entry("b", 2));
+		Assert.assertNull(queue.poll());
+		Assert.assertFalse(queue.containsKey("a"));
+	}
+
+	public void testOfferMergesValues() {
+		//Arrange
+		final ConcurrentUniqueKeyedBlockingQueue<String, List<Integer>> queue = new ConcurrentUniqueKeyedBlockingQueue<>(1);
+
+		//Act
+		final boolean first = queue.offer("a", Arrays.asList(1), ConcurrentUniqueKeyedBlockingQueueUnitTest::concat);
+		final boolean merged = queue.offer("a", Arrays.asList(2), ConcurrentUniqueKeyedBlockingQueueUnitTest::concat);
+		final boolean full = queue.offer("b", Arrays.asList(3), ConcurrentUniqueKeyedBlockingQueueUnitTest::concat);
+		final Map.Entry<String, List<Integer>> peeked = queue.peek();
+
+		//Test
+		Assert.assertTrue(first);
+		Assert.assertTrue(merged);
+		Assert.assertFalse(full);
+		Assert.assertEquals(peeked, entry("a", Arrays.asList(1, 2)));
+		Assert.assertEquals(queue.remainingCapacity(), 0);
+	}
+
+	public void testRemoveDrainAndClear() {
+		//Arrange
+		final ConcurrentUniqueKeyedBlockingQueue<Integer, String> queue = new ConcurrentUniqueKeyedBlockingQueue<>(3);
+		queue.offer(1, "one");
+		queue.offer(2, "two");
+		queue.offer(3, "three");
+
+		//Act
+		final boolean removed = queue.remove(2);
+		final boolean afterRemove = queue.offer(4, "four");
+		final List<Map.Entry<Integer, String>> drained = new ArrayList<>();
+		final int drainedCount = queue.drainTo(drained, 2);
+		queue.clear();
+
+		//Test
+		Assert.assertTrue(removed);
+		Assert.assertTrue(afterRemove);
+		Assert.assertEquals(drainedCount, 2);
+		Assert.assertEquals(drained, Arrays.asList(entry(1, "one"), entry(3, "three")));
+		Assert.assertTrue(queue.isEmpty());
+		Assert.assertEquals(queue.remainingCapacity(), 3);
+	}
+
+	public void testPutWaitsUnlessCoalesced() throws Exception {
+		//Arrange
+		final ConcurrentUniqueKeyedBlockingQueue<String, Integer> queue = new ConcurrentUniqueKeyedBlockingQueue<>(1);
+		queue.put("a", 1);
+		final ExecutorService exec = Executors.newSingleThreadExecutor();
+
+		//Act
+		queue.put("a", 2, Integer::sum);
+		final boolean timedOut = queue.offer("b", 1, Integer::sum, 10, TimeUnit.MILLISECONDS);
+		final Future<?> blockedPut = exec.submit(() -> {
+			queue.put("b", 5);
+			return null;
+		});
+		Thread.sleep(50);
+		final boolean blocked = !blockedPut.isDone();
+		final Map.Entry<String, Integer> first = queue.take();
+		blockedPut.get(1, TimeUnit.SECONDS);
+		exec.shutdown();
+
+		//Test
+		Assert.assertFalse(timedOut);
+		Assert.assertTrue(blocked);
+		Assert.assertEquals(first, entry("a", 3));
+		Assert.assertEquals(queue.poll(1, TimeUnit.SECONDS), entry("b", 5));
+	}
+
+	private static <T> List<T> concat(final List<T> queued, final List<T> offered) {
+		final List<T> merged = new ArrayList<>(queued);
+		merged.addAll(offered);
+		return merged;
+	}
+
+	private static <K, V> Map.Entry<K, V> entry(final K key, final V value) {
+		return new AbstractMap.SimpleImmutableEntry<>(key, value);
+	}
+}
@@ -0,0 +1,148 @@
+package com.hybhub.util.concurrent;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class ConcurrentUniqueLongBlockingQueueUnitTest {
+
+	public void testOfferDuplicatesAndCapacity() throws InterruptedException {
+		//Arrange
+		final ConcurrentUniqueLongBlockingQueue queue = new ConcurrentUniqueLongBlockingQueue(3);
+
+		//Act
+		final boolean zero = queue.offer(0L);
+		final boolean zeroAgain = queue.offer(0L);
+		final boolean first = queue.offer(42L);
+		final boolean second = queue.offer(-1L);
+		final boolean full = queue.offer(7L);
+		final boolean timedOut = queue.offer(7L, 10, TimeUnit.MILLISECONDS);
+
+		//Test
+		Assert.assertTrue(zero);
+		Assert.assertFalse(zeroAgain);
+		Assert.assertTrue(first);
+		Assert.assertTrue(second);
+		Assert.assertFalse(full);
+		Assert.assertFalse(timedOut);
+		Assert.assertEquals(queue.remainingCapacity(), 0);
+		Assert.assertEquals(queue.take(), 0L);
+		Assert.assertEquals(queue.take(), 42L);
+		Assert.assertEquals(queue.take(), -1L);
+		Assert.assertEquals(queue.poll(Long.MIN_VALUE), Long.MIN_VALUE);
+		Assert.assertEquals(queue.poll(10, TimeUnit.MILLISECONDS, Long.MIN_VALUE), Long.MIN_VALUE);
+	}
+
+	public void testRemoveAndDrain() {
+		//Arrange
+		final ConcurrentUniqueLongBlockingQueue queue = new ConcurrentUniqueLongBlockingQueue();
+		for (long i = 0; i < 100; i++) {
+			queue.offer(i);
+		}
+		final long[] drained = new long[10];
+
+		//Act
+		final boolean removed = queue.remove(50L);
+		final boolean removedTwice = queue.remove(50L);
+		final int drainedCount = queue.drainTo(drained);
+		final long[] remaining = queue.toArray();
+
+		//Test
+		Assert.assertTrue(removed);
+		Assert.assertFalse(removedTwice);
+		Assert.assertEquals(drainedCount, 10);
+		Assert.assertEquals(drained, new long[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9});
+		Assert.assertEquals(remaining.length, 89);
+		Assert.assertEquals(remaining[40], 51L);
+		Assert.assertEquals(queue.element(), 10L);
+		Assert.assertFalse(queue.contains(5L));
+		Assert.assertTrue(queue.contains(99L));
+		queue.clear();
+		Assert.assertTrue(queue.isEmpty());
+		Assert.assertEquals(queue.peek(-1L), -1L);
+	}
+
+	@Test(expectedExceptions = NoSuchElementException.class)
+	public void testRemoveFromEmptyQueue() {
+		new ConcurrentUniqueLongBlockingQueue().remove();
+	}
+
+	public void testMatchesReferenceImplementation() {
+		//Arrange
+		final ConcurrentUniqueLongBlockingQueue queue = new ConcurrentUniqueLongBlockingQueue(1_000);
+		final Deque<Long> expectedOrder = new ArrayDeque<>();
+		final Set<Long> expectedSet = new HashSet<>();
+		final Random random = new Random(42);
+
+		//Act & Test
+		for (int i = 0; i < 200_000; i++) {
+			final long e = random.nextInt(2_000);
+			switch (random.nextInt(3)) {
+				case 0:
+					final boolean expected = expectedOrder.size() < 1_000 && expectedSet.add(e);
+					if (expected) {
+						expectedOrder.addLast(e);
+					}
+					Assert.assertEquals(queue.offer(e), expected);
+					break;
+				case 1:
+					final Long head = expectedOrder.pollFirst();
+					if (head != null) {
+						expectedSet.remove(head);
+					}
+					Assert.assertEquals(queue.poll(-1L), head == null ? -1L : head);
+					break;
+				default:
+					final boolean removed = expectedSet.remove(e);
+					if (removed) {
+						expectedOrder.remove(e);
+					}
+					Assert.assertEquals(queue.remove(e), removed);
+			}
+			Assert.assertEquals(queue.size(), expectedOrder.size());
+		}
+	}
+
+	public void testPutWaitsForTake() throws Exception {
+		//Arrange
+		final ConcurrentUniqueLongBlockingQueue queue = new ConcurrentUniqueLongBlockingQueue(1);
+		queue.put(1L);
+		final Thread producer = new Thread(() -> {
+			try {
+				queue.put(2L);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+
+		//Act
+		producer.start();
+		Thread.sleep(50);
+		final long first = queue.take();
+		producer.join(1_000);
+
+		//Test
+		Assert.assertEquals(first, 1L);
+		Assert.assertFalse(producer.isAlive());
+		Assert.assertEquals(queue.take(), 2L);
+	}
+
+	public void testCapacityIsCappedAtWhatTheIndexCanHold() {
+		//Arrange
+		final ConcurrentUniqueLongBlockingQueue queue = new ConcurrentUniqueLongBlockingQueue();
+
+		//Act
+		final int remaining = queue.remainingCapacity();
+
+		//Test
+		Assert.assertEquals(remaining, (1 << 30) - 1);
+	}
+}
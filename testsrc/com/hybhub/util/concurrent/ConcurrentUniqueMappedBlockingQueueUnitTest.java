@@ -0,0 +1,113 @@
+package com.hybhub.util.concurrent;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class ConcurrentUniqueMappedBlockingQueueUnitTest {
+
+	private static long segmentFiles(final Path directory) throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter(file -> file.toString().endsWith(".segment")).count();
+		}
+	}
+
+	public void testOfferDuplicatesAndCapacity() throws IOException, InterruptedException {
+		//Arrange
+		final Path directory = Files.createTempDirectory("mapped-queue");
+		try (ConcurrentUniqueMappedBlockingQueue<Long> queue =
+				new ConcurrentUniqueMappedBlockingQueue<>(directory, 2, KeyCodec.longs())) {
+
+			//Act
+			final boolean first = queue.offer(1L);
+			final boolean duplicate = queue.offer(1L);
+			final boolean second = queue.offer(2L);
+			final boolean full = queue.offer(3L, 10, TimeUnit.MILLISECONDS);
+
+			//Test
+			Assert.assertTrue(first);
+			Assert.assertFalse(duplicate);
+			Assert.assertTrue(second);
+			Assert.assertFalse(full);
+			Assert.assertEquals(queue.take(), Long.valueOf(1L));
+			Assert.assertTrue(queue.offer(1L));
+			Assert.assertEquals(queue.toArray(), new Object[] {2L, 1L});
+		}
+	}
+
+	public void testQueuedKeysSurviveARestart() throws IOException {
+		//Arrange
+		final Path directory = Files.createTempDirectory("mapped-queue");
+		final UUID[] ids = new UUID[10];
+		try (ConcurrentUniqueMappedBlockingQueue<UUID> queue = new ConcurrentUniqueMappedBlockingQueue<>(directory,
+				100, KeyCodec.uuids(), 4, ConcurrentUniqueMappedBlockingQueue.Sync.perOperation())) {
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = UUID.randomUUID();
+				queue.offer(ids[i]);
+			}
+			queue.poll();
+			queue.poll();
+			queue.remove(ids[5]);
+		}
+
+		//Act
+		final List<UUID> recovered = new ArrayList<>();
+		final boolean duplicate;
+		try (ConcurrentUniqueMappedBlockingQueue<UUID> queue = new ConcurrentUniqueMappedBlockingQueue<>(directory,
+				100, KeyCodec.uuids(), 4, ConcurrentUniqueMappedBlockingQueue.Sync.batched(10))) {
+			duplicate = !queue.offer(ids[9]);
+			queue.drainTo(recovered);
+		}
+
+		//Test
+		Assert.assertTrue(duplicate);
+		Assert.assertEquals(recovered, Arrays.asList(ids[2], ids[3], ids[4], ids[6], ids[7], ids[8], ids[9]));
+		Assert.assertEquals(segmentFiles(directory), 1);
+	}
+
+	public void testConsumedSegmentsAreDeleted() throws IOException {
+		//Arrange
+		final Path directory = Files.createTempDirectory("mapped-queue");
+		try (ConcurrentUniqueMappedBlockingQueue<Long> queue = new ConcurrentUniqueMappedBlockingQueue<>(directory,
+				1000, KeyCodec.longs(), 8, ConcurrentUniqueMappedBlockingQueue.Sync.os())) {
+			for (long i = 0; i < 100; i++) {
+				queue.offer(i);
+			}
+			final long before = segmentFiles(directory);
+
+			//Act
+			for (long i = 0; i < 90; i++) {
+				Assert.assertEquals(queue.poll(), Long.valueOf(i));
+			}
+			queue.force();
+
+			//Test
+			Assert.assertEquals(before, 13);
+			Assert.assertEquals(segmentFiles(directory), 2);
+			Assert.assertEquals(queue.size(), 10);
+			Assert.assertTrue(queue.contains(95L));
+			queue.clear();
+			Assert.assertNull(queue.poll());
+		}
+	}
+
+	@Test(expectedExceptions = IOException.class)
+	public void testReopenWithAnotherLayoutFails() throws IOException {
+		//Arrange
+		final Path directory = Files.createTempDirectory("mapped-queue");
+		new ConcurrentUniqueMappedBlockingQueue<>(directory, 10, KeyCodec.longs()).close();
+
+		//Act
+		new ConcurrentUniqueMappedBlockingQueue<>(directory, 10, KeyCodec.uuids());
+	}
+}
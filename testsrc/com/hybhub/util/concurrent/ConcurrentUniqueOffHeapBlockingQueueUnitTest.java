@@ -0,0 +1,121 @@
+package com.hybhub.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class ConcurrentUniqueOffHeapBlockingQueueUnitTest {
+
+	public void testOfferDuplicatesAndCapacity() throws InterruptedException {
+		//Arrange
+		final BlockingQueue<Long> queue = new ConcurrentUniqueOffHeapBlockingQueue<>(2, KeyCodec.longs());
+
+		//Act
+		final boolean first = queue.offer(1L);
+		final boolean duplicate = queue.offer(1L);
+		final boolean second = queue.offer(0L);
+		final boolean full = queue.offer(3L);
+		final boolean timedOut = queue.offer(3L, 10, TimeUnit.MILLISECONDS);
+
+		//Test
+		Assert.assertTrue(first);
+		Assert.assertFalse(duplicate);
+		Assert.assertTrue(second);
+		Assert.assertFalse(full);
+		Assert.assertFalse(timedOut);
+		Assert.assertEquals(queue.take(), Long.valueOf(1L));
+		Assert.assertTrue(queue.offer(1L));
+		Assert.assertEquals(queue.poll(), Long.valueOf(0L));
+		Assert.assertEquals(queue.poll(), Long.valueOf(1L));
+		Assert.assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+	}
+
+	public void testUuidKeysWrapRemoveAndDrain() {
+		//Arrange
+		final BlockingQueue<UUID> queue = new ConcurrentUniqueOffHeapBlockingQueue<>(5, KeyCodec.uuids());
+		final UUID[] ids = new UUID[7];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = UUID.randomUUID();
+		}
+		for (int i = 0; i < 5; i++) {
+			queue.offer(ids[i]);
+		}
+		queue.poll();
+		queue.poll();
+		queue.offer(ids[5]);
+		queue.offer(ids[6]);
+
+		//Act
+		final boolean removed = queue.remove(ids[4]);
+		final boolean reAdded = queue.offer(ids[4]);
+		final Iterator<UUID> iterator = queue.iterator();
+		iterator.next();
+		iterator.remove();
+		final Object[] remaining = queue.toArray();
+		final List<UUID> drained = new ArrayList<>();
+		final int drainedCount = queue.drainTo(drained, 2);
+
+		//Test
+		Assert.assertTrue(removed);
+		Assert.assertTrue(reAdded);
+		Assert.assertEquals(remaining, new Object[] {ids[3], ids[5], ids[6], ids[4]});
+		Assert.assertEquals(drainedCount, 2);
+		Assert.assertEquals(drained, Arrays.asList(ids[3], ids[5]));
+		Assert.assertFalse(queue.contains(ids[3]));
+		Assert.assertTrue(queue.contains(ids[6]));
+	}
+
+	public void testByteArrayKeysAreComparedByContent() {
+		//Arrange
+		final BlockingQueue<byte[]> queue = new ConcurrentUniqueOffHeapBlockingQueue<>(10, KeyCodec.bytes(3));
+
+		//Act
+		final boolean first = queue.offer(new byte[] {1, 2, 3});
+		final boolean duplicate = queue.offer(new byte[] {1, 2, 3});
+		final boolean other = queue.offer(new byte[] {3, 2, 1});
+
+		//Test
+		Assert.assertTrue(first);
+		Assert.assertFalse(duplicate);
+		Assert.assertTrue(other);
+		Assert.assertTrue(queue.contains(new byte[] {3, 2, 1}));
+		Assert.assertEquals(queue.poll(), new byte[] {1, 2, 3});
+	}
+
+	public void testManyKeysAgainstTheHeapQueue() {
+		//Arrange
+		final BlockingQueue<Long> offHeap = new ConcurrentUniqueOffHeapBlockingQueue<>(1000, KeyCodec.longs());
+		final BlockingQueue<Long> onHeap = new ConcurrentSetArrayBlockingQueue<>(1000);
+		final Random random = new Random(7);
+
+		//Act
+		for (int i = 0; i < 100_000; i++) {
+			final long key = random.nextInt(2000);
+			switch (random.nextInt(4)) {
+			case 0:
+				Assert.assertEquals(offHeap.poll(), onHeap.poll());
+				break;
+			case 1:
+				Assert.assertEquals(offHeap.remove(key), onHeap.remove(key));
+				break;
+			default:
+				Assert.assertEquals(offHeap.offer(key), onHeap.offer(key));
+			}
+		}
+
+		//Test
+		Assert.assertEquals(offHeap.toArray(), onHeap.toArray());
+		offHeap.clear();
+		Assert.assertTrue(offHeap.isEmpty());
+		Assert.assertTrue(offHeap.offer(1L));
+	}
+}
@@ -0,0 +1,175 @@
+package com.hybhub.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class ConcurrentUniqueQueueUnitTest {
+
+	public void testFullCapacityOffer() {
+		//Arrange
+		final Queue<Integer> queue = new ConcurrentUniqueQueue<>(2);
+
+		//Act
+		final boolean acceptedOffer1 = queue.offer(1);
+		final boolean rejectedDuplicate = queue.offer(1);
+		final boolean acceptedOffer2 = queue.offer(2);
+		final boolean rejectedFull = queue.offer(3);
+
+		//Test
+		Assert.assertTrue(acceptedOffer1);
+		Assert.assertFalse(rejectedDuplicate);
+		Assert.assertTrue(acceptedOffer2);
+		Assert.assertFalse(rejectedFull);
+		Assert.assertEquals(queue.size(), 2);
+	}
+
+	public void testOfferThenPoll() {
+		//Arrange
+		final Queue<String> queue = new ConcurrentUniqueQueue<>();
+		final List<String> dataSet = Arrays.asList("1", "3", "6", "10", "4");
+
+		//Act
+		dataSet.forEach(queue::offer);
+		final String peeked = queue.peek();
+
+		//Test
+		Assert.assertEquals(peeked, "1");
+		for (String s : dataSet) {
+			Assert.assertEquals(queue.poll(), s, "Polled String is incorrect");
+		}
+		Assert.assertNull(queue.poll());
+		Assert.assertTrue(queue.isEmpty());
+		Assert.assertTrue(queue.offer("1"));
+	}
+
+	public void testRemoveAndIterator() {
+		//Arrange
+		final Queue<Integer> queue = new ConcurrentUniqueQueue<>(3);
+		queue.offer(1);
+		queue.offer(2);
+		queue.offer(3);
+
+		//Act
+		final boolean removed = queue.remove(2);
+		final boolean removedTwice = queue.remove(2);
+		final boolean reAdded = queue.offer(4);
+		final List<Integer> iterated = new ArrayList<>();
+		final Iterator<Integer> iterator = queue.iterator();
+		while (iterator.hasNext()) {
+			final Integer i = iterator.next();
+			iterated.add(i);
+			if (i == 3) {
+				iterator.remove();
+			}
+		}
+
+		//Test
+		Assert.assertTrue(removed);
+		Assert.assertFalse(removedTwice);
+		Assert.assertTrue(reAdded);
+		Assert.assertEquals(iterated, Arrays.asList(1, 3, 4));
+		Assert.assertEquals(queue.size(), 2);
+		Assert.assertFalse(queue.contains(3));
+		Assert.assertEquals(queue.poll(), Integer.valueOf(1));
+		Assert.assertEquals(queue.poll(), Integer.valueOf(4));
+	}
+
+	public void testRemovedNodesAreUnlinked() {
+		//Arrange
+		final ConcurrentUniqueQueue<Integer> queue = new ConcurrentUniqueQueue<>();
+		queue.offer(-1);
+
+		//Act
+		for (int i = 0; i < 100_000; i++) {
+			queue.offer(i);
+			queue.remove(i);
+		}
+		final int nodesAfterRemoves = nodes(queue);
+		for (int i = 0; i < 10; i++) {
+			queue.offer(i);
+			queue.remove(i);
+		}
+		queue.offer(10);
+		final Iterator<Integer> iterator = queue.iterator();
+		while (iterator.hasNext()) {
+			iterator.next();
+		}
+		final int nodesAfterIterating = nodes(queue);
+
+		//Test
+		Assert.assertTrue(nodesAfterRemoves < 100, "nodes: " + nodesAfterRemoves);
+		Assert.assertTrue(nodesAfterIterating <= 3, "nodes: " + nodesAfterIterating);
+		Assert.assertEquals(queue.size(), 2);
+		Assert.assertEquals(queue.poll(), Integer.valueOf(-1));
+		Assert.assertEquals(queue.poll(), Integer.valueOf(10));
+	}
+
+	private static int nodes(final ConcurrentUniqueQueue<?> queue) {
+		int n = 0;
+		for (ConcurrentUniqueQueue.Node<?> p = queue.head.next; p != null; p = p.next) {
+			n++;
+		}
+		return n;
+	}
+
+	public void testConcurrentOfferPoll() throws InterruptedException {
+		//Arrange
+		final Queue<Integer> queue = new ConcurrentUniqueQueue<>(64);
+		final Set<Integer> polled = ConcurrentHashMap.newKeySet();
+		final AtomicInteger accepted = new AtomicInteger();
+		final AtomicInteger taken = new AtomicInteger();
+		final CountDownLatch producers = new CountDownLatch(4);
+		final List<Callable<Object>> tasks = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			tasks.add(() -> {
+				for (int i = 0; i < 10_000; i++) {
+					while (!queue.contains(i)) {
+						if (queue.offer(i)) {
+							accepted.incrementAndGet();
+							break;
+						}
+					}
+				}
+				producers.countDown();
+				return Boolean.TRUE;
+			});
+			tasks.add(() -> {
+				while (producers.getCount() > 0 || !queue.isEmpty()) {
+					final Integer x = queue.poll();
+					if (x != null) {
+						polled.add(x);
+						taken.incrementAndGet();
+					}
+				}
+				return Boolean.TRUE;
+			});
+		}
+		final ExecutorService exec = Executors.newFixedThreadPool(8);
+
+		//Act
+		exec.invokeAll(tasks);
+		exec.shutdown();
+		exec.awaitTermination(1, TimeUnit.SECONDS);
+
+		//Test
+		Assert.assertEquals(polled.size(), 10_000);
+		Assert.assertEquals(taken.get(), accepted.get());
+		Assert.assertEquals(queue.size(), 0);
+		Assert.assertNull(queue.poll());
+	}
+}
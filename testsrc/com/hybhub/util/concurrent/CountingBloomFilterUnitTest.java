@@ -0,0 +1,61 @@
+package com.hybhub.util.concurrent;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class CountingBloomFilterUnitTest {
+
+	public void testRemovedKeysAreForgotten() {
+		//Arrange
+		final CountingBloomFilter filter = new CountingBloomFilter(1024);
+		for (int i = 0; i < 1024; i++) {
+			filter.add(i);
+		}
+
+		//Act
+		for (int i = 0; i < 1024; i += 2) {
+			filter.remove(i);
+		}
+
+		//Test
+		for (int i = 1; i < 1024; i += 2) {
+			Assert.assertTrue(filter.mightContain(i));
+		}
+		int falsePositives = 0;
+		for (int i = 1024; i < 11_024; i++) {
+			if (filter.mightContain(i)) {
+				falsePositives++;
+			}
+		}
+		Assert.assertTrue(falsePositives < 200, "false positives " + falsePositives);
+	}
+
+	public void testSaturatedCountersNeverHideAKey() {
+		//Arrange
+		final CountingBloomFilter filter = new CountingBloomFilter(1);
+
+		//Act
+		for (int i = 0; i < 100; i++) {
+			filter.add(i);
+		}
+		for (int i = 1; i < 100; i++) {
+			filter.remove(i);
+		}
+
+		//Test
+		Assert.assertTrue(filter.mightContain(0));
+	}
+
+	public void testClear() {
+		//Arrange
+		final CountingBloomFilter filter = new CountingBloomFilter(16);
+		filter.add("a");
+
+		//Act
+		filter.clear();
+
+		//Test
+		Assert.assertFalse(filter.mightContain("a"));
+	}
+}
@@ -0,0 +1,116 @@
+package com.hybhub.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class DedupWindowUnitTest {
+
+	public void testTakenElementsAreRejectedWhileInTheWindow() throws InterruptedException {
+		//Arrange
+		final BlockingQueue<String> queue = ConcurrentSetBlockingQueue.builder(10).window(DedupWindow.lastTaken(2)).build();
+		queue.offer("a");
+		queue.offer("b");
+		queue.offer("c");
+
+		//Act
+		final String taken = queue.take();
+		final boolean reOffered = queue.offer("a");
+		final List<String> drained = new ArrayList<>();
+		queue.drainTo(drained);
+		final boolean stillRejected = queue.offer("c");
+		final boolean evicted = queue.offer("a");
+
+		//Test
+		Assert.assertEquals(taken, "a");
+		Assert.assertFalse(reOffered);
+		Assert.assertFalse(stillRejected);
+		Assert.assertTrue(evicted);
+		Assert.assertTrue(queue.contains("a"));
+		Assert.assertFalse(queue.contains("c"));
+	}
+
+	public void testExactWindowExpires() throws InterruptedException {
+		//Arrange
+		final BlockingQueue<Integer> queue = ConcurrentSetBlockingQueue.builder(10)
+				.window(DedupWindow.exact(100, 50, TimeUnit.MILLISECONDS)).build();
+		queue.offer(1);
+		queue.poll();
+
+		//Act
+		final boolean early = queue.offer(1);
+		Thread.sleep(100);
+		final boolean late = queue.offer(1);
+
+		//Test
+		Assert.assertFalse(early);
+		Assert.assertTrue(late);
+	}
+
+	public void testRemovedElementsAreNotRecorded() {
+		//Arrange
+		final BlockingQueue<Integer> queue = ConcurrentSetBlockingQueue.builder(10).window(DedupWindow.lastTaken(10)).build();
+		queue.offer(1);
+
+		//Act
+		queue.remove(1);
+		final boolean reOffered = queue.offer(1);
+
+		//Test
+		Assert.assertTrue(reOffered);
+	}
+
+	public void testApproximateWindowRotates() {
+		//Arrange
+		final DedupWindow window = DedupWindow.approximate(100, 0.01);
+		for (int i = 0; i < 100; i++) {
+			window.record(i);
+		}
+
+		//Act
+		final boolean recent = window.contains(0);
+		int falsePositives = 0;
+		for (int i = 1000; i < 2000; i++) {
+			if (window.contains(i)) {
+				falsePositives++;
+			}
+		}
+		for (int i = 100; i < 300; i++) {
+			window.record(i);
+		}
+		int remembered = 0;
+		for (int i = 0; i < 100; i++) {
+			if (window.contains(i)) {
+				remembered++;
+			}
+		}
+
+		//Test
+		Assert.assertTrue(recent);
+		Assert.assertTrue(falsePositives < 50, "false positives " + falsePositives);
+		Assert.assertTrue(remembered < 10, "remembered " + remembered);
+		Assert.assertTrue(window.contains(250));
+	}
+
+	public void testApproximateWindowExpiresWithoutTakes() throws InterruptedException {
+		//Arrange
+		final BlockingQueue<Integer> queue = ConcurrentSetBlockingQueue.builder(10)
+				.window(DedupWindow.approximate(100, 0.01, 50, TimeUnit.MILLISECONDS)).build();
+		queue.offer(1);
+		queue.poll();
+
+		//Act
+		final boolean early = queue.offer(1);
+		Thread.sleep(150);
+		final boolean late = queue.offer(1);
+
+		//Test
+		Assert.assertFalse(early);
+		Assert.assertTrue(late);
+	}
+}
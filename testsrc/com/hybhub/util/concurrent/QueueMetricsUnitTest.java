@@ -0,0 +1,126 @@
+package com.hybhub.util.concurrent;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class QueueMetricsUnitTest {
+
+	public void testCountsOffersAndTakes() throws InterruptedException {
+		//Arrange
+		final QueueMetrics metrics = new QueueMetrics();
+		final ConcurrentSetBlockingQueue<Integer> queue = ConcurrentSetBlockingQueue.builder(3).metrics(metrics).build();
+
+		//Act
+		queue.offer(1);
+		queue.offer(1);
+		queue.put(2);
+		queue.offerAll(Arrays.asList(2, 3, 4));
+		queue.offer(5, 1, TimeUnit.MILLISECONDS);
+		queue.take();
+		queue.poll();
+		final List<Integer> drained = new ArrayList<>();
+		queue.drainTo(drained);
+		queue.poll(1, TimeUnit.MILLISECONDS);
+		final QueueMetrics.Snapshot snapshot = metrics.snapshot();
+
+		//Test
+		Assert.assertSame(queue.metrics(), metrics);
+		Assert.assertEquals(snapshot.getAccepted(), 3);
+		Assert.assertEquals(snapshot.getDuplicates(), 2);
+		Assert.assertEquals(snapshot.getRejectedFull(), 2);
+		Assert.assertEquals(snapshot.getDuplicateRate(), 2d / 7);
+		Assert.assertEquals(snapshot.getTaken(), 3);
+		Assert.assertEquals(snapshot.getDrained(), 1);
+		Assert.assertEquals(snapshot.getTimedOutPolls(), 1);
+		Assert.assertEquals(snapshot.getDepth(), 0);
+		Assert.assertEquals(snapshot.getCapacity(), 3);
+		Assert.assertEquals(Arrays.stream(snapshot.getTimeInQueueBuckets()).sum(), 3);
+	}
+
+	public void testTimeInQueuePercentiles() throws InterruptedException {
+		//Arrange
+		final QueueMetrics metrics = new QueueMetrics();
+		final ConcurrentSetBlockingQueue<Integer> queue = ConcurrentSetBlockingQueue.builder(10).metrics(metrics).build();
+		queue.offer(1);
+		Thread.sleep(20);
+		queue.offer(2);
+
+		//Act
+		queue.take();
+		queue.take();
+		final QueueMetrics.Snapshot snapshot = metrics.snapshot();
+
+		//Test
+		Assert.assertTrue(snapshot.getTimeInQueuePercentileNanos(1d) >= TimeUnit.MILLISECONDS.toNanos(20));
+		Assert.assertTrue(snapshot.getTimeInQueuePercentileNanos(0.5) < TimeUnit.MILLISECONDS.toNanos(20));
+		Assert.assertTrue(snapshot.getTimeInQueueMeanNanos() >= TimeUnit.MILLISECONDS.toNanos(10));
+	}
+
+	public void testCountsLockContention() throws InterruptedException {
+		//Arrange
+		final QueueMetrics metrics = new QueueMetrics();
+		final ConcurrentSetBlockingQueue<Integer> queue = ConcurrentSetBlockingQueue.builder(10).metrics(metrics).build();
+		final Thread producer = new Thread(() -> queue.offer(1));
+
+		//Act
+		queue.putLock.lock();
+		try {
+			producer.start();
+			while (!queue.putLock.hasQueuedThreads()) {
+				Thread.yield();
+			}
+		} finally {
+			queue.putLock.unlock();
+		}
+		producer.join(1_000);
+
+		//Test
+		Assert.assertEquals(metrics.getPutLockContentions(), 1);
+		Assert.assertTrue(metrics.getPutLockWaitNanos() > 0);
+		Assert.assertEquals(metrics.getTakeLockContentions(), 0);
+		Assert.assertEquals(metrics.getAccepted(), 1);
+	}
+
+	@Test(expectedExceptions = IllegalStateException.class)
+	public void testMetricsCountASingleQueue() {
+		//Arrange
+		final QueueMetrics metrics = new QueueMetrics();
+		ConcurrentSetBlockingQueue.builder(10).metrics(metrics).build();
+
+		//Act
+		ConcurrentSetBlockingQueue.builder(10).metrics(metrics).build();
+	}
+
+	public void testRegisteredAsMXBean() throws Exception {
+		//Arrange
+		final QueueMetrics metrics = new QueueMetrics();
+		final ConcurrentSetBlockingQueue<Integer> queue = ConcurrentSetBlockingQueue.builder(10).metrics(metrics).build();
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		final ObjectName name = new ObjectName("com.hybhub.util.concurrent:type=QueueMetrics,name=test");
+		queue.offer(1);
+		queue.offer(1);
+
+		//Act
+		server.registerMBean(metrics, name);
+		try {
+			final Object duplicates = server.getAttribute(name, "Duplicates");
+			final Object depth = server.getAttribute(name, "Depth");
+
+			//Test
+			Assert.assertEquals(duplicates, 1L);
+			Assert.assertEquals(depth, 1);
+		} finally {
+			server.unregisterMBean(name);
+		}
+	}
+}
@@ -0,0 +1,275 @@
+package com.hybhub.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class QueuePublisherUnitTest {
+
+	public void testDeliversAsRequested() throws InterruptedException {
+		//Arrange
+		final ConcurrentSetBlockingQueue<Integer> queue = new ConcurrentSetBlockingQueue<>(10);
+		IntStream.range(0, 5).forEach(queue::offer);
+		final RecordingSubscriber subscriber = new RecordingSubscriber(3, 3);
+
+		//Act
+		try (QueuePublisher<Integer> publisher = new QueuePublisher<>(queue)) {
+			publisher.subscribe(subscriber);
+			final boolean firstBatch = subscriber.await();
+			final int queued = queue.size();
+			subscriber.expect(2);
+			subscriber.subscription.get().request(2);
+			final boolean secondBatch = subscriber.await();
+
+			//Test
+			Assert.assertTrue(firstBatch);
+			Assert.assertEquals(queued, 2);
+			Assert.assertTrue(secondBatch);
+			Assert.assertEquals(subscriber.received, IntStream.range(0, 5).boxed().collect(Collectors.toList()));
+			Assert.assertTrue(queue.isEmpty());
+		}
+	}
+
+	public void testDeliversElementsQueuedAfterSubscribing() throws InterruptedException {
+		//Arrange
+		final ConcurrentSetBlockingQueue<Integer> queue = new ConcurrentSetBlockingQueue<>(16);
+		final RecordingSubscriber first = new RecordingSubscriber(Long.MAX_VALUE, 1_000);
+		final RecordingSubscriber second = new RecordingSubscriber(Long.MAX_VALUE, 0);
+		final CountDownLatch done = new CountDownLatch(1);
+
+		//Act
+		try (QueuePublisher<Integer> publisher = new QueuePublisher<>(queue)) {
+			publisher.subscribe(first);
+			publisher.subscribe(second);
+			final Thread producer = new Thread(() -> {
+				try {
+					for (int i = 0; i < 1_000; i++) {
+						queue.put(i);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				done.countDown();
+			});
+			producer.start();
+			Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+			final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while (first.count() + second.count() < 1_000 && System.nanoTime() < deadline) {
+				Thread.sleep(1);
+			}
+
+			//Test
+			final Set<Integer> all = new HashSet<>(first.snapshot());
+			all.addAll(second.snapshot());
+			Assert.assertEquals(first.count() + second.count(), 1_000);
+			Assert.assertEquals(all.size(), 1_000);
+			Assert.assertEquals(publisher.subscribers(), 2);
+		}
+	}
+
+	public void testCloseCompletesTheSubscribers() throws InterruptedException {
+		//Arrange
+		final ConcurrentSetBlockingQueue<Integer> queue = new ConcurrentSetBlockingQueue<>(10);
+		final RecordingSubscriber subscriber = new RecordingSubscriber(1, 0);
+		final QueuePublisher<Integer> publisher = new QueuePublisher<>(queue);
+		publisher.subscribe(subscriber);
+
+		//Act
+		publisher.close();
+		final boolean completed = subscriber.terminated.await(5, TimeUnit.SECONDS);
+		queue.offer(1);
+
+		//Test
+		Assert.assertTrue(completed);
+		Assert.assertNull(subscriber.error.get());
+		Assert.assertEquals(publisher.subscribers(), 0);
+		Assert.assertEquals(queue.size(), 1);
+	}
+
+	public void testNonPositiveRequestFails() throws InterruptedException {
+		//Arrange
+		final ConcurrentSetBlockingQueue<Integer> queue = new ConcurrentSetBlockingQueue<>(10);
+		queue.offer(1);
+		final RecordingSubscriber subscriber = new RecordingSubscriber(0, 0);
+
+		//Act
+		try (QueuePublisher<Integer> publisher = new QueuePublisher<>(queue)) {
+			publisher.subscribe(subscriber);
+			final boolean terminated = subscriber.terminated.await(5, TimeUnit.SECONDS);
+
+			//Test
+			Assert.assertTrue(terminated);
+			Assert.assertTrue(subscriber.error.get() instanceof IllegalArgumentException);
+			Assert.assertEquals(queue.size(), 1);
+		}
+	}
+
+	public void testCancelInOnNextGivesTheRestOfTheBatchBack() throws InterruptedException {
+		//Arrange
+		final ConcurrentSetBlockingQueue<Integer> queue = new ConcurrentSetBlockingQueue<>(10);
+		IntStream.range(0, 5).forEach(queue::offer);
+		final List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+		final CountDownLatch cancelled = new CountDownLatch(1);
+		final Flow.Subscriber<Integer> subscriber = new Flow.Subscriber<Integer>() {
+			private Flow.Subscription subscription;
+
+			@Override
+			public void onSubscribe(final Flow.Subscription subscription) {
+				this.subscription = subscription;
+				subscription.request(5);
+			}
+
+			@Override
+			public void onNext(final Integer item) {
+				received.add(item);
+				if (received.size() == 2) {
+					subscription.cancel();
+					cancelled.countDown();
+				}
+			}
+
+			@Override
+			public void onError(final Throwable throwable) {
+			}
+
+			@Override
+			public void onComplete() {
+			}
+		};
+
+		//Act
+		try (QueuePublisher<Integer> publisher = new QueuePublisher<>(queue)) {
+			publisher.subscribe(subscriber);
+			final boolean wasCancelled = cancelled.await(5, TimeUnit.SECONDS);
+			final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while (queue.size() < 3 && System.nanoTime() < deadline) {
+				Thread.sleep(1);
+			}
+
+			//Test
+			Assert.assertTrue(wasCancelled);
+			Assert.assertEquals(received, IntStream.range(0, 2).boxed().collect(Collectors.toList()));
+			Assert.assertEquals(new ArrayList<>(queue), IntStream.range(2, 5).boxed().collect(Collectors.toList()));
+		}
+	}
+
+	public void testFailingOnNextGivesTheRestOfTheBatchBack() throws InterruptedException {
+		//Arrange
+		final ConcurrentSetBlockingQueue<Integer> queue = new ConcurrentSetBlockingQueue<>(10);
+		IntStream.range(0, 5).forEach(queue::offer);
+		final AtomicReference<Throwable> error = new AtomicReference<>();
+		final CountDownLatch terminated = new CountDownLatch(1);
+		final Flow.Subscriber<Integer> subscriber = new Flow.Subscriber<Integer>() {
+			@Override
+			public void onSubscribe(final Flow.Subscription subscription) {
+				subscription.request(5);
+			}
+
+			@Override
+			public void onNext(final Integer item) {
+				if (item == 1) {
+					throw new IllegalStateException();
+				}
+			}
+
+			@Override
+			public void onError(final Throwable throwable) {
+				error.set(throwable);
+				terminated.countDown();
+			}
+
+			@Override
+			public void onComplete() {
+				terminated.countDown();
+			}
+		};
+
+		//Act
+		try (QueuePublisher<Integer> publisher = new QueuePublisher<>(queue)) {
+			publisher.subscribe(subscriber);
+			final boolean wasTerminated = terminated.await(5, TimeUnit.SECONDS);
+
+			//Test
+			Assert.assertTrue(wasTerminated);
+			Assert.assertTrue(error.get() instanceof IllegalStateException);
+			Assert.assertEquals(new ArrayList<>(queue), IntStream.range(2, 5).boxed().collect(Collectors.toList()));
+			Assert.assertEquals(publisher.subscribers(), 0);
+		}
+	}
+
+	/**
+	 * Subscriber requesting a first demand on subscribe and recording what it receives
+	 */
+	static final class RecordingSubscriber implements Flow.Subscriber<Integer> {
+
+		final AtomicReference<Flow.Subscription> subscription = new AtomicReference<>();
+
+		final List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+
+		final AtomicReference<Throwable> error = new AtomicReference<>();
+
+		final CountDownLatch terminated = new CountDownLatch(1);
+
+		private final long initialDemand;
+
+		private volatile CountDownLatch expected;
+
+		RecordingSubscriber(final long initialDemand, final int expected) {
+			this.initialDemand = initialDemand;
+			this.expected = new CountDownLatch(expected);
+		}
+
+		void expect(final int n) {
+			expected = new CountDownLatch(n);
+		}
+
+		boolean await() throws InterruptedException {
+			return expected.await(5, TimeUnit.SECONDS);
+		}
+
+		int count() {
+			return received.size();
+		}
+
+		List<Integer> snapshot() {
+			synchronized (received) {
+				return new ArrayList<>(received);
+			}
+		}
+
+		@Override
+		public void onSubscribe(final Flow.Subscription subscription) {
+			this.subscription.set(subscription);
+			subscription.request(initialDemand);
+		}
+
+		@Override
+		public void onNext(final Integer item) {
+			received.add(item);
+			expected.countDown();
+		}
+
+		@Override
+		public void onError(final Throwable throwable) {
+			error.set(throwable);
+			terminated.countDown();
+		}
+
+		@Override
+		public void onComplete() {
+			terminated.countDown();
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package com.hybhub.util.concurrent;
+
+import java.util.Arrays;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class QueueSubscriberUnitTest {
+
+	public void testDropsDuplicatesOnIngress() throws Exception {
+		//Arrange
+		final ConcurrentSetBlockingQueue<String> queue = new ConcurrentSetBlockingQueue<>(10);
+		final QueueSubscriber<String> subscriber = new QueueSubscriber<>(queue);
+
+		//Act
+		try (SubmissionPublisher<String> publisher = new SubmissionPublisher<>()) {
+			publisher.subscribe(subscriber);
+			for (String e : Arrays.asList("a", "b", "a", "c", "b")) {
+				publisher.submit(e);
+			}
+		}
+		subscriber.completion().get(5, TimeUnit.SECONDS);
+
+		//Test
+		Assert.assertEquals(subscriber.accepted(), 3);
+		Assert.assertEquals(subscriber.duplicates(), 2);
+		Assert.assertEquals(queue.size(), 3);
+		Assert.assertEquals(queue.poll(), "a");
+	}
+
+	public void testRequestsNoMoreThanTheQueueHasRoomFor() throws Exception {
+		//Arrange
+		final ConcurrentSetBlockingQueue<Integer> queue = new ConcurrentSetBlockingQueue<>(4);
+		final RangePublisher publisher = new RangePublisher(20);
+		final QueueSubscriber<Integer> subscriber = new QueueSubscriber<>(queue);
+
+		//Act
+		publisher.subscribe(subscriber);
+		final long requestedWhileFull = publisher.requested.get();
+		int taken = 0;
+		while (taken < 20) {
+			Assert.assertNotNull(queue.poll(5, TimeUnit.SECONDS));
+			taken++;
+		}
+		subscriber.completion().get(5, TimeUnit.SECONDS);
+
+		//Test
+		Assert.assertEquals(requestedWhileFull, 4);
+		Assert.assertEquals(subscriber.accepted(), 20);
+		Assert.assertEquals(subscriber.held(), 0);
+		Assert.assertTrue(queue.isEmpty());
+	}
+
+	public void testHoldsElementsWhileOtherProducersFillTheQueue() throws Exception {
+		//Arrange
+		final ConcurrentSetBlockingQueue<Integer> queue = new ConcurrentSetBlockingQueue<>(2);
+		final RangePublisher publisher = new RangePublisher(2);
+		publisher.deliverOnRequest = false;
+		final QueueSubscriber<Integer> subscriber = new QueueSubscriber<>(queue);
+		publisher.subscribe(subscriber);
+
+		//Act
+		queue.offer(100);
+		queue.offer(101);
+		publisher.emit(subscriber, 2);
+		final int held = subscriber.held();
+		queue.take();
+		queue.take();
+		final Integer first = queue.poll(5, TimeUnit.SECONDS);
+		final Integer second = queue.poll(5, TimeUnit.SECONDS);
+		// the draining thread counts an element once its offer has returned, after the poll may have seen it
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (subscriber.accepted() < 2 && System.nanoTime() < deadline) {
+			Thread.sleep(1);
+		}
+
+		//Test
+		Assert.assertEquals(publisher.requested.get(), 2);
+		Assert.assertEquals(held, 2);
+		Assert.assertEquals(first, Integer.valueOf(0));
+		Assert.assertEquals(second, Integer.valueOf(1));
+		Assert.assertEquals(subscriber.accepted(), 2);
+	}
+
+	/**
+	 * Publisher of the integers from 0, emitting synchronously on request and recording the demand
+	 */
+	static final class RangePublisher implements Flow.Publisher<Integer> {
+
+		final AtomicLong requested = new AtomicLong();
+
+		private final int size;
+
+		private int next;
+
+		volatile boolean deliverOnRequest = true;
+
+		RangePublisher(final int size) {
+			this.size = size;
+		}
+
+		@Override
+		public void subscribe(final Flow.Subscriber<? super Integer> subscriber) {
+			subscriber.onSubscribe(new Flow.Subscription() {
+
+				@Override
+				public void request(final long n) {
+					requested.addAndGet(n);
+					if (deliverOnRequest) {
+						emit(subscriber, n);
+					}
+				}
+
+				@Override
+				public void cancel() {
+				}
+			});
+		}
+
+		synchronized void emit(final Flow.Subscriber<? super Integer> subscriber, final long n) {
+			for (long i = 0; i < n && next < size; i++) {
+				subscriber.onNext(next++);
+			}
+			if (next == size) {
+				subscriber.onComplete();
+			}
+		}
+	}
+}